@@ -6,6 +6,7 @@ import com.example.shade.repository.BlockedUserRepository;
 import com.example.shade.service.AdminLogBotService;
 import com.example.shade.service.BonusService;
 import com.example.shade.service.TopUpService;
+import com.example.shade.service.UserDirectoryService;
 import com.example.shade.service.WithdrawService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -37,6 +38,7 @@ public class AdminLogBot extends TelegramLongPollingBot {
     private final BonusService bonusService;
     private final TopUpService topUpService;
     private final BlockedUserRepository blockedUserRepository;
+    private final UserDirectoryService userDirectory;
 
     @Value("${telegram.admin.log.bot.token}")
     private String botToken;
@@ -134,6 +136,7 @@ public class AdminLogBot extends TelegramLongPollingBot {
                 } else {
                     user.setPhoneNumber("BLOCKED");
                     blockedUserRepository.save(user);
+                    userDirectory.invalidate(userId);
                     message.setText("✅ Foydalanuvchi (ID: " + userId + ") bloklandi.");
                     logger.info("User {} blocked by admin chatId {}", userId, chatId);
                 }
@@ -156,6 +159,7 @@ public class AdminLogBot extends TelegramLongPollingBot {
                 } else {
                     user.setPhoneNumber(null);
                     blockedUserRepository.save(user);
+                    userDirectory.invalidate(userId);
                     message.setText("✅ Foydalanuvchi (ID: " + userId + ") blokdan chiqarildi.");
                     logger.info("User {} unblocked by admin chatId {}", userId, chatId);
                 }
@@ -257,6 +261,7 @@ public class AdminLogBot extends TelegramLongPollingBot {
             } else {
                 user.setPhoneNumber("BLOCKED");
                 blockedUserRepository.save(user);
+                userDirectory.invalidate(userId);
                 message.setText("✅ Foydalanuvchi (ID: " + userId + ") bloklandi.");
                 logger.info("User {} blocked by admin chatId {}", userId, chatId);
             }
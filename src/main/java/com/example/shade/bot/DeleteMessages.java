@@ -0,0 +1,45 @@
+package com.example.shade.bot;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethodBoolean;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiValidationException;
+
+import java.util.List;
+
+/**
+ * Bot API deleteMessages, which the telegrambots version we use doesn't ship yet. Deletes up to
+ * {@link #MAX_MESSAGE_IDS} messages of one chat in a single call; ids that no longer exist are skipped.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeleteMessages extends BotApiMethodBoolean {
+    public static final String PATH = "deleteMessages";
+    public static final int MAX_MESSAGE_IDS = 100;
+
+    @JsonProperty("chat_id")
+    private String chatId;
+
+    @JsonProperty("message_ids")
+    private List<Integer> messageIds;
+
+    @Override
+    public String getMethod() {
+        return PATH;
+    }
+
+    @Override
+    public void validate() throws TelegramApiValidationException {
+        if (chatId == null || chatId.isEmpty()) {
+            throw new TelegramApiValidationException("ChatId parameter can't be empty", this);
+        }
+        if (messageIds == null || messageIds.isEmpty() || messageIds.size() > MAX_MESSAGE_IDS) {
+            throw new TelegramApiValidationException("MessageIds must hold 1 to " + MAX_MESSAGE_IDS + " ids", this);
+        }
+    }
+}
@@ -17,9 +17,9 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.Keyboard
 import jakarta.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @RequiredArgsConstructor
@@ -31,7 +31,8 @@ public class LottoLogBot extends TelegramLongPollingBot {
 
     private static final Long MINIMUM_TICKETS = 1L;
     private static final Long MAXIMUM_TICKETS = 400L;
-    private final Map<Long, String> userState = new HashMap<>();
+    // Webhook updates run on the UpdateDispatcher pool, several chats at once
+    private final Map<Long, String> userState = new ConcurrentHashMap<>();
 
     @Value("${telegram.logbot.token}")
     private String botToken;
@@ -1,55 +1,129 @@
 package com.example.shade.bot;
 
-import com.example.shade.model.UserSession;
 import com.example.shade.service.UserSessionService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.CopyMessage;
 import org.telegram.telegrambots.meta.api.methods.ForwardMessage;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
 import org.telegram.telegrambots.meta.api.methods.send.*;
-import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.File;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.MessageId;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
 import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @RequiredArgsConstructor
 public class MessageSender {
     private static final Logger logger = LoggerFactory.getLogger(MessageSender.class);
+    private static final long REMOVAL_GRACE_MILLIS = 2_000;
     private final UserSessionService sessionService;
+    private final OutgoingMessageQueue outgoingQueue;
+    private final TaskScheduler taskScheduler;
     private AbsSender bot;
 
+    @Value("${telegram.navigation.edit-in-place:true}")
+    private boolean editInPlace;
+
+    // Screens waiting to be replaced by the next message to the chat, see animateAndDeleteMessages
+    private final Map<Long, PendingRemoval> pendingRemovals = new ConcurrentHashMap<>();
+    // Chats whose current update is a button press, the only case where a screen is edited in place
+    private final Set<Long> navigatingChats = ConcurrentHashMap.newKeySet();
+
+    private record PendingRemoval(List<Integer> messageIds, boolean editable) {
+        PendingRemoval merge(PendingRemoval other) {
+            List<Integer> ids = new ArrayList<>(messageIds);
+            ids.addAll(other.messageIds);
+            return new PendingRemoval(ids, editable && other.editable);
+        }
+    }
+
     public void setBot(AbsSender bot) {
         this.bot = bot;
     }
 
-    public void sendMessage(SendMessage message, Long chatId) {
+    /**
+     * Runs an update of the chat and afterwards deletes whatever screen it removed without replacing.
+     */
+    public void navigate(Long chatId, boolean buttonPress, Runnable update) {
+        if (buttonPress) {
+            navigatingChats.add(chatId);
+        }
         try {
-            message.setChatId(chatId);
-            var sentMessage = bot.execute(message);
-            UserSession session = sessionService.getUserSession(chatId).orElse(new UserSession());
-            session.setChatId(chatId);
-            List<Integer> messageIds = sessionService.getMessageIds(chatId);
-            messageIds.add(sentMessage.getMessageId());
-            session.setMessageIds(messageIds);
-            sessionService.saveUserSession(session);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending message to chatId {}: {}", chatId, e.getMessage());
+            update.run();
+        } finally {
+            navigatingChats.remove(chatId);
+            flushPendingRemovals(chatId);
         }
     }
 
+    /**
+     * Queues the message behind everything already sent to the chat and returns without waiting for
+     * Telegram. The future completes with the sent message, whose id is already tracked in the session
+     * by then; failures are logged here, so callers only need the future when they want the message id.
+     * If the previous screen was just removed by a button press, the message is shown by editing that
+     * screen in place instead.
+     */
+    public CompletableFuture<Message> sendMessage(SendMessage message, Long chatId) {
+        message.setChatId(chatId);
+        PendingRemoval removal = pendingRemovals.remove(chatId);
+        CompletableFuture<Message> result;
+        if (removal == null) {
+            result = outgoingQueue.submit(chatId, () -> send(chatId, message));
+        } else {
+            List<Integer> messageIds = removal.messageIds().stream().distinct().toList();
+            Integer target = removal.editable() && canEdit(message) ? messageIds.get(messageIds.size() - 1) : null;
+            deleteMessages(chatId, messageIds.stream().filter(id -> !id.equals(target)).toList());
+            result = target == null
+                    ? outgoingQueue.submit(chatId, () -> send(chatId, message))
+                    : outgoingQueue.submit(chatId, () -> replace(chatId, target, message), false);
+        }
+        return result.whenComplete((sent, e) -> {
+            if (e != null) {
+                logger.error("Error sending message to chatId {}: {}", chatId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Sends right away on the calling thread, bypassing the queue, and lets the caller see the failure,
+     * e.g. to honour retry_after on a 429. Meant for bulk senders that pace themselves; the message id is only
+     * tracked if the chat's session is already cached, so a bulk send never loads or creates sessions.
+     */
+    public Message execute(SendMessage message, Long chatId) throws TelegramApiException {
+        message.setChatId(chatId);
+        Message sentMessage = bot.execute(message);
+        sessionService.addMessageIdIfResident(chatId, sentMessage.getMessageId());
+        return sentMessage;
+    }
+
+    public MessageId execute(CopyMessage message) throws TelegramApiException {
+        return bot.execute(message);
+    }
+
     public void sendMessage(Long chatId, String text) {
         int maxLength = 4096;
 
@@ -76,174 +150,129 @@ public class MessageSender {
     // ========== MEDIA SENDING METHODS ==========
 
     public void sendPhoto(Long chatId, String fileId, String caption) {
-        try {
-            SendPhoto sendPhoto = new SendPhoto();
-            sendPhoto.setChatId(chatId.toString());
-            sendPhoto.setPhoto(new InputFile(fileId));
-            if (caption != null && !caption.isEmpty()) {
-                sendPhoto.setCaption(caption);
-            }
-            bot.execute(sendPhoto);
-            logger.info("Sent photo to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending photo to chatId {}: {}", chatId, e.getMessage());
+        SendPhoto sendPhoto = new SendPhoto();
+        sendPhoto.setChatId(chatId.toString());
+        sendPhoto.setPhoto(new InputFile(fileId));
+        if (caption != null && !caption.isEmpty()) {
+            sendPhoto.setCaption(caption);
         }
+        enqueue(chatId, () -> bot.execute(sendPhoto), "photo");
     }
 
     public void sendVideo(Long chatId, String fileId, String caption) {
-        try {
-            SendVideo sendVideo = new SendVideo();
-            sendVideo.setChatId(chatId.toString());
-            sendVideo.setVideo(new InputFile(fileId));
-            if (caption != null && !caption.isEmpty()) {
-                sendVideo.setCaption(caption);
-            }
-            bot.execute(sendVideo);
-            logger.info("Sent video to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending video to chatId {}: {}", chatId, e.getMessage());
+        SendVideo sendVideo = new SendVideo();
+        sendVideo.setChatId(chatId.toString());
+        sendVideo.setVideo(new InputFile(fileId));
+        if (caption != null && !caption.isEmpty()) {
+            sendVideo.setCaption(caption);
         }
+        enqueue(chatId, () -> bot.execute(sendVideo), "video");
     }
 
     public void sendDocument(Long chatId, String fileId, String caption) {
-        try {
-            SendDocument sendDocument = new SendDocument();
-            sendDocument.setChatId(chatId.toString());
-            sendDocument.setDocument(new InputFile(fileId));
-            if (caption != null && !caption.isEmpty()) {
-                sendDocument.setCaption(caption);
-            }
-            bot.execute(sendDocument);
-            logger.info("Sent document to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending document to chatId {}: {}", chatId, e.getMessage());
+        SendDocument sendDocument = new SendDocument();
+        sendDocument.setChatId(chatId.toString());
+        sendDocument.setDocument(new InputFile(fileId));
+        if (caption != null && !caption.isEmpty()) {
+            sendDocument.setCaption(caption);
         }
+        enqueue(chatId, () -> bot.execute(sendDocument), "document");
     }
 
     public void sendAudio(Long chatId, String fileId, String caption) {
-        try {
-            SendAudio sendAudio = new SendAudio();
-            sendAudio.setChatId(chatId.toString());
-            sendAudio.setAudio(new InputFile(fileId));
-            if (caption != null && !caption.isEmpty()) {
-                sendAudio.setCaption(caption);
-            }
-            bot.execute(sendAudio);
-            logger.info("Sent audio to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending audio to chatId {}: {}", chatId, e.getMessage());
+        SendAudio sendAudio = new SendAudio();
+        sendAudio.setChatId(chatId.toString());
+        sendAudio.setAudio(new InputFile(fileId));
+        if (caption != null && !caption.isEmpty()) {
+            sendAudio.setCaption(caption);
         }
+        enqueue(chatId, () -> bot.execute(sendAudio), "audio");
     }
 
     public void sendVoice(Long chatId, String fileId, String caption) {
-        try {
-            SendVoice sendVoice = new SendVoice();
-            sendVoice.setChatId(chatId.toString());
-            sendVoice.setVoice(new InputFile(fileId));
-            if (caption != null && !caption.isEmpty()) {
-                sendVoice.setCaption(caption);
-            }
-            bot.execute(sendVoice);
-            logger.info("Sent voice to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending voice to chatId {}: {}", chatId, e.getMessage());
+        SendVoice sendVoice = new SendVoice();
+        sendVoice.setChatId(chatId.toString());
+        sendVoice.setVoice(new InputFile(fileId));
+        if (caption != null && !caption.isEmpty()) {
+            sendVoice.setCaption(caption);
         }
+        enqueue(chatId, () -> bot.execute(sendVoice), "voice");
     }
 
     public void sendAnimation(Long chatId, String fileId, String caption) {
-        try {
-            SendAnimation sendAnimation = new SendAnimation();
-            sendAnimation.setChatId(chatId.toString());
-            sendAnimation.setAnimation(new InputFile(fileId));
-            if (caption != null && !caption.isEmpty()) {
-                sendAnimation.setCaption(caption);
-            }
-            bot.execute(sendAnimation);
-            logger.info("Sent animation to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending animation to chatId {}: {}", chatId, e.getMessage());
+        SendAnimation sendAnimation = new SendAnimation();
+        sendAnimation.setChatId(chatId.toString());
+        sendAnimation.setAnimation(new InputFile(fileId));
+        if (caption != null && !caption.isEmpty()) {
+            sendAnimation.setCaption(caption);
         }
+        enqueue(chatId, () -> bot.execute(sendAnimation), "animation");
     }
 
     public void sendSticker(Long chatId, String fileId) {
-        try {
-            SendSticker sendSticker = new SendSticker();
-            sendSticker.setChatId(chatId.toString());
-            sendSticker.setSticker(new InputFile(fileId));
-            bot.execute(sendSticker);
-            logger.info("Sent sticker to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending sticker to chatId {}: {}", chatId, e.getMessage());
-        }
+        SendSticker sendSticker = new SendSticker();
+        sendSticker.setChatId(chatId.toString());
+        sendSticker.setSticker(new InputFile(fileId));
+        enqueue(chatId, () -> bot.execute(sendSticker), "sticker");
     }
 
     public void sendVideoNote(Long chatId, String fileId) {
-        try {
-            SendVideoNote sendVideoNote = new SendVideoNote();
-            sendVideoNote.setChatId(chatId.toString());
-            sendVideoNote.setVideoNote(new InputFile(fileId));
-            bot.execute(sendVideoNote);
-            logger.info("Sent video note to chatId {}", chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending video note to chatId {}: {}", chatId, e.getMessage());
-        }
+        SendVideoNote sendVideoNote = new SendVideoNote();
+        sendVideoNote.setChatId(chatId.toString());
+        sendVideoNote.setVideoNote(new InputFile(fileId));
+        enqueue(chatId, () -> bot.execute(sendVideoNote), "video note");
     }
 
     // ========== FORWARDING METHODS ==========
 
-    public boolean forwardMessage(Long toChatId, Long fromChatId, Integer messageId) {
-        try {
-            ForwardMessage forwardMessage = new ForwardMessage();
-            forwardMessage.setChatId(toChatId.toString());
-            forwardMessage.setFromChatId(fromChatId.toString());
-            forwardMessage.setMessageId(messageId);
-            bot.execute(forwardMessage);
+    public CompletableFuture<Boolean> forwardMessage(Long toChatId, Long fromChatId, Integer messageId) {
+        ForwardMessage forwardMessage = new ForwardMessage();
+        forwardMessage.setChatId(toChatId.toString());
+        forwardMessage.setFromChatId(fromChatId.toString());
+        forwardMessage.setMessageId(messageId);
+        return outgoingQueue.submit(toChatId, () -> bot.execute(forwardMessage)).handle((sent, e) -> {
+            if (e != null) {
+                logger.error("Error forwarding message {} from chat {} to chat {}: {}",
+                    messageId, fromChatId, toChatId, e.getMessage());
+                return false;
+            }
             logger.info("Forwarded message {} from chat {} to chat {}", messageId, fromChatId, toChatId);
             return true;
-        } catch (TelegramApiException e) {
-            logger.error("Error forwarding message {} from chat {} to chat {}: {}", 
-                messageId, fromChatId, toChatId, e.getMessage());
-            return false;
-        }
+        });
     }
 
-    public boolean copyMessage(Long toChatId, Long fromChatId, Integer messageId) {
-        try {
-            CopyMessage copyMessage = new CopyMessage();
-            copyMessage.setChatId(toChatId.toString());
-            copyMessage.setFromChatId(fromChatId.toString());
-            copyMessage.setMessageId(messageId);
-            bot.execute(copyMessage);
+    public CompletableFuture<Boolean> copyMessage(Long toChatId, Long fromChatId, Integer messageId) {
+        CopyMessage copyMessage = new CopyMessage();
+        copyMessage.setChatId(toChatId.toString());
+        copyMessage.setFromChatId(fromChatId.toString());
+        copyMessage.setMessageId(messageId);
+        return outgoingQueue.submit(toChatId, () -> bot.execute(copyMessage)).handle((sent, e) -> {
+            if (e != null) {
+                logger.error("Error copying message {} from chat {} to chat {}: {}",
+                    messageId, fromChatId, toChatId, e.getMessage());
+                return false;
+            }
             logger.info("Copied message {} from chat {} to chat {}", messageId, fromChatId, toChatId);
             return true;
-        } catch (TelegramApiException e) {
-            logger.error("Error copying message {} from chat {} to chat {}: {}", 
-                messageId, fromChatId, toChatId, e.getMessage());
-            return false;
-        }
+        });
     }
 
     // ========== SMART MESSAGE SENDING (DETECTS TYPE) ==========
 
-    public boolean sendMessageBasedOnType(Long chatId, Message originalMessage) {
-        try {
-            // For media messages, use copyMessage to avoid file ID issues between bots
-            if (originalMessage.hasPhoto() || originalMessage.hasVideo() || 
-                originalMessage.hasDocument() || originalMessage.hasAudio() || 
-                originalMessage.hasVoice() || originalMessage.hasAnimation() || 
-                originalMessage.hasSticker() || originalMessage.hasVideoNote()) {
-
-                return copyMessage(chatId, originalMessage.getChatId(), originalMessage.getMessageId());
-            } else if (originalMessage.hasText()) {
-                sendMessage(chatId, originalMessage.getText());
-                return true;
-            } else {
-                logger.warn("Unsupported message type for chatId {}", chatId);
-                return false;
-            }
-        } catch (Exception e) {
-            logger.error("Error sending message based on type to chatId {}: {}", chatId, e.getMessage());
-            return false;
+    public CompletableFuture<Boolean> sendMessageBasedOnType(Long chatId, Message originalMessage) {
+        // For media messages, use copyMessage to avoid file ID issues between bots
+        if (originalMessage.hasPhoto() || originalMessage.hasVideo() ||
+            originalMessage.hasDocument() || originalMessage.hasAudio() ||
+            originalMessage.hasVoice() || originalMessage.hasAnimation() ||
+            originalMessage.hasSticker() || originalMessage.hasVideoNote()) {
+
+            return copyMessage(chatId, originalMessage.getChatId(), originalMessage.getMessageId());
+        } else if (originalMessage.hasText()) {
+            sendMessage(chatId, originalMessage.getText());
+            return CompletableFuture.completedFuture(true);
+        } else {
+            logger.warn("Unsupported message type for chatId {}", chatId);
+            return CompletableFuture.completedFuture(false);
         }
     }
 
@@ -254,26 +283,105 @@ public class MessageSender {
         editMessage.setChatId(chatId.toString());
         editMessage.setMessageId(messageId);
         editMessage.setReplyMarkup(null); // Remove keyboard
-        try {
-            bot.execute(editMessage);
-            logger.info("Removed buttons from message {} in chat {}", messageId, chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Failed to remove buttons from message {} in chat {}: {}", messageId, chatId, e.getMessage());
-        }
+        outgoingQueue.submit(chatId, () -> bot.execute(editMessage), false).whenComplete((edited, e) -> {
+            if (e != null) {
+                logger.error("Failed to remove buttons from message {} in chat {}: {}", messageId, chatId, e.getMessage());
+            } else {
+                logger.info("Removed buttons from message {} in chat {}", messageId, chatId);
+            }
+        });
     }
 
+    /**
+     * Removes the chat's previous screen. The ids are held until the next message to the chat, which
+     * replaces the newest of them in place when it can; the rest are deleted in deleteMessages batches
+     * once that message is queued or the update ends, whichever comes first.
+     */
     public void animateAndDeleteMessages(Long chatId, List<Integer> messageIds, String animationType) {
         if (messageIds == null || messageIds.isEmpty()) {
             return;
         }
-        for (Integer messageId : messageIds) {
-            try {
-                bot.execute(new DeleteMessage(String.valueOf(chatId), messageId));
-            } catch (TelegramApiException e) {
-                if (!e.getMessage().contains("message to delete not found")) {
-                    logger.error("Error deleting message {} for chatId {}: {}", messageId, chatId, e.getMessage());
+        boolean editable = editInPlace && navigatingChats.contains(chatId);
+        pendingRemovals.merge(chatId, new PendingRemoval(new ArrayList<>(messageIds), editable), PendingRemoval::merge);
+        // Covers removals made outside an update, e.g. from an admin action that never messages the chat
+        taskScheduler.schedule(() -> flushPendingRemovals(chatId), Instant.now().plusMillis(REMOVAL_GRACE_MILLIS));
+    }
+
+    public void flushPendingRemovals(Long chatId) {
+        PendingRemoval removal = pendingRemovals.remove(chatId);
+        if (removal != null) {
+            deleteMessages(chatId, removal.messageIds().stream().distinct().toList());
+        }
+    }
+
+    private void deleteMessages(Long chatId, List<Integer> messageIds) {
+        for (int start = 0; start < messageIds.size(); start += DeleteMessages.MAX_MESSAGE_IDS) {
+            List<Integer> batch = messageIds.subList(start, Math.min(start + DeleteMessages.MAX_MESSAGE_IDS, messageIds.size()));
+            DeleteMessages deleteMessages = new DeleteMessages(String.valueOf(chatId), batch);
+            outgoingQueue.submit(chatId, () -> bot.execute(deleteMessages), false).whenComplete((deleted, e) -> {
+                if (e != null) {
+                    logger.error("Error deleting messages {} for chatId {}: {}", batch, chatId, e.getMessage());
                 }
+            });
+        }
+    }
+
+    private Message send(Long chatId, SendMessage message) throws TelegramApiException {
+        Message sentMessage = bot.execute(message);
+        sessionService.addMessageId(chatId, sentMessage.getMessageId());
+        return sentMessage;
+    }
+
+    private Message replace(Long chatId, Integer messageId, SendMessage message) throws TelegramApiException {
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(chatId);
+        edit.setMessageId(messageId);
+        edit.setText(message.getText());
+        edit.setParseMode(message.getParseMode());
+        edit.setEntities(message.getEntities());
+        edit.setDisableWebPagePreview(message.getDisableWebPagePreview());
+        edit.setReplyMarkup((InlineKeyboardMarkup) message.getReplyMarkup());
+        try {
+            Serializable edited = bot.execute(edit);
+            sessionService.addMessageId(chatId, messageId);
+            return edited instanceof Message editedMessage ? editedMessage : messageWithId(messageId);
+        } catch (TelegramApiRequestException e) {
+            String response = e.getApiResponse() != null ? e.getApiResponse() : "";
+            if (response.contains("message is not modified")) {
+                sessionService.addMessageId(chatId, messageId);
+                return messageWithId(messageId);
+            }
+            if (e.getErrorCode() != null && e.getErrorCode() == 429) {
+                throw e;
+            }
+            // Not editable any more (gone, or of another kind): fall back to delete and send
+            logger.debug("Could not edit message {} in chat {}, sending instead: {}", messageId, chatId, response);
+            try {
+                bot.execute(new DeleteMessages(String.valueOf(chatId), List.of(messageId)));
+            } catch (TelegramApiException deleteFailure) {
+                logger.error("Error deleting message {} for chatId {}: {}", messageId, chatId, deleteFailure.getMessage());
             }
+            return send(chatId, message);
         }
     }
-}
\ No newline at end of file
+
+    private static boolean canEdit(SendMessage message) {
+        return message.getReplyMarkup() == null || message.getReplyMarkup() instanceof InlineKeyboardMarkup;
+    }
+
+    private static Message messageWithId(Integer messageId) {
+        Message message = new Message();
+        message.setMessageId(messageId);
+        return message;
+    }
+
+    private <T> void enqueue(Long chatId, OutgoingMessageQueue.TelegramCall<T> call, String kind) {
+        outgoingQueue.submit(chatId, call).whenComplete((sent, e) -> {
+            if (e != null) {
+                logger.error("Error sending {} to chatId {}: {}", kind, chatId, e.getMessage());
+            } else {
+                logger.info("Sent {} to chatId {}", kind, chatId);
+            }
+        });
+    }
+}
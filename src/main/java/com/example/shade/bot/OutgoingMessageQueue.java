@@ -0,0 +1,206 @@
+package com.example.shade.bot;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends Telegram calls of the payment bot off the update thread. Calls for one chat run in the order
+ * they were submitted and new messages go out at most telegram.rate-limit.per-chat-per-second after a
+ * short burst, while all chats together share {@link TelegramRateLimiter}. A 429 pauses every sender
+ * for its retry_after and the call is tried again.
+ */
+@Component
+public class OutgoingMessageQueue {
+    private static final Logger logger = LoggerFactory.getLogger(OutgoingMessageQueue.class);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final TelegramRateLimiter rateLimiter;
+    private final ScheduledExecutorService workers;
+    private final double perChatPerSecond;
+    private final double perChatBurst;
+    // A chat has an entry only while it has queued or running calls
+    private final Map<Long, ChatQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+
+    @FunctionalInterface
+    public interface TelegramCall<T> {
+        T execute() throws TelegramApiException;
+    }
+
+    public record Stats(int pending, int activeChats, long sent, long failed, long retried) {
+    }
+
+    private record Job<T>(TelegramCall<T> call, boolean paced, CompletableFuture<T> result) {
+        void execute() throws TelegramApiException {
+            result.complete(call.execute());
+        }
+    }
+
+    private final class ChatQueue {
+        private final Queue<Job<?>> jobs = new ConcurrentLinkedQueue<>();
+        // Only touched by the one worker draining the chat
+        private double tokens = perChatBurst;
+        private long lastRefillNanos = System.nanoTime();
+
+        long reserve() {
+            long now = System.nanoTime();
+            tokens = Math.min(perChatBurst, tokens + (now - lastRefillNanos) * perChatPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) ((1 - tokens) / perChatPerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    public OutgoingMessageQueue(TelegramRateLimiter rateLimiter,
+                                @Value("${telegram.sender.workers:8}") int workerCount,
+                                @Value("${telegram.rate-limit.per-chat-per-second:1}") double perChatPerSecond,
+                                @Value("${telegram.rate-limit.per-chat-burst:3}") double perChatBurst) {
+        this.rateLimiter = rateLimiter;
+        this.workers = Executors.newScheduledThreadPool(workerCount);
+        this.perChatPerSecond = perChatPerSecond;
+        this.perChatBurst = perChatBurst;
+    }
+
+    public <T> CompletableFuture<T> submit(Long chatId, TelegramCall<T> call) {
+        return submit(chatId, call, true);
+    }
+
+    /**
+     * @param paced whether the call posts a new message and so counts against the per-chat limit;
+     *              edits and deletes don't
+     */
+    public <T> CompletableFuture<T> submit(Long chatId, TelegramCall<T> call, boolean paced) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pending.incrementAndGet();
+        AtomicReference<ChatQueue> started = new AtomicReference<>();
+        queues.compute(chatId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ChatQueue();
+                started.set(queue);
+            }
+            queue.jobs.add(new Job<>(call, paced, result));
+            return queue;
+        });
+        ChatQueue queue = started.get();
+        if (queue != null) {
+            try {
+                workers.execute(() -> drain(chatId, queue));
+            } catch (RejectedExecutionException e) {
+                queues.remove(chatId);
+                abandon(queue, e);
+            }
+        }
+        return result;
+    }
+
+    public Stats getStats() {
+        return new Stats(pending.get(), queues.size(), sent.sum(), failed.sum(), retried.sum());
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void logStats() {
+        Stats stats = getStats();
+        if (stats.pending() > 0 || stats.sent() > 0) {
+            logger.info("Outgoing messages: {} pending across {} chats, {} sent, {} failed, {} retried",
+                    stats.pending(), stats.activeChats(), stats.sent(), stats.failed(), stats.retried());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void drain(Long chatId, ChatQueue queue) {
+        do {
+            long waitNanos = queue.jobs.peek().paced() ? queue.reserve() : 0;
+            if (waitNanos > 0) {
+                // The chat stays registered, so nothing else drains it while we wait for its next token
+                try {
+                    workers.schedule(() -> drain(chatId, queue), waitNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    queues.remove(chatId);
+                    abandon(queue, e);
+                }
+                return;
+            }
+            send(chatId, queue.jobs.poll());
+        } while (queues.compute(chatId, (id, remaining) -> remaining.jobs.isEmpty() ? null : remaining) != null);
+    }
+
+    private void send(Long chatId, Job<?> job) {
+        try {
+            for (int attempt = 1; ; attempt++) {
+                rateLimiter.acquire();
+                try {
+                    job.execute();
+                    sent.increment();
+                    return;
+                } catch (TelegramApiRequestException e) {
+                    Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                    boolean rateLimited = e.getErrorCode() != null && e.getErrorCode() == 429 && retryAfter != null;
+                    if (!rateLimited || attempt == MAX_ATTEMPTS) {
+                        fail(job, e);
+                        return;
+                    }
+                    logger.warn("Rate limited while sending to chatId {}, backing off {}s", chatId, retryAfter);
+                    rateLimiter.backOff(retryAfter);
+                    retried.increment();
+                } catch (TelegramApiException e) {
+                    fail(job, e);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, e);
+        } catch (RuntimeException e) {
+            fail(job, e);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void fail(Job<?> job, Exception cause) {
+        failed.increment();
+        job.result().completeExceptionally(cause);
+    }
+
+    private void abandon(ChatQueue queue, Exception cause) {
+        Job<?> job;
+        while ((job = queue.jobs.poll()) != null) {
+            pending.decrementAndGet();
+            job.result().completeExceptionally(cause);
+        }
+        logger.warn("Dropped outgoing messages: sender is shut down");
+    }
+}
@@ -10,6 +10,7 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Component
@@ -18,15 +19,16 @@ public class ShadeAdminUpdateHandler {
 
     private final AdminBotService adminBotService;
     private final AdminBotMessageSender adminBotMessageSender;
-    private final Map<Long, BotState> userStates = new HashMap<>();
-    private final Map<Long, Map<String, Object>> userContext = new HashMap<>();
+    // Updates of different chats run in parallel on the UpdateDispatcher
+    private final Map<Long, BotState> userStates = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Object>> userContext = new ConcurrentHashMap<>();
 
     public boolean isUserInAdminState(Long chatId) {
         return userStates.containsKey(chatId);
     }
 
     public void setUserInAdminState(Long chatId) {
-        userStates.put(chatId,null);
+        userStates.put(chatId, BotState.IDLE);
     }
 
     public void clearAdminSession(Long chatId) {
@@ -57,9 +59,9 @@ public class ShadeAdminUpdateHandler {
 
         BotState state = userStates.get(chatId);
 
-        // FIX: If state is null, and it's a text message (but not /admin or /kassa),
+        // FIX: If state is null or IDLE, and it's a text message (but not /admin or /kassa),
         // we assume the user typed something unexpected. Send them back to the main menu.
-        if (state == null) {
+        if (state == null || state == BotState.IDLE) {
             if (update.getMessage().hasText()) {
                 // Clear any leftover state just in case
                 clearAdminSession(chatId);
@@ -625,6 +627,9 @@ public class ShadeAdminUpdateHandler {
     }
 
     public enum BotState {
+        // In the admin menu, not waiting for any input
+        IDLE,
+
         // Card states
         WAITING_CARD_ID,
         WAITING_CARD_NUMBER,
@@ -3,6 +3,8 @@ package com.example.shade.bot;
 import com.example.shade.model.*;
 import com.example.shade.repository.*;
 import com.example.shade.service.*;
+import com.example.shade.service.KeyboardCatalog.Button;
+import com.example.shade.service.KeyboardCatalog.Layout;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -35,6 +37,15 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class ShadePaymentBot extends TelegramLongPollingBot {
     private static final Logger logger = LoggerFactory.getLogger(ShadePaymentBot.class);
+    private static final Layout NAVIGATION_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.back", "BACK"), Button.translated("button.home", "HOME")));
+    private static final Layout MAIN_MENU_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.topup", "TOPUP")),
+            List.of(Button.translated("button.withdraw", "WITHDRAW")),
+            List.of(Button.translated("button.bonus", "BONUS")),
+            List.of(Button.translated("button.contact", "CONTACT")));
+    private static final Layout LANGUAGE_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.language_ru", "LANG_RU"), Button.translated("button.language_uz", "LANG_UZ")));
     private final TopUpService topUpService;
     private final WithdrawService withdrawService;
     private final BonusService bonusService;
@@ -51,6 +62,9 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
     private final AdminChatRepository adminChatRepository;
     private final ShadeAdminUpdateHandler adminUpdateHandler;
     private final AdminBotService adminBotService;
+    private final UpdateDispatcher updateDispatcher;
+    private final UserDirectoryService userDirectory;
+    private final KeyboardCatalog keyboardCatalog;
 
     @Value("${telegram.bot.token}")
     private String botToken;
@@ -90,24 +104,23 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
+        if (update == null) {
+            logger.warn("Received null update");
+            return;
+        }
+        Long chatId = UpdateDispatcher.chatIdOf(update);
+        if (chatId == null) {
+            logger.warn("No chatId found in update: {}", update);
+            return;
+        }
+        updateDispatcher.dispatch(chatId,
+                () -> messageSender.navigate(chatId, update.hasCallbackQuery(), () -> handleUpdate(update, chatId)));
+    }
+
+    private void handleUpdate(Update update, Long chatId) {
         try {
-            if (update == null) {
-                logger.warn("Received null update");
-                return;
-            }
-            Long chatId = null;
-            if (update.hasMessage()) {
-                chatId = update.getMessage().getChatId();
-            } else if (update.hasCallbackQuery()) {
-                chatId = update.getCallbackQuery().getMessage().getChatId();
-            } else if (update.hasMyChatMember()) {
-                chatId = update.getMyChatMember().getChat().getId();
-            }
-            if (chatId == null) {
-                logger.warn("No chatId found in update: {}", update);
-                return;
-            }
-            Optional<AdminChat> adminChatOpt = adminChatRepository.findById(chatId);
+            UserDirectoryService.UserEntry entry = userDirectory.get(chatId);
+            Optional<AdminChat> adminChatOpt = entry.admin() ? adminChatRepository.findById(chatId) : Optional.empty();
             boolean isAdmin = adminChatOpt.isPresent();
 
             if (isAdmin ) {
@@ -156,14 +169,12 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
             }
 
             // Check if user is blocked or needs to share phone number
-            BlockedUser user = blockedUserRepository.findById(chatId).orElse(null);
-            if (user != null && "BLOCKED".equals(user.getPhoneNumber())) {
+            if (entry.isBlocked()) {
                 logger.info("Blocked user {} attempted to interact", chatId);
                 return;
             }
             if (!languageSessionService.checkUserUserSession(chatId)) {
-                User userLanguage = userRepository.findByChatId(chatId).orElse(null);
-                if (userLanguage == null) {
+                if (entry.language() == null) {
                     if (update.hasMessage() && update.getMessage().hasText() && update.getMessage().getText().equals("/start")) {
                         sessionService.setUserState(chatId, "AWAITING_LANGUAGE");
                         sendLanguageSelection(chatId);
@@ -175,19 +186,19 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
                     }
                     return;
                 }
-                languageSessionService.addUserLanguageSession(chatId, userLanguage.getLanguage());
+                languageSessionService.addUserLanguageSession(chatId, entry.language());
             }
             // Handle phone number submission
             if (update.hasMessage() && update.getMessage().hasContact()) {
                 String receivedPhoneNumber = update.getMessage().getContact().getPhoneNumber();
-                if (user == null) {
-                    user = BlockedUser.builder().chatId(chatId).build();
-                }
+                BlockedUser user = blockedUserRepository.findById(chatId)
+                        .orElseGet(() -> BlockedUser.builder().chatId(chatId).build());
                 if (!receivedPhoneNumber.startsWith("+")) {
                     receivedPhoneNumber = "+" + receivedPhoneNumber;
                 }
                 user.setPhoneNumber(receivedPhoneNumber);
                 blockedUserRepository.save(user);
+                userDirectory.invalidate(chatId);
                 userBalanceRepository.save(UserBalance.builder().chatId(chatId).tickets(0L).balance(BigDecimal.ZERO).build());
 
                 logger.info("Phone number saved for chatId {}: {}", chatId, receivedPhoneNumber);
@@ -204,10 +215,10 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
             }
 
             // If user hasn't shared phone number, show menu link
-            if (user == null || user.getPhoneNumber() == null) {
-                if (user == null) {
-                    user = BlockedUser.builder().chatId(chatId).build();
-                    blockedUserRepository.save(user);
+            if (!entry.registered() || entry.phoneNumber() == null) {
+                if (!entry.registered()) {
+                    blockedUserRepository.save(BlockedUser.builder().chatId(chatId).build());
+                    userDirectory.invalidate(chatId);
                 }
                 sessionService.setUserState(chatId, "AWAITING_PHONE_NUMBER");
                 sendPhoneNumberRequest(chatId);
@@ -313,8 +324,7 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
         String state = sessionService.getUserState(chatId);
         if ("AWAITING_PHONE_NUMBER".equals(state)) {
             if (messageText.equals("🏠 Asosiy menyu")) {
-                BlockedUser user = blockedUserRepository.findById(chatId).orElse(null);
-                if (user != null && user.getPhoneNumber() != null && !"BLOCKED".equals(user.getPhoneNumber())) {
+                if (userDirectory.get(chatId).hasPhoneNumber()) {
                     sessionService.clearSession(chatId);
                     sendMainMenu(chatId, true);
                 } else {
@@ -491,29 +501,11 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
     }
 
     private InlineKeyboardMarkup createMainMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.topup"), "TOPUP")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.withdraw"), "WITHDRAW")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.bonus"), "BONUS")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.contact"), "CONTACT")));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, MAIN_MENU_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createBonusMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
-    }
-
-    private List<InlineKeyboardButton> createNavigationButtons(Long chatId) {
-        List<InlineKeyboardButton> buttons = new ArrayList<>();
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "button.back"), "BACK"));
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "button.home"), "HOME"));
-        return buttons;
+        return keyboardCatalog.get(chatId, NAVIGATION_KEYBOARD);
     }
 
     private void sendLanguageSelection(Long chatId) {
@@ -525,14 +517,7 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
     }
 
     private InlineKeyboardMarkup createLanguageKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(
-                createButton(languageSessionService.getTranslation(chatId, "button.language_ru"), "LANG_RU"),
-                createButton(languageSessionService.getTranslation(chatId, "button.language_uz"), "LANG_UZ")
-        ));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, LANGUAGE_KEYBOARD);
     }
 
     private void handleLanguageSelection(String callback, Long chatId) {
@@ -547,12 +532,12 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
             return;
         }
         userRepository.save(user);
+        userDirectory.invalidate(chatId);
         logger.info("Language set for chatId {}: {}", chatId, user.getLanguage());
         sessionService.clearSession(chatId);
         languageSessionService.addUserLanguageSession(chatId, user.getLanguage());
 
-        BlockedUser blockedUser = blockedUserRepository.findById(chatId).orElse(null);
-        if (blockedUser == null || blockedUser.getPhoneNumber() == null) {
+        if (userDirectory.get(chatId).phoneNumber() == null) {
             sendPhoneNumberRequest(chatId);
         } else {
             sendMainMenu(chatId, true);
@@ -0,0 +1,57 @@
+package com.example.shade.bot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket for outgoing Telegram calls of the payment bot. Bulk senders take a permit per message
+ * so they stay under Telegram's global limit, and a 429 stops everyone for its retry_after.
+ */
+@Component
+public class TelegramRateLimiter {
+    private final double permitsPerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long blockedUntilNanos;
+
+    public TelegramRateLimiter(@Value("${telegram.rate-limit.per-second:30}") double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = permitsPerSecond;
+        this.tokens = permitsPerSecond;
+    }
+
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                if (now >= blockedUntilNanos && tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                long refillWait = (long) ((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                waitNanos = Math.max(blockedUntilNanos - now, refillWait);
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 1));
+        }
+    }
+
+    /**
+     * Holds every caller back for {@code seconds}, as asked by a 429 response.
+     */
+    public synchronized void backOff(int seconds) {
+        long now = System.nanoTime();
+        blockedUntilNanos = Math.max(blockedUntilNanos, now + TimeUnit.SECONDS.toNanos(seconds));
+        tokens = 0;
+        lastRefillNanos = now;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.shade.bot;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs bot updates off the polling thread. Every chat has its own queue that is drained by at most one
+ * worker at a time, so updates of one chat stay in order while different chats run in parallel and a
+ * slow payment check only holds up its own user.
+ */
+@Component
+public class UpdateDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+    private static final long SLOW_UPDATE_MILLIS = 5_000;
+
+    private final ExecutorService workers;
+    // A chat has an entry only while it has queued or running updates
+    private final Map<Long, Queue<Task>> queues = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public record Stats(int pending, int activeChats, long processed, long failed,
+                        double averageLatencyMillis, double maxLatencyMillis) {
+    }
+
+    private record Task(Runnable body, long enqueuedAt) {
+    }
+
+    public UpdateDispatcher(@Value("${telegram.dispatcher.workers:16}") int workerCount) {
+        this.workers = Executors.newFixedThreadPool(workerCount);
+    }
+
+    public void dispatch(Long chatId, Runnable update) {
+        Task task = new Task(update, System.nanoTime());
+        pending.incrementAndGet();
+        AtomicReference<Queue<Task>> started = new AtomicReference<>();
+        queues.compute(chatId, (id, tasks) -> {
+            if (tasks == null) {
+                tasks = new ConcurrentLinkedQueue<>();
+                started.set(tasks);
+            }
+            tasks.add(task);
+            return tasks;
+        });
+        Queue<Task> tasks = started.get();
+        if (tasks != null) {
+            try {
+                workers.execute(() -> drain(chatId, tasks));
+            } catch (RejectedExecutionException e) {
+                queues.remove(chatId);
+                pending.addAndGet(-tasks.size());
+                logger.warn("Dropped update for chatId {}: dispatcher is shut down", chatId);
+            }
+        }
+    }
+
+    /**
+     * Runs an update that belongs to no chat, such as an inline query, on the worker pool without
+     * ordering it against anything else.
+     */
+    public void dispatchUnordered(Runnable update) {
+        Task task = new Task(update, System.nanoTime());
+        pending.incrementAndGet();
+        try {
+            workers.execute(() -> run(null, task));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            logger.warn("Dropped chatless update: dispatcher is shut down");
+        }
+    }
+
+    public static Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        } else if (update.hasCallbackQuery()) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        } else if (update.hasMyChatMember()) {
+            return update.getMyChatMember().getChat().getId();
+        }
+        return null;
+    }
+
+    public Stats getStats() {
+        long count = processed.sum();
+        return new Stats(pending.get(), queues.size(), count, failed.sum(),
+                count == 0 ? 0 : totalLatencyNanos.sum() / (double) count / 1_000_000,
+                maxLatencyNanos.get() / 1_000_000.0);
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void logStats() {
+        Stats stats = getStats();
+        if (stats.pending() > 0 || stats.processed() > 0) {
+            logger.info("Update dispatcher: {} pending across {} chats, {} processed, {} failed, avg {} ms, max {} ms",
+                    stats.pending(), stats.activeChats(), stats.processed(), stats.failed(),
+                    String.format("%.1f", stats.averageLatencyMillis()), String.format("%.1f", stats.maxLatencyMillis()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void drain(Long chatId, Queue<Task> tasks) {
+        do {
+            run(chatId, tasks.poll());
+        } while (queues.compute(chatId, (id, remaining) -> remaining.isEmpty() ? null : remaining) != null);
+    }
+
+    private void run(Long chatId, Task task) {
+        try {
+            task.body().run();
+        } catch (Throwable e) {
+            // Errors too: drain() has to get to the end, or the chat's queue is never released
+            failed.increment();
+            logger.error("Error processing update for chatId {}", chatId, e);
+        } finally {
+            pending.decrementAndGet();
+            long latency = System.nanoTime() - task.enqueuedAt();
+            processed.increment();
+            totalLatencyNanos.add(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            if (latency > TimeUnit.MILLISECONDS.toNanos(SLOW_UPDATE_MILLIS)) {
+                logger.warn("Update for chatId {} took {} ms from arrival to completion", chatId, TimeUnit.NANOSECONDS.toMillis(latency));
+            }
+        }
+    }
+}
@@ -3,10 +3,16 @@ package com.example.shade.config;
 import com.example.shade.bot.AdminLogBot;
 import com.example.shade.bot.LottoLogBot;
 import com.example.shade.bot.ShadePaymentBot;
+import com.example.shade.controller.TelegramWebhookController;
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
@@ -17,6 +23,7 @@ import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
  */
 @Configuration
 public class BotInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(BotInitializer.class);
 
     @Autowired
     private ShadePaymentBot shadePaymentBot;
@@ -30,8 +37,22 @@ public class BotInitializer {
 
 
 
+    @Value("${telegram.webhook.enabled:false}")
+    private boolean webhookEnabled;
+
+    // Public https address Telegram should post to; left empty when replaying updates locally
+    @Value("${telegram.webhook.base-url:}")
+    private String webhookBaseUrl;
+
+    @Value("${telegram.webhook.secret:}")
+    private String webhookSecret;
+
     @PostConstruct
     public void init() {
+        if (webhookEnabled) {
+            registerWebhooks();
+            return;
+        }
         try {
             TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
             botsApi.registerBot(adminLogBot); // ✅ Register second bot here
@@ -42,4 +63,27 @@ public class BotInitializer {
             System.out.println("❌ Failed to register bots: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private void registerWebhooks() {
+        if (webhookSecret.isBlank()) {
+            throw new IllegalStateException("telegram.webhook.secret must be set when telegram.webhook.enabled is true");
+        }
+        if (webhookBaseUrl.isEmpty()) {
+            logger.warn("Webhook mode is on but telegram.webhook.base-url is empty; updates are only accepted from local posts");
+            return;
+        }
+        setWebhook(shadePaymentBot, TelegramWebhookController.PAYMENT_BOT);
+        setWebhook(adminLogBot, TelegramWebhookController.ADMIN_LOG_BOT);
+        setWebhook(lottoLogBot, TelegramWebhookController.LOTTO_BOT);
+    }
+
+    private void setWebhook(DefaultAbsSender bot, String name) {
+        String url = webhookBaseUrl.replaceAll("/+$", "") + TelegramWebhookController.PATH + "/" + name;
+        try {
+            bot.execute(SetWebhook.builder().url(url).secretToken(webhookSecret).build());
+            logger.info("Webhook set for {} bot: {}", name, url);
+        } catch (TelegramApiException e) {
+            logger.error("Failed to set webhook for {} bot: {}", name, e.getMessage());
+        }
+    }
+}
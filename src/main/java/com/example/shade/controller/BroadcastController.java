@@ -1,14 +1,12 @@
 package com.example.shade.controller;
 
+import com.example.shade.model.Broadcast;
 import com.example.shade.service.BroadcastService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.Base64;
@@ -79,7 +77,7 @@ public class BroadcastController {
     }
 
     @PostMapping("/send")
-    public ResponseEntity<String> sendBroadcast(HttpServletRequest request, @RequestBody BroadcastRequest broadcastRequest) {
+    public ResponseEntity<?> sendBroadcast(HttpServletRequest request, @RequestBody BroadcastRequest broadcastRequest) {
         if (!authenticate(request)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
         }
@@ -87,16 +85,66 @@ public class BroadcastController {
             return ResponseEntity.badRequest().body("Message text is required.");
         }
         try {
-            broadcastService.sendBroadcast(
+            Broadcast broadcast = broadcastService.sendBroadcast(
                     broadcastRequest.getMessageText(),
                     broadcastRequest.getParseMode(),
                     broadcastRequest.getButtonText(),
                     broadcastRequest.getButtonUrl(),
                     broadcastRequest.getScheduledTime()
             );
-            return ResponseEntity.ok("Broadcast initiated successfully.");
+            return ResponseEntity.ok(broadcast);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body("Failed to initiate broadcast: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @GetMapping
+    public ResponseEntity<?> getBroadcasts(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return ResponseEntity.ok(broadcastService.getBroadcasts());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getBroadcast(HttpServletRequest request, @PathVariable Long id) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return broadcastService.getBroadcast(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{id}/pause")
+    public ResponseEntity<?> pauseBroadcast(HttpServletRequest request, @PathVariable Long id) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return broadcastService.pause(id)
+                ? ResponseEntity.ok("Broadcast paused.")
+                : ResponseEntity.status(HttpStatus.CONFLICT).body("Broadcast is not running or scheduled.");
+    }
+
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<?> resumeBroadcast(HttpServletRequest request, @PathVariable Long id) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return broadcastService.resume(id)
+                ? ResponseEntity.ok("Broadcast resumed.")
+                : ResponseEntity.status(HttpStatus.CONFLICT).body("Broadcast is not paused.");
+    }
+
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<?> cancelBroadcast(HttpServletRequest request, @PathVariable Long id) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return broadcastService.cancel(id)
+                ? ResponseEntity.ok("Broadcast canceled.")
+                : ResponseEntity.status(HttpStatus.CONFLICT).body("Broadcast is already finished.");
+    }
+}
@@ -1,10 +1,21 @@
 package com.example.shade.controller;
 
+import com.example.shade.bot.OutgoingMessageQueue;
+import com.example.shade.bot.UpdateDispatcher;
 import com.example.shade.dto.DashboardStats;
 import com.example.shade.dto.RequestFilter;
+import com.example.shade.model.PlatformOperation;
 import com.example.shade.model.RequestStatus;
 import com.example.shade.model.RequestType;
+import com.example.shade.service.CashdeskBalanceTracker;
+import com.example.shade.service.CashdeskClient;
 import com.example.shade.service.DashboardService;
+import com.example.shade.service.OutboundHttpClients;
+import com.example.shade.service.PlatformOperationService;
+import com.example.shade.service.RequestRollupService;
+import com.example.shade.service.TranslationCatalog;
+import com.example.shade.service.UserProfileCache;
+import com.example.shade.service.UserSessionService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -24,6 +35,36 @@ public class DashboardController {
     @Autowired
     private DashboardService dashboardService;
 
+    @Autowired
+    private RequestRollupService requestRollupService;
+
+    @Autowired
+    private UpdateDispatcher updateDispatcher;
+
+    @Autowired
+    private OutgoingMessageQueue outgoingMessageQueue;
+
+    @Autowired
+    private UserSessionService userSessionService;
+
+    @Autowired
+    private TranslationCatalog translationCatalog;
+
+    @Autowired
+    private OutboundHttpClients outboundHttpClients;
+
+    @Autowired
+    private CashdeskClient cashdeskClient;
+
+    @Autowired
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private CashdeskBalanceTracker cashdeskBalanceTracker;
+
+    @Autowired
+    private PlatformOperationService platformOperationService;
+
     private boolean authenticate(HttpServletRequest request) {
         String authHeader = request.getHeader("Authorization");
         if (authHeader != null && authHeader.startsWith("Basic ")) {
@@ -221,4 +262,110 @@ public class DashboardController {
         Map<String, Map<String, Double>> platformGraphData = dashboardService.getPlatformGraphData(filter);
         return ResponseEntity.ok(platformGraphData);
     }
-}
\ No newline at end of file
+
+    @PostMapping("/rollup/rebuild")
+    public ResponseEntity<Void> rebuildRollup(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        requestRollupService.rebuildClosedDays();
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/dispatcher")
+    public ResponseEntity<UpdateDispatcher.Stats> getDispatcherStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(updateDispatcher.getStats());
+    }
+
+    @GetMapping("/outgoing")
+    public ResponseEntity<OutgoingMessageQueue.Stats> getOutgoingStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(outgoingMessageQueue.getStats());
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<UserSessionService.Stats> getSessionStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(userSessionService.getStats());
+    }
+
+    @GetMapping("/translations")
+    public ResponseEntity<TranslationCatalog.Stats> getTranslationStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(translationCatalog.getStats());
+    }
+
+    @PostMapping("/translations/reload")
+    public ResponseEntity<TranslationCatalog.Stats> reloadTranslations(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        translationCatalog.reload();
+        return ResponseEntity.ok(translationCatalog.getStats());
+    }
+
+    @GetMapping("/http")
+    public ResponseEntity<Map<OutboundHttpClients.Provider, OutboundHttpClients.Stats>> getHttpStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(outboundHttpClients.getStats());
+    }
+
+    @GetMapping("/cashdesk")
+    public ResponseEntity<Map<CashdeskClient.Operation, CashdeskClient.Stats>> getCashdeskStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(cashdeskClient.getStats());
+    }
+
+    @GetMapping("/user-profiles")
+    public ResponseEntity<UserProfileCache.Stats> getUserProfileStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(userProfileCache.getStats());
+    }
+
+    @GetMapping("/cashdesk/balances")
+    public ResponseEntity<Map<String, CashdeskBalanceTracker.Snapshot>> getCashdeskBalances(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(cashdeskBalanceTracker.getSnapshots());
+    }
+
+    @GetMapping("/platform-operations")
+    public ResponseEntity<PlatformOperationService.Stats> getPlatformOperationStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(platformOperationService.getStats());
+    }
+
+    @GetMapping("/platform-operations/unresolved")
+    public ResponseEntity<List<PlatformOperation>> getUnresolvedPlatformOperations(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(platformOperationService.getUnresolved());
+    }
+
+    @PostMapping("/platform-operations/{id}/retry")
+    public ResponseEntity<Void> retryPlatformOperation(@PathVariable Long id, HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return platformOperationService.retry(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
@@ -1,7 +1,7 @@
 package com.example.shade.controller;
 
 import com.example.shade.model.ExchangeRate;
-import com.example.shade.repository.ExchangeRateRepository;
+import com.example.shade.service.ExchangeRateService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
@@ -15,17 +15,16 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Base64;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/exchange-rates")
 @CrossOrigin(origins = "*")
 public class ExchangeRateController {
 
-    private final ExchangeRateRepository exchangeRateRepository;
+    private final ExchangeRateService exchangeRateService;
 
-    public ExchangeRateController(ExchangeRateRepository exchangeRateRepository) {
-        this.exchangeRateRepository = exchangeRateRepository;
+    public ExchangeRateController(ExchangeRateService exchangeRateService) {
+        this.exchangeRateService = exchangeRateService;
     }
 
     private boolean authenticate(HttpServletRequest request) {
@@ -39,13 +38,15 @@ public class ExchangeRateController {
     }
 
     @GetMapping("/latest")
-    public ResponseEntity<ExchangeRate> getLatestExchangeRate(HttpServletRequest request) {
+    public ResponseEntity<ExchangeRateService.RateSnapshot> getLatestExchangeRate(HttpServletRequest request) {
         if (!authenticate(request)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
-        Optional<ExchangeRate> latestRate = exchangeRateRepository.findLatest();
-        return latestRate.map(ResponseEntity::ok)
-                .orElseGet(() -> ResponseEntity.notFound().build());
+        try {
+            return ResponseEntity.ok(exchangeRateService.current());
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
 
     @PostMapping("/update")
@@ -53,12 +54,8 @@ public class ExchangeRateController {
         if (!authenticate(request)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
-        ExchangeRate exchangeRate = ExchangeRate.builder()
-                .uzsToRub(rateRequest.getUzsToRub())
-                .rubToUzs(rateRequest.getRubToUzs())
-                .createdAt(LocalDateTime.now(ZoneId.of("GMT+5")))
-                .build();
-        ExchangeRate savedRate = exchangeRateRepository.save(exchangeRate);
+        ExchangeRate savedRate = exchangeRateService.save(rateRequest.getUzsToRub(), rateRequest.getRubToUzs(),
+                LocalDateTime.now(ZoneId.of("GMT+5")));
         return ResponseEntity.ok(savedRate);
     }
 
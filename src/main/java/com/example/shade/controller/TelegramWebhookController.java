@@ -0,0 +1,83 @@
+package com.example.shade.controller;
+
+import com.example.shade.bot.AdminLogBot;
+import com.example.shade.bot.LottoLogBot;
+import com.example.shade.bot.ShadePaymentBot;
+import com.example.shade.bot.UpdateDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Receives bot updates when telegram.webhook.enabled is set. Updates are only queued here and the
+ * request is answered right away; processing happens on the {@link UpdateDispatcher} workers. Every
+ * post must carry telegram.webhook.secret in X-Telegram-Bot-Api-Secret-Token, and webhook mode refuses
+ * to start without one, since an update decides which admin chat an action comes from. Recorded
+ * updates can be replayed locally by posting their JSON to /telegram/webhook/{bot} with that header.
+ */
+@RestController
+@RequestMapping(TelegramWebhookController.PATH)
+@ConditionalOnProperty(name = "telegram.webhook.enabled", havingValue = "true")
+public class TelegramWebhookController {
+    private static final Logger logger = LoggerFactory.getLogger(TelegramWebhookController.class);
+    public static final String PATH = "/telegram/webhook";
+    public static final String PAYMENT_BOT = "payment";
+    public static final String ADMIN_LOG_BOT = "admin-log";
+    public static final String LOTTO_BOT = "lotto";
+
+    private final UpdateDispatcher updateDispatcher;
+    private final byte[] secretToken;
+    private final Map<String, Consumer<Update>> handlers;
+
+    public TelegramWebhookController(ShadePaymentBot shadePaymentBot,
+                                     AdminLogBot adminLogBot,
+                                     LottoLogBot lottoLogBot,
+                                     UpdateDispatcher updateDispatcher,
+                                     @Value("${telegram.webhook.secret:}") String secretToken) {
+        if (secretToken == null || secretToken.isBlank()) {
+            throw new IllegalStateException("telegram.webhook.secret must be set when telegram.webhook.enabled is true");
+        }
+        this.updateDispatcher = updateDispatcher;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+        this.handlers = Map.of(
+                // The payment bot already hands every update to the dispatcher itself
+                PAYMENT_BOT, shadePaymentBot::onUpdateReceived,
+                ADMIN_LOG_BOT, update -> dispatch(update, adminLogBot::onUpdateReceived),
+                LOTTO_BOT, update -> dispatch(update, lottoLogBot::onUpdateReceived));
+    }
+
+    @PostMapping("/{bot}")
+    public ResponseEntity<Void> receive(@PathVariable String bot,
+                                        @RequestHeader(value = "X-Telegram-Bot-Api-Secret-Token", required = false) String token,
+                                        @RequestBody Update update) {
+        if (token == null || !MessageDigest.isEqual(secretToken, token.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejected webhook update for {} with a wrong secret token", bot);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Consumer<Update> handler = handlers.get(bot);
+        if (handler == null) {
+            return ResponseEntity.notFound().build();
+        }
+        handler.accept(update);
+        return ResponseEntity.ok().build();
+    }
+
+    private void dispatch(Update update, Consumer<Update> handler) {
+        Long chatId = UpdateDispatcher.chatIdOf(update);
+        if (chatId != null) {
+            updateDispatcher.dispatch(chatId, () -> handler.accept(update));
+        } else {
+            updateDispatcher.dispatchUnordered(() -> handler.accept(update));
+        }
+    }
+}
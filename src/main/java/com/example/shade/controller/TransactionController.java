@@ -1,9 +1,12 @@
 package com.example.shade.controller;
 
 import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.Platform;
 import com.example.shade.model.RequestStatus;
 import com.example.shade.model.RequestType;
 import com.example.shade.repository.HizmatRequestRepository;
+import com.example.shade.service.PlatformRegistry;
+import com.example.shade.service.RequestRollupService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -12,6 +15,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.List;
 
@@ -20,7 +24,11 @@ import java.util.List;
 @RequiredArgsConstructor
 @CrossOrigin(origins = "*")
 public class TransactionController {
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final HizmatRequestRepository hizmatRequestRepository;
+    private final RequestRollupService requestRollupService;
+    private final PlatformRegistry platformRegistry;
 
     private boolean authenticate(HttpServletRequest request) {
         String authHeader = request.getHeader("Authorization");
@@ -38,19 +46,32 @@ public class TransactionController {
             @RequestParam(required = false) Long platformId,
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String type,
+            @RequestParam(required = false) LocalDateTime beforeCreatedAt,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "100") int size,
             HttpServletRequest request) {
         if (!authenticate(request)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         }
+        if (beforeCreatedAt != null && beforeId == null) {
+            return ResponseEntity.badRequest().build();
+        }
 
+        String platform = null;
+        if (platformId != null) {
+            // An unknown platform matches no transactions
+            platform = platformRegistry.findById(platformId).map(Platform::getName).orElse(null);
+            if (platform == null) {
+                return ResponseEntity.ok(List.of());
+            }
+        }
         RequestStatus requestStatus = status != null ? RequestStatus.valueOf(status) : null;
         RequestType requestType = type != null ? RequestType.valueOf(type) : null;
 
-        Pageable pageable = PageRequest.of(0, 100); // Fetch last 100 records
-        List<HizmatRequest> transactions = hizmatRequestRepository.findByFilters(cardId, platformId, requestStatus, requestType)
-                .stream()
-                .limit(100)
-                .toList();
+        // Next page: pass createdAt and id of the last returned transaction as beforeCreatedAt / beforeId
+        Pageable pageable = PageRequest.of(0, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        List<HizmatRequest> transactions = hizmatRequestRepository.findByFilters(
+                cardId, platform, requestStatus, requestType, beforeCreatedAt, beforeId, pageable);
 
         return ResponseEntity.ok(transactions);
     }
@@ -60,8 +81,7 @@ public class TransactionController {
         if (!authenticate(request)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         }
-        if (hizmatRequestRepository.existsById(id)) {
-            hizmatRequestRepository.deleteById(id);
+        if (requestRollupService.deleteById(id)) {
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.notFound().build();
@@ -76,7 +96,7 @@ public class TransactionController {
         if (existingIds == 0) {
             return ResponseEntity.notFound().build();
         }
-        hizmatRequestRepository.deleteAllById(ids);
+        requestRollupService.deleteAllById(ids);
         return ResponseEntity.noContent().build();
     }
 }
\ No newline at end of file
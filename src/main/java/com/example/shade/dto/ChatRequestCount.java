@@ -0,0 +1,19 @@
+package com.example.shade.dto;
+
+public class ChatRequestCount {
+    private final Long chatId;
+    private final long count;
+
+    public ChatRequestCount(Long chatId, Long count) {
+        this.chatId = chatId;
+        this.count = count != null ? count : 0L;
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.shade.dto;
+
+import java.time.LocalDate;
+
+public class DailyRequestCount {
+    private final LocalDate day;
+    private final long count;
+
+    public DailyRequestCount(LocalDate day, Long count) {
+        this.day = day;
+        this.count = count != null ? count : 0L;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
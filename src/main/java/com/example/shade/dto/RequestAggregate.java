@@ -0,0 +1,40 @@
+package com.example.shade.dto;
+
+import com.example.shade.model.RequestStatus;
+import com.example.shade.model.RequestType;
+
+public class RequestAggregate {
+    private final String platform;
+    private final RequestStatus status;
+    private final RequestType type;
+    private final long count;
+    private final long amount;
+
+    public RequestAggregate(String platform, RequestStatus status, RequestType type, Long count, Long amount) {
+        this.platform = platform;
+        this.status = status;
+        this.type = type;
+        this.count = count != null ? count : 0L;
+        this.amount = amount != null ? amount : 0L;
+    }
+
+    public String getPlatform() {
+        return platform;
+    }
+
+    public RequestStatus getStatus() {
+        return status;
+    }
+
+    public RequestType getType() {
+        return type;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.shade.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A unique amount handed out to a top-up request on a given admin card. The unique constraint on
+ * (admin_card_id, unique_amount) guarantees two open requests never wait for the same payment.
+ */
+@Entity
+@Table(name = "amount_reservation", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_amount_reservation_slot", columnNames = {"admin_card_id", "unique_amount"}),
+        @UniqueConstraint(name = "uk_amount_reservation_request", columnNames = {"request_id"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AmountReservation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "admin_card_id", nullable = false)
+    private Long adminCardId;
+
+    @Column(name = "unique_amount", nullable = false)
+    private Long uniqueAmount;
+
+    @Column(name = "request_id", nullable = false)
+    private Long requestId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
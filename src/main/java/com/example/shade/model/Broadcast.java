@@ -0,0 +1,67 @@
+package com.example.shade.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A broadcast to all non-blocked users. Recipients are walked in chat_id order and
+ * {@code lastChatId} is the last one handled, so a paused or interrupted broadcast picks up from there.
+ * A broadcast with a source message sends a copy of that message instead of {@code messageText}.
+ */
+@Entity
+@Table(name = "broadcast")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Broadcast {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "message_text", nullable = false, columnDefinition = "TEXT")
+    private String messageText;
+
+    @Column(name = "parse_mode")
+    private String parseMode;
+
+    @Column(name = "button_text")
+    private String buttonText;
+
+    @Column(name = "button_url")
+    private String buttonUrl;
+
+    @Column(name = "source_chat_id")
+    private Long sourceChatId;
+
+    @Column(name = "source_message_id")
+    private Integer sourceMessageId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private BroadcastStatus status;
+
+    @Column(name = "scheduled_time")
+    private LocalDateTime scheduledTime;
+
+    @Column(name = "last_chat_id")
+    private Long lastChatId;
+
+    @Column(name = "total_count", nullable = false)
+    private long totalCount;
+
+    @Column(name = "sent_count", nullable = false)
+    private long sentCount;
+
+    @Column(name = "failed_count", nullable = false)
+    private long failedCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,9 @@
+package com.example.shade.model;
+
+public enum BroadcastStatus {
+    SCHEDULED,
+    RUNNING,
+    PAUSED,
+    COMPLETED,
+    CANCELED
+}
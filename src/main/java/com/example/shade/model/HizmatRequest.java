@@ -6,7 +6,13 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "hizmat_request")
+@Table(name = "hizmat_request", indexes = {
+        @Index(name = "idx_hizmat_request_chat_status", columnList = "chat_id, status, created_at"),
+        @Index(name = "idx_hizmat_request_chat_platform_user", columnList = "chat_id, platform, platform_user_id, created_at"),
+        @Index(name = "idx_hizmat_request_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_hizmat_request_card_created", columnList = "admin_card_id, created_at"),
+        @Index(name = "idx_hizmat_request_created_id", columnList = "created_at, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,100 @@
+package com.example.shade.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A deposit to or payout from a platform account, written in the same transaction as the request's
+ * status change and carried out by {@link com.example.shade.service.PlatformOperationService}. The
+ * idempotency key is unique per request and operation type, so approving a request twice never moves
+ * money twice.
+ */
+@Entity
+@Table(name = "platform_operation", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_platform_operation_idempotency_key", columnNames = {"idempotency_key"})
+}, indexes = {
+        @Index(name = "idx_platform_operation_status_next_attempt", columnList = "status, next_attempt_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PlatformOperation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "idempotency_key", nullable = false)
+    private String idempotencyKey;
+
+    @Column(name = "request_id", nullable = false)
+    private Long requestId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false)
+    private PlatformOperationType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private PlatformOperationStatus status;
+
+    @Column(name = "platform", nullable = false)
+    private String platform;
+
+    @Column(name = "platform_user_id", nullable = false)
+    private String platformUserId;
+
+    // Deposit amount in the platform's currency
+    @Column(name = "amount")
+    private Long amount;
+
+    // Payout code given by the user
+    @Column(name = "code")
+    private String code;
+
+    @Column(name = "lng")
+    private String lng;
+
+    @Column(name = "card_number")
+    private String cardNumber;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Paid out amount for payouts
+    @Column(name = "result_amount")
+    private BigDecimal resultAmount;
+
+    @Column(name = "balance_after")
+    private BigDecimal balanceAfter;
+
+    @Column(name = "limit_after")
+    private BigDecimal limitAfter;
+
+    // HTTP status of a rejected call, null when the platform answered
+    @Column(name = "http_status")
+    private Integer httpStatus;
+
+    @Column(name = "message", columnDefinition = "TEXT")
+    private String message;
+
+    // Instance running the operation and how long its claim holds; renewed while the call is in flight
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
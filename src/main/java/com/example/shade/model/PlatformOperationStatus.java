@@ -0,0 +1,10 @@
+package com.example.shade.model;
+
+public enum PlatformOperationStatus {
+    PENDING,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    // The call may or may not have reached the platform; an admin has to check before it is retried
+    UNKNOWN
+}
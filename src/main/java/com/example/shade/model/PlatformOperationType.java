@@ -0,0 +1,6 @@
+package com.example.shade.model;
+
+public enum PlatformOperationType {
+    DEPOSIT,
+    PAYOUT
+}
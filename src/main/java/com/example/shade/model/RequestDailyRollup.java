@@ -0,0 +1,48 @@
+package com.example.shade.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Per-day counters of hizmat_request rows, keyed by the day the request was created.
+ * A missing admin card is stored as 0 so the key columns stay NOT NULL and can back the upsert constraint.
+ */
+@Entity
+@Table(name = "request_daily_rollup",
+        uniqueConstraints = @UniqueConstraint(name = "uk_request_daily_rollup_key",
+                columnNames = {"day", "platform", "admin_card_id", "type", "status"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RequestDailyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "platform", nullable = false)
+    private String platform;
+
+    @Column(name = "admin_card_id", nullable = false)
+    private Long adminCardId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false)
+    private RequestType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private RequestStatus status;
+
+    @Column(name = "request_count", nullable = false)
+    private Long requestCount;
+
+    @Column(name = "amount_sum", nullable = false)
+    private Long amountSum;
+}
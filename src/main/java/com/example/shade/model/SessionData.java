@@ -3,9 +3,11 @@ package com.example.shade.model;
 import jakarta.persistence.*;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+
 @Data
 @Entity
-@Table(name = "session_data")
+@Table(name = "session_data", indexes = @Index(name = "idx_session_data_chat_id", columnList = "chat_id"))
 public class SessionData {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,4 +21,7 @@ public class SessionData {
 
     @Column
     private String value;
-}
\ No newline at end of file
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
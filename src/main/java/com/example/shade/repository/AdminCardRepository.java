@@ -15,6 +15,9 @@ public interface AdminCardRepository extends JpaRepository<AdminCard, Long> {
     @Query("SELECT a FROM AdminCard a WHERE a.osonConfig.primaryConfig = true AND (a.lastUsed IS NULL OR a.lastUsed = (SELECT MIN(a2.lastUsed) FROM AdminCard a2 WHERE a2.osonConfig.primaryConfig = true)) ORDER BY a.lastUsed DESC LIMIT 1")
     Optional<AdminCard> findLeastRecentlyUsed();
 
+    @Query("SELECT a FROM AdminCard a WHERE a.osonConfig.primaryConfig = true ORDER BY a.lastUsed ASC NULLS FIRST")
+    List<AdminCard> findPrimaryOrderByLastUsed();
+
     Optional<AdminCard> findByCardNumberAndOsonConfig(String cardNumber, OsonConfig osonConfig);
 
     List<AdminCard> findByOsonConfig(OsonConfig osonConfig);
@@ -0,0 +1,31 @@
+package com.example.shade.repository;
+
+import com.example.shade.model.AmountReservation;
+import com.example.shade.model.RequestStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AmountReservationRepository extends JpaRepository<AmountReservation, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM AmountReservation a WHERE a.requestId = :requestId")
+    int deleteByRequestId(@Param("requestId") Long requestId);
+
+    Optional<AmountReservation> findByAdminCardIdAndUniqueAmount(Long adminCardId, Long uniqueAmount);
+
+    @Query("SELECT a FROM AmountReservation a WHERE a.createdAt < :before AND NOT EXISTS " +
+            "(SELECT h FROM HizmatRequest h WHERE h.id = a.requestId AND h.status IN :activeStatuses)")
+    List<AmountReservation> findOrphaned(@Param("before") LocalDateTime before,
+                                         @Param("activeStatuses") Collection<RequestStatus> activeStatuses);
+}
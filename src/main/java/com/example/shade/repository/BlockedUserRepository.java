@@ -1,7 +1,10 @@
 package com.example.shade.repository;
 
 import com.example.shade.model.BlockedUser;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,4 +15,11 @@ public interface BlockedUserRepository extends JpaRepository<BlockedUser, Long>
     Optional<BlockedUser> findByChatId(Long chatId);
 
     List<BlockedUser> findAllByPhoneNumberNot(String phoneNumber);
-}
\ No newline at end of file
+
+    long countByPhoneNumberNot(String phoneNumber);
+
+    @Query("SELECT b.chatId FROM BlockedUser b WHERE b.phoneNumber <> :excludedPhone AND b.chatId > :afterChatId ORDER BY b.chatId")
+    List<Long> findChatIdsAfter(@Param("excludedPhone") String excludedPhone,
+                                @Param("afterChatId") Long afterChatId,
+                                Pageable pageable);
+}
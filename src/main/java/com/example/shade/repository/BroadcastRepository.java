@@ -0,0 +1,47 @@
+package com.example.shade.repository;
+
+import com.example.shade.model.Broadcast;
+import com.example.shade.model.BroadcastStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BroadcastRepository extends JpaRepository<Broadcast, Long> {
+
+    List<Broadcast> findAllByOrderByCreatedAtDesc();
+
+    List<Broadcast> findByStatusIn(Collection<BroadcastStatus> statuses);
+
+    /**
+     * Moves the broadcast to {@code to} only if it is currently in one of {@code from}; returns 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Broadcast b SET b.status = :to WHERE b.id = :id AND b.status IN :from")
+    int updateStatus(@Param("id") Long id,
+                     @Param("from") Collection<BroadcastStatus> from,
+                     @Param("to") BroadcastStatus to);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Broadcast b SET b.lastChatId = :lastChatId, b.sentCount = b.sentCount + :sent, " +
+            "b.failedCount = b.failedCount + :failed WHERE b.id = :id")
+    void recordProgress(@Param("id") Long id,
+                        @Param("lastChatId") Long lastChatId,
+                        @Param("sent") long sent,
+                        @Param("failed") long failed);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Broadcast b SET b.status = com.example.shade.model.BroadcastStatus.COMPLETED, " +
+            "b.finishedAt = :finishedAt WHERE b.id = :id AND b.status = com.example.shade.model.BroadcastStatus.RUNNING")
+    int markCompleted(@Param("id") Long id, @Param("finishedAt") LocalDateTime finishedAt);
+}
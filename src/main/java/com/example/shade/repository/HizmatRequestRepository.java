@@ -3,7 +3,9 @@ package com.example.shade.repository;
 import com.example.shade.model.HizmatRequest;
 import com.example.shade.model.RequestStatus;
 import com.example.shade.model.RequestType;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -20,17 +22,26 @@ import java.util.Optional;
  */
 @Repository
 public interface HizmatRequestRepository extends JpaRepository<HizmatRequest, Long> {
+    /**
+     * Keyset page ordered by (createdAt, id) descending. Pass the createdAt and id of the last row of the
+     * previous page as the cursor, or nulls for the first page; the page size comes from {@code pageable}.
+     */
     @Query("SELECT r FROM HizmatRequest r WHERE " +
             "(:cardId IS NULL OR r.adminCardId = :cardId) AND " +
-            "(:platformId IS NULL OR r.platform IN (SELECT p.name FROM Platform p WHERE p.id = :platformId)) AND " +
+            "(:platform IS NULL OR r.platform = :platform) AND " +
             "(:status IS NULL OR r.status = :status) AND " +
-            "(:type IS NULL OR r.type = :type) " +
-            "ORDER BY r.createdAt DESC")
+            "(:type IS NULL OR r.type = :type) AND " +
+            "(:cursorCreatedAt IS NULL OR r.createdAt < :cursorCreatedAt OR " +
+            "(r.createdAt = :cursorCreatedAt AND r.id < :cursorId)) " +
+            "ORDER BY r.createdAt DESC, r.id DESC")
     List<HizmatRequest> findByFilters(
             @Param("cardId") Long cardId,
-            @Param("platformId") Long platformId,
+            @Param("platform") String platform,
             @Param("status") RequestStatus status,
-            @Param("type") RequestType type);
+            @Param("type") RequestType type,
+            @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+            @Param("cursorId") Long cursorId,
+            Pageable pageable);
 
     @Query("""
                 SELECT r FROM HizmatRequest r
@@ -75,4 +86,10 @@ public interface HizmatRequestRepository extends JpaRepository<HizmatRequest, Lo
             @Param("platform") String platform,
             @Param("platformUserId") String platformUserId,
             @Param("status") RequestStatus status);
-}
\ No newline at end of file
+
+    boolean existsByTransactionId(String transactionId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM HizmatRequest h WHERE h.id = :id")
+    Optional<HizmatRequest> findByIdForUpdate(@Param("id") Long id);
+}
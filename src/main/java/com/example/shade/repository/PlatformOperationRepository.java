@@ -0,0 +1,120 @@
+package com.example.shade.repository;
+
+import com.example.shade.model.PlatformOperation;
+import com.example.shade.model.PlatformOperationStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PlatformOperationRepository extends JpaRepository<PlatformOperation, Long> {
+
+    Optional<PlatformOperation> findByIdempotencyKey(String idempotencyKey);
+
+    List<PlatformOperation> findByStatus(PlatformOperationStatus status);
+
+    long countByStatus(PlatformOperationStatus status);
+
+    @Query("SELECT o FROM PlatformOperation o WHERE o.status = com.example.shade.model.PlatformOperationStatus.PENDING " +
+            "AND o.nextAttemptAt <= :now ORDER BY o.nextAttemptAt, o.id")
+    List<PlatformOperation> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Takes the operation for one attempt, leased to {@code owner} until {@code leaseUntil}; returns 0 if
+     * another worker or instance already did.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PlatformOperation o SET o.status = com.example.shade.model.PlatformOperationStatus.RUNNING, " +
+            "o.attempts = o.attempts + 1, o.leaseOwner = :owner, o.leaseUntil = :leaseUntil, o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status = com.example.shade.model.PlatformOperationStatus.PENDING")
+    int claim(@Param("id") Long id,
+              @Param("owner") String owner,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("now") LocalDateTime now);
+
+    /**
+     * Extends the lease of every operation {@code owner} is still running.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PlatformOperation o SET o.leaseUntil = :leaseUntil " +
+            "WHERE o.leaseOwner = :owner AND o.status = com.example.shade.model.PlatformOperationStatus.RUNNING")
+    int renewLeases(@Param("owner") String owner, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Rows claimed before leases existed have none; their last update stands in for it
+    @Query("SELECT o FROM PlatformOperation o WHERE o.status = com.example.shade.model.PlatformOperationStatus.RUNNING " +
+            "AND COALESCE(o.leaseUntil, o.updatedAt) < :cutoff")
+    List<PlatformOperation> findLeaseExpired(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Marks a RUNNING operation UNKNOWN if its lease ran out before {@code cutoff}; returns 0 if it settled
+     * or was renewed meanwhile.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PlatformOperation o SET o.status = com.example.shade.model.PlatformOperationStatus.UNKNOWN, " +
+            "o.leaseOwner = NULL, o.leaseUntil = NULL, o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status = com.example.shade.model.PlatformOperationStatus.RUNNING " +
+            "AND COALESCE(o.leaseUntil, o.updatedAt) < :cutoff")
+    int expire(@Param("id") Long id, @Param("cutoff") LocalDateTime cutoff, @Param("now") LocalDateTime now);
+
+    /**
+     * Records the outcome of an attempt, only while the operation is still RUNNING under {@code owner};
+     * returns 0 if it was reclaimed meanwhile.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PlatformOperation o SET o.status = :status, o.resultAmount = :resultAmount, " +
+            "o.balanceAfter = :balanceAfter, o.limitAfter = :limitAfter, o.httpStatus = :httpStatus, " +
+            "o.message = :message, o.leaseOwner = NULL, o.leaseUntil = NULL, o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status = com.example.shade.model.PlatformOperationStatus.RUNNING " +
+            "AND o.leaseOwner = :owner")
+    int settle(@Param("id") Long id,
+               @Param("owner") String owner,
+               @Param("status") PlatformOperationStatus status,
+               @Param("resultAmount") BigDecimal resultAmount,
+               @Param("balanceAfter") BigDecimal balanceAfter,
+               @Param("limitAfter") BigDecimal limitAfter,
+               @Param("httpStatus") Integer httpStatus,
+               @Param("message") String message,
+               @Param("now") LocalDateTime now);
+
+    /**
+     * Puts a RUNNING operation of {@code owner} back to PENDING for another attempt at {@code nextAttemptAt};
+     * returns 0 if it was reclaimed meanwhile.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PlatformOperation o SET o.status = com.example.shade.model.PlatformOperationStatus.PENDING, " +
+            "o.nextAttemptAt = :nextAttemptAt, o.httpStatus = :httpStatus, o.message = :message, " +
+            "o.leaseOwner = NULL, o.leaseUntil = NULL, o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status = com.example.shade.model.PlatformOperationStatus.RUNNING " +
+            "AND o.leaseOwner = :owner")
+    int requeue(@Param("id") Long id,
+                @Param("owner") String owner,
+                @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                @Param("httpStatus") Integer httpStatus,
+                @Param("message") String message,
+                @Param("now") LocalDateTime now);
+
+    /**
+     * Moves the operation to {@code to} only if it is currently in {@code from}; returns 0 otherwise.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PlatformOperation o SET o.status = :to, o.updatedAt = :now WHERE o.id = :id AND o.status = :from")
+    int updateStatus(@Param("id") Long id,
+                     @Param("from") PlatformOperationStatus from,
+                     @Param("to") PlatformOperationStatus to,
+                     @Param("now") LocalDateTime now);
+}
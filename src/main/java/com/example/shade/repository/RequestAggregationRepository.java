@@ -0,0 +1,75 @@
+package com.example.shade.repository;
+
+import com.example.shade.dto.ChatRequestCount;
+import com.example.shade.dto.DailyRequestCount;
+import com.example.shade.dto.RequestAggregate;
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.model.RequestType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Dashboard aggregations computed in the database, so the cost of a dashboard
+ * request depends on the number of groups rather than the size of hizmat_request.
+ */
+@Repository
+public interface RequestAggregationRepository extends org.springframework.data.repository.Repository<HizmatRequest, Long> {
+
+    String FILTERS = "(:cardId IS NULL OR r.adminCardId = :cardId) AND " +
+            "(:platformId IS NULL OR r.platform IN (SELECT p.name FROM Platform p WHERE p.id = :platformId)) AND " +
+            "(:status IS NULL OR r.status = :status) AND " +
+            "(:type IS NULL OR r.type = :type) AND " +
+            "(:startDate IS NULL OR r.createdAt >= :startDate) AND " +
+            "(:endDate IS NULL OR r.createdAt <= :endDate) ";
+
+    @Query("SELECT new com.example.shade.dto.RequestAggregate(r.platform, r.status, r.type, COUNT(r), SUM(r.uniqueAmount)) " +
+            "FROM HizmatRequest r WHERE " + FILTERS +
+            "GROUP BY r.platform, r.status, r.type")
+    List<RequestAggregate> aggregateByPlatformStatusType(
+            @Param("cardId") Long cardId,
+            @Param("platformId") Long platformId,
+            @Param("status") RequestStatus status,
+            @Param("type") RequestType type,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate);
+
+    @Query("SELECT new com.example.shade.dto.DailyRequestCount(CAST(r.createdAt AS LocalDate), COUNT(r)) " +
+            "FROM HizmatRequest r WHERE " + FILTERS +
+            "GROUP BY CAST(r.createdAt AS LocalDate)")
+    List<DailyRequestCount> countByDay(
+            @Param("cardId") Long cardId,
+            @Param("platformId") Long platformId,
+            @Param("status") RequestStatus status,
+            @Param("type") RequestType type,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate);
+
+    @Query("SELECT new com.example.shade.dto.ChatRequestCount(r.chatId, COUNT(r)) " +
+            "FROM HizmatRequest r WHERE " + FILTERS +
+            "GROUP BY r.chatId ORDER BY COUNT(r) DESC")
+    List<ChatRequestCount> countByChatId(
+            @Param("cardId") Long cardId,
+            @Param("platformId") Long platformId,
+            @Param("status") RequestStatus status,
+            @Param("type") RequestType type,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            Pageable pageable);
+
+    @Query("SELECT r FROM HizmatRequest r WHERE " + FILTERS +
+            "ORDER BY r.createdAt DESC")
+    List<HizmatRequest> findRecent(
+            @Param("cardId") Long cardId,
+            @Param("platformId") Long platformId,
+            @Param("status") RequestStatus status,
+            @Param("type") RequestType type,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            Pageable pageable);
+}
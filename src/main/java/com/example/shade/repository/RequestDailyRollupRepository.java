@@ -0,0 +1,80 @@
+package com.example.shade.repository;
+
+import com.example.shade.dto.DailyRequestCount;
+import com.example.shade.dto.RequestAggregate;
+import com.example.shade.model.RequestDailyRollup;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.model.RequestType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RequestDailyRollupRepository extends JpaRepository<RequestDailyRollup, Long> {
+
+    String FILTERS = "(:cardId IS NULL OR r.adminCardId = :cardId) AND " +
+            "(:platformId IS NULL OR r.platform IN (SELECT p.name FROM Platform p WHERE p.id = :platformId)) AND " +
+            "(:status IS NULL OR r.status = :status) AND " +
+            "(:type IS NULL OR r.type = :type) AND " +
+            "(:fromDay IS NULL OR r.day >= :fromDay) AND " +
+            "r.day < :toDay ";
+
+    @Modifying
+    @Query(value = """
+                INSERT INTO request_daily_rollup (day, platform, admin_card_id, type, status, request_count, amount_sum)
+                VALUES (:day, :platform, :adminCardId, :type, :status, :countDelta, :amountDelta)
+                ON CONFLICT (day, platform, admin_card_id, type, status)
+                DO UPDATE SET request_count = request_daily_rollup.request_count + EXCLUDED.request_count,
+                              amount_sum = request_daily_rollup.amount_sum + EXCLUDED.amount_sum
+            """, nativeQuery = true)
+    void upsert(@Param("day") LocalDate day,
+                @Param("platform") String platform,
+                @Param("adminCardId") Long adminCardId,
+                @Param("type") String type,
+                @Param("status") String status,
+                @Param("countDelta") long countDelta,
+                @Param("amountDelta") long amountDelta);
+
+    @Modifying
+    @Query(value = "DELETE FROM request_daily_rollup WHERE day >= :fromDay AND day < :toDay", nativeQuery = true)
+    int deleteDays(@Param("fromDay") LocalDate fromDay, @Param("toDay") LocalDate toDay);
+
+    @Modifying
+    @Query(value = """
+                INSERT INTO request_daily_rollup (day, platform, admin_card_id, type, status, request_count, amount_sum)
+                SELECT CAST(r.created_at AS date), r.platform, COALESCE(r.admin_card_id, 0), r.type, r.status,
+                       COUNT(*), COALESCE(SUM(r.unique_amount), 0)
+                FROM hizmat_request r
+                WHERE r.created_at >= :from AND r.created_at < :to
+                GROUP BY CAST(r.created_at AS date), r.platform, COALESCE(r.admin_card_id, 0), r.type, r.status
+            """, nativeQuery = true)
+    int insertFromRequests(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("SELECT new com.example.shade.dto.RequestAggregate(r.platform, r.status, r.type, SUM(r.requestCount), SUM(r.amountSum)) " +
+            "FROM RequestDailyRollup r WHERE " + FILTERS +
+            "GROUP BY r.platform, r.status, r.type")
+    List<RequestAggregate> aggregateByPlatformStatusType(
+            @Param("cardId") Long cardId,
+            @Param("platformId") Long platformId,
+            @Param("status") RequestStatus status,
+            @Param("type") RequestType type,
+            @Param("fromDay") LocalDate fromDay,
+            @Param("toDay") LocalDate toDay);
+
+    @Query("SELECT new com.example.shade.dto.DailyRequestCount(r.day, SUM(r.requestCount)) " +
+            "FROM RequestDailyRollup r WHERE " + FILTERS +
+            "GROUP BY r.day")
+    List<DailyRequestCount> countByDay(
+            @Param("cardId") Long cardId,
+            @Param("platformId") Long platformId,
+            @Param("status") RequestStatus status,
+            @Param("type") RequestType type,
+            @Param("fromDay") LocalDate fromDay,
+            @Param("toDay") LocalDate toDay);
+}
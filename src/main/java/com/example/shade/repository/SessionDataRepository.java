@@ -2,14 +2,27 @@ package com.example.shade.repository;
 
 import com.example.shade.model.SessionData;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface SessionDataRepository extends JpaRepository<SessionData, Long> {
     List<SessionData> findByChatId(Long chatId);
+    List<SessionData> findByChatIdIn(Collection<Long> chatIds);
     Optional<SessionData> findByChatIdAndKey(Long chatId, String key);
     void deleteByChatId(Long chatId);
-}
\ No newline at end of file
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM SessionData s WHERE s.chatId IN " +
+            "(SELECT d.chatId FROM SessionData d GROUP BY d.chatId HAVING MAX(d.updatedAt) < :before)")
+    int deleteIdleSessions(@Param("before") LocalDateTime before);
+}
@@ -2,10 +2,17 @@ package com.example.shade.repository;
 
 
 import com.example.shade.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByChatId(Long chatId);
+
+    @Query("SELECT u.chatId FROM User u WHERE u.chatId > :afterChatId ORDER BY u.chatId")
+    List<Long> findChatIdsAfter(@Param("afterChatId") Long afterChatId, Pageable pageable);
 }
\ No newline at end of file
@@ -1,32 +1,25 @@
 package com.example.shade.service;
 
 import com.example.shade.bot.AdminBotMessageSender;
-import com.example.shade.bot.MessageSender;
 import com.example.shade.model.AdminCard;
+import com.example.shade.model.Broadcast;
 import com.example.shade.model.Currency;
 import com.example.shade.model.LotteryPrize;
 import com.example.shade.model.OsonConfig;
 import com.example.shade.model.PaymentSystem;
 import com.example.shade.model.Platform;
-import com.example.shade.model.User;
 import com.example.shade.model.UserBalance;
 import com.example.shade.repository.AdminCardRepository;
 import com.example.shade.repository.LotteryPrizeRepository;
 import com.example.shade.repository.OsonConfigRepository;
 import com.example.shade.repository.PlatformRepository;
-import com.example.shade.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.telegram.telegrambots.bots.DefaultAbsSender;
-import org.telegram.telegrambots.bots.DefaultBotOptions;
-import org.telegram.telegrambots.meta.api.methods.ForwardMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -47,11 +40,8 @@ public class AdminBotService {
     private final ExchangeRateService exchangeRateService;
     private final LotteryService lotteryService;
     private final LotteryPrizeRepository lotteryPrizeRepository;
-    private final UserRepository userRepository;
-    private final MessageSender userMessageSender;
-
-    @Value("${telegram.bot.username}")
-    private String botToken;
+    private final PlatformRegistry platformRegistry;
+    private final BroadcastService broadcastService;
 
     // Main menu
     public void sendMainMenu(Long chatId) {
@@ -259,7 +249,7 @@ public class AdminBotService {
 
     public void getAllPlatforms(Long chatId) {
         try {
-            List<Platform> platforms = platformRepository.findAll();
+            List<Platform> platforms = platformRegistry.findAll();
             if (platforms.isEmpty()) {
                 messageSender.sendTextMessage(chatId, "📭 Platformalar mavjud emas");
             } else {
@@ -274,7 +264,7 @@ public class AdminBotService {
     public void getPlatformById(Long chatId, String platformIdStr) {
         try {
             Long platformId = Long.parseLong(platformIdStr);
-            Platform platform = platformRepository.findById(platformId)
+            Platform platform = platformRegistry.findById(platformId)
                     .orElseThrow(() -> new RuntimeException("Platforma topilmadi"));
             messageSender.sendPlatformDetails(chatId, platform);
         } catch (NumberFormatException e) {
@@ -287,7 +277,7 @@ public class AdminBotService {
 
     // Getter for use in handler (if needed for type check during update)
     public Platform getPlatformById(Long platformId) {
-        return platformRepository.findById(platformId)
+        return platformRegistry.findById(platformId)
                 .orElseThrow(() -> new RuntimeException("Platforma topilmadi"));
     }
 
@@ -325,6 +315,7 @@ public class AdminBotService {
             }
 
             platformRepository.save(platform);
+            platformRegistry.reload();
             messageSender.sendTextMessage(chatId, "✅ Platforma muvaffaqiyatli qo'shildi!\nID: " + platform.getId());
             sendPlatformsMenu(chatId);
         } catch (Exception e) {
@@ -367,6 +358,7 @@ public class AdminBotService {
             }
 
             platformRepository.save(platform);
+            platformRegistry.reload();
             messageSender.sendTextMessage(chatId, "✅ Platforma muvaffaqiyatli yangilandi!");
             sendPlatformsMenu(chatId);
         } catch (Exception e) {
@@ -380,6 +372,7 @@ public class AdminBotService {
         try {
             Long platformId = Long.parseLong(platformIdStr);
             platformRepository.deleteById(platformId);
+            platformRegistry.reload();
             messageSender.sendTextMessage(chatId, "✅ Platforma muvaffaqiyatli o'chirildi!");
             sendPlatformsMenu(chatId);
         } catch (NumberFormatException e) {
@@ -704,60 +697,26 @@ public class AdminBotService {
                         "Tasdiqlash uchun 'ha' yoki 'yes' deb yozing:");
     }
 
-    @Transactional
+    // Runs as a background broadcast, so nothing here may hold a transaction the broadcast has to see
     public void confirmAndForwardMessage(Long chatId, Map<String, Object> context) {
         try {
             Message message = (Message) context.get("message");
-            List<User> users = userRepository.findAll();
-
-            int successCount = 0;
-            int failCount = 0;
-
-            messageSender.sendTextMessage(chatId, "📤 Xabarlar yuborilmoqda...");
-
-            // Use AdminBot's ForwardMessage since it has access to the original message
-            DefaultAbsSender adminSender = new DefaultAbsSender(new DefaultBotOptions()) {
-                @Override
-                public String getBotToken() {
-                    return botToken;
-                }
-            };
-
-            for (User user : users) {
-                try {
-                    // Forward message directly from AdminBot
-                    ForwardMessage forwardMessage = new ForwardMessage();
-                    forwardMessage.setChatId(user.getChatId().toString());
-                    forwardMessage.setFromChatId(chatId.toString());
-                    forwardMessage.setMessageId(message.getMessageId());
-
-                    adminSender.execute(forwardMessage);
-                    successCount++;
-                    Thread.sleep(50); // Avoid hitting rate limits
-                } catch (TelegramApiException e) {
-                    // If forward fails, try sending the content directly
-                    try {
-                        boolean sent = sendMessageContentDirectly(user.getChatId(), message);
-                        if (sent) {
-                            successCount++;
-                        } else {
-                            failCount++;
-                        }
-                    } catch (Exception ex) {
-                        log.error("Failed to send message to user: " + user.getChatId(), ex);
-                        failCount++;
-                    }
-                } catch (Exception e) {
-                    log.error("Failed to send message to user: " + user.getChatId(), e);
-                    failCount++;
-                }
+            Broadcast broadcast;
+            if (message.hasText()) {
+                broadcast = broadcastService.sendBroadcast(message.getText(), null, null, null, null);
+            } else if (message.hasPhoto() || message.hasVideo() || message.hasDocument() || message.hasAudio()
+                    || message.hasVoice() || message.hasAnimation() || message.hasSticker() || message.hasVideoNote()) {
+                broadcast = broadcastService.sendCopy(message.getChatId(), message.getMessageId(), message.getCaption());
+            } else {
+                messageSender.sendTextMessage(chatId, "❌ Bu turdagi xabarni yuborib bo'lmaydi");
+                sendMainMenu(chatId);
+                return;
             }
 
             messageSender.sendTextMessage(chatId,
-                    String.format("✅ Xabar yuborish yakunlandi!\n\n" +
-                            "✔️ Muvaffaqiyatli: %d\n" +
-                            "❌ Xato: %d\n" +
-                            "📊 Jami: %d", successCount, failCount, users.size()));
+                    String.format("📤 Xabar yuborish boshlandi (#%d)\n\n" +
+                            "📊 Jami: %d\n" +
+                            "Jarayonni Broadcast bo'limida kuzatishingiz mumkin.", broadcast.getId(), broadcast.getTotalCount()));
 
             // Show main menu after completion
             sendMainMenu(chatId);
@@ -767,14 +726,4 @@ public class AdminBotService {
             sendMainMenu(chatId);
         }
     }
-
-    private boolean sendMessageContentDirectly(Long targetChatId, Message originalMessage) {
-        try {
-            // If forward fails, send the message content using the user bot
-            return userMessageSender.sendMessageBasedOnType(targetChatId, originalMessage);
-        } catch (Exception e) {
-            log.error("Error sending message content directly: {}", e.getMessage());
-            return false;
-        }
-    }
 }
\ No newline at end of file
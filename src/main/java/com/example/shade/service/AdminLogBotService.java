@@ -26,9 +26,9 @@ public class AdminLogBotService {
     private final AdminTelegramMessageSender adminTelegramMessageSender;
     private final AdminChatRepository adminChatRepository;
     private final HizmatRequestRepository requestRepository;
-    private final ExchangeRateRepository exchangeRateRepository;
+    private final ExchangeRateService exchangeRateService;
     private final AdminCardRepository adminCardRepository;
-    private final BlockedUserRepository blockedUserRepository;
+    private final UserDirectoryService userDirectory;
 
     public void sendScreenshotRequest(SendPhoto sendPhoto, Long userChatId) {
         if (sendPhoto == null || sendPhoto.getPhoto() == null) {
@@ -51,14 +51,11 @@ public class AdminLogBotService {
         }
 
         // Calculate RUB amount if needed
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
         long rubAmount =
-                BigDecimal.valueOf(request.getUniqueAmount())
-                        .multiply(latest.getUzsToRub())
-                        .longValue() / 1000;
+                latest.uzsToRub(request.getUniqueAmount());
         // Format log message as photo caption
-        String number = blockedUserRepository.findByChatId(userChatId).get().getPhoneNumber();
+        String number = userDirectory.getPhoneNumber(userChatId);
 
         String logMessage = String.format(
                 "\uD83C\uDD94: %d To‘lov skrinshoti keldi 📷\n" +
@@ -100,6 +97,7 @@ public class AdminLogBotService {
         }
         if (adminChat != null && !adminChat.isReceiveNotifications()) {
             adminChatRepository.delete(adminChat);
+            userDirectory.invalidate(chatId);
             adminTelegramMessageSender.clearBotData(chatId, messageId);
             logger.info("Deleted AdminChat for chatId {} due to disabled notifications or unauthorized access", chatId);
         } else if (adminChat != null) {
@@ -121,6 +119,7 @@ public class AdminLogBotService {
                 .receiveNotifications(receiveNotifications)
                 .build();
         adminChatRepository.save(adminChat);
+        userDirectory.invalidate(chatId);
         logger.info("Created new admin chatId: {} with notifications: {}", chatId, receiveNotifications);
         sendToAdmins("✅ New admin chatId " + chatId + " created with notifications: " + receiveNotifications);
         return true;
@@ -169,6 +168,7 @@ public class AdminLogBotService {
             return false;
         }
         adminChatRepository.delete(adminChat);
+        userDirectory.invalidate(chatId);
         logger.info("Deleted admin chatId: {}", chatId);
         sendToAdmins("✅ Admin chatId o'chirildi: " + chatId);
         return true;
@@ -1,31 +1,27 @@
 package com.example.shade.service;
 
 import com.example.shade.bot.MessageSender;
+import com.example.shade.bot.UpdateDispatcher;
 import com.example.shade.dto.BalanceLimit;
 import com.example.shade.model.*;
 import com.example.shade.model.Currency;
 import com.example.shade.repository.*;
+import com.example.shade.service.KeyboardCatalog.Button;
+import com.example.shade.service.KeyboardCatalog.Layout;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.util.DigestUtils;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
-import javax.xml.bind.DatatypeConverter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -37,22 +33,56 @@ public class BonusService {
     private final UserSessionService sessionService;
     private final ReferralRepository referralRepository;
     private final UserBalanceRepository userBalanceRepository;
-    private final PlatformRepository platformRepository;
+    private final PlatformRegistry platformRegistry;
     private final HizmatRequestRepository requestRepository;
+    private final RequestRollupService requestRollupService;
     private final BlockedUserRepository blockedUserRepository;
+    private final UserDirectoryService userDirectory;
     private final AdminChatRepository adminChatRepository;
-    private final ExchangeRateRepository exchangeRateRepository;
+    private final ExchangeRateService exchangeRateService;
     private final LottoBotService lottoBotService;
     private final LotteryService lotteryService;
     private final MessageSender messageSender;
     private final AdminLogBotService adminLogBotService;
     private final MostbetService mostbetService;
     private final LanguageSessionService languageSessionService; // Injected bean
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final KeyboardCatalog keyboardCatalog;
+    private final UserProfileCache userProfileCache;
+    private final PlatformOperationService platformOperationService;
+    private final UpdateDispatcher updateDispatcher;
     private static final BigDecimal MINIMUM_TOPUP = new BigDecimal("3600");
     private static final BigDecimal MAXIMUM_TOPUP = new BigDecimal("100000");
     private static final long MINIMUM_TICKETS = 5L;
     private static final long MAXIMUM_TICKETS = 400L;
+    private static final List<Button> NAVIGATION_ROW = List.of(
+            Button.translated("button.back", "BACK"), Button.translated("button.home", "HOME"));
+    private static final Layout NAVIGATION_KEYBOARD = Layout.of(NAVIGATION_ROW);
+    private static final Layout MAIN_MENU_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.topup", "TOPUP")),
+            List.of(Button.translated("button.withdraw", "WITHDRAW")),
+            List.of(Button.translated("button.bonus", "BONUS")),
+            List.of(Button.translated("button.contact", "CONTACT")));
+    private static final Layout BONUS_MENU_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.lottery", "BONUS_LOTTERY")),
+            List.of(Button.translated("button.referral", "BONUS_REFERRAL")),
+            List.of(Button.translated("button.topup_bonus", "BONUS_TOPUP")),
+            NAVIGATION_ROW);
+    private static final Layout LOTTERY_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.lottery_play", "BONUS_LOTTERY_PLAY")), NAVIGATION_ROW);
+    private static final Layout REFERRAL_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.referral_link", "BONUS_REFERRAL_LINK")), NAVIGATION_ROW);
+    private static final Layout TOPUP_PLATFORM_KEYBOARD = Layout.platforms("BONUS_TOPUP_PLATFORM:",
+            Button.literal("🇺🇿 %s", null), Button.literal("🇷🇺 %s", null), NAVIGATION_ROW);
+    private static final Layout APPROVAL_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.approve", "BONUS_TOPUP_APPROVE_USER"),
+                    Button.translated("button.reject", "BONUS_TOPUP_REJECT_USER")),
+            NAVIGATION_ROW);
+    private static final Layout AMOUNT_KEYBOARD = Layout.of(
+            List.of(Button.literal("3,600", "BONUS_TOPUP_AMOUNT_3600"), Button.literal("100,000", "BONUS_TOPUP_AMOUNT_100000")),
+            NAVIGATION_ROW);
+    private static final Layout CONFIRM_KEYBOARD = Layout.of(
+            List.of(Button.translated("button.yes", "BONUS_TOPUP_CONFIRM_YES"), Button.translated("button.no", "BONUS_TOPUP_CONFIRM_NO")),
+            NAVIGATION_ROW);
 
     public void startBonus(Long chatId) {
         logger.info("Starting bonus section for chatId: {}", chatId);
@@ -230,7 +260,7 @@ public class BonusService {
                 .orElse(UserBalance.builder().chatId(chatId).tickets(0L).balance(BigDecimal.ZERO).build());
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.bonus_menu"),
+        message.setText(languageSessionService.format(chatId, "message.bonus_menu",
                 balance.getTickets(), balance.getBalance().longValue()));
         message.setReplyMarkup(createBonusMenuKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
@@ -241,7 +271,7 @@ public class BonusService {
                 .orElse(UserBalance.builder().chatId(chatId).tickets(0L).balance(BigDecimal.ZERO).build());
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.lottery_menu"),
+        message.setText(languageSessionService.format(chatId, "message.lottery_menu",
                 balance.getTickets(), MINIMUM_TICKETS, MAXIMUM_TICKETS));
         message.setReplyMarkup(createLotteryKeyboard(chatId, balance.getTickets()));
         messageSender.sendMessage(message, chatId);
@@ -252,7 +282,7 @@ public class BonusService {
         Long referralCount = referralRepository.countByReferrerChatId(chatId);
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.referral_menu"),
+        message.setText(languageSessionService.format(chatId, "message.referral_menu",
                 referralCount, balance.longValue()));
         message.setReplyMarkup(createReferralKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
@@ -263,7 +293,7 @@ public class BonusService {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.enableMarkdown(true);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.referral_link"),
+        message.setText(languageSessionService.format(chatId, "message.referral_link",
                 referralLink));
         message.setReplyMarkup(createNavigationKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
@@ -273,7 +303,7 @@ public class BonusService {
         BigDecimal balance = getReferralBalance(chatId);
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.topup_menu"),
+        message.setText(languageSessionService.format(chatId, "message.topup_menu",
                 balance.longValue()));
         message.setReplyMarkup(createTopUpPlatformKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
@@ -284,12 +314,13 @@ public class BonusService {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         if (!recentRequests.isEmpty()) {
+            userProfileCache.prefetch(platform, recentRequests.stream().map(HizmatRequest::getPlatformUserId).toList());
             HizmatRequest latestRequest = recentRequests.get(0);
             sessionService.setUserData(chatId, "platformUserId", latestRequest.getPlatformUserId());
             message.setText(languageSessionService.getTranslation(chatId, "message.user_id_with_recent"));
             message.setReplyMarkup(createSavedIdKeyboard(chatId, recentRequests));
         } else {
-            message.setText(String.format(languageSessionService.getTranslation(chatId, "message.user_id_input"), platform));
+            message.setText(languageSessionService.format(chatId, "message.user_id_input", platform));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
         }
         messageSender.sendMessage(message, chatId);
@@ -298,7 +329,7 @@ public class BonusService {
     private void sendUserApproval(Long chatId, String fullName, String userId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.user_approval"),
+        message.setText(languageSessionService.format(chatId, "message.user_approval",
                 fullName, userId));
         message.setReplyMarkup(createApprovalKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
@@ -315,7 +346,7 @@ public class BonusService {
     private void sendTopUpInput(Long chatId, String platform) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.topup_input"), platform));
+        message.setText(languageSessionService.format(chatId, "message.topup_input", platform));
         message.setReplyMarkup(createAmountKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
     }
@@ -325,7 +356,7 @@ public class BonusService {
         String fullName = sessionService.getUserData(chatId, "fullName");
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "message.topup_confirmation"),
+        message.setText(languageSessionService.format(chatId, "message.topup_confirmation",
                 userId, fullName, platform, userId, amount.longValue()));
         message.setReplyMarkup(createConfirmKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
@@ -347,7 +378,7 @@ public class BonusService {
 
     private void validateUserId(Long chatId, String userId) {
         String platformName = sessionService.getUserData(chatId, "platform");
-        Platform platform = platformRepository.findByName(platformName)
+        Platform platform = platformRegistry.findByName(platformName)
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
 
         if (platform.getType().equals("mostbet")){
@@ -363,7 +394,7 @@ public class BonusService {
                     .currency(currency)
                     .type(RequestType.TOP_UP)
                     .build();
-            requestRepository.save(request);
+            requestRollupService.save(request);
 
             sessionService.setUserState(chatId, "BONUS_TOPUP_INPUT");
             sessionService.addNavigationState(chatId, "BONUS_TOPUP_APPROVE_USER");
@@ -372,32 +403,12 @@ public class BonusService {
             sendTopUpInput(chatId, platformName);
         }
         else {
-        String hash = platform.getApiKey();
-        String cashierPass = platform.getPassword();
-        String cashdeskId = platform.getWorkplaceId();
-
-        String confirmInput = userId + ":" + hash;
-        String confirm = DigestUtils.md5DigestAsHex(confirmInput.getBytes(StandardCharsets.UTF_8));
-
-        String sha256Input1 = "hash=" + hash + "&userid=" + userId + "&cashdeskid=" + cashdeskId;
-        String sha256Result1 = sha256Hex(sha256Input1);
-        String md5Input = "userid=" + userId + "&cashierpass=" + cashierPass + "&hash=" + hash;
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Users/%s?confirm=%s&cashdeskId=%s",
-                userId, confirm, cashdeskId);
-        logger.info("Validating user ID {} for platform {} (chatId: {}), URL: {}", userId, platformName, chatId, apiUrl);
+        logger.info("Validating user ID {} for platform {} (chatId: {})", userId, platformName, chatId);
 
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("sign", finalSignature);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
+            UserProfile profile = CashdeskClient.await(userProfileCache.lookup(platform, userId));
 
-            ResponseEntity<UserProfile> response = restTemplate.exchange(apiUrl, HttpMethod.GET, entity, UserProfile.class);
-            UserProfile profile = response.getBody();
-
-            if (response.getStatusCode().is2xxSuccessful() && profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
+            if (profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
                 String fullName = profile.getName();
                 sessionService.setUserData(chatId, "platformUserId", userId);
                 sessionService.setUserData(chatId, "fullName", fullName);
@@ -416,7 +427,7 @@ public class BonusService {
                         .currency(currency)
                         .type(RequestType.TOP_UP)
                         .build();
-                requestRepository.save(request);
+                requestRollupService.save(request);
 
                 sessionService.setUserState(chatId, "BONUS_TOPUP_INPUT");
                 sessionService.addNavigationState(chatId, "BONUS_TOPUP_APPROVE_USER");
@@ -479,14 +490,14 @@ public class BonusService {
                     .orElse(UserBalance.builder().chatId(chatId).tickets(0L).balance(BigDecimal.ZERO).build());
 
             if (balance.getBalance().compareTo(MINIMUM_TOPUP) < 0) {
-                messageSender.sendMessage(chatId, String.format(languageSessionService.getTranslation(chatId, "bonus.message.insufficient_minimum_balance"),
+                messageSender.sendMessage(chatId, languageSessionService.format(chatId, "bonus.message.insufficient_minimum_balance",
                         balance.getBalance().longValue()));
                 sendTopUpInput(chatId, platform);
                 return;
             }
 
             if (balance.getBalance().compareTo(amount) < 0) {
-                messageSender.sendMessage(chatId, String.format(languageSessionService.getTranslation(chatId, "message.insufficient_balance"),
+                messageSender.sendMessage(chatId, languageSessionService.format(chatId, "message.insufficient_balance",
                         balance.getBalance().longValue()));
                 sendTopUpInput(chatId, platform);
                 return;
@@ -517,7 +528,7 @@ public class BonusService {
 
         if (balance.getBalance().compareTo(amount) < 0) {
             logger.warn("Insufficient balance for chatId {}: requested {}, available {}", chatId, amount, balance.getBalance());
-            messageSender.sendMessage(chatId, String.format(languageSessionService.getTranslation(chatId, "message.topup_insufficient_balance"),
+            messageSender.sendMessage(chatId, languageSessionService.format(chatId, "message.topup_insufficient_balance",
                     balance.getBalance().longValue()));
             sendTopUpInput(chatId, platform);
             return;
@@ -535,8 +546,8 @@ public class BonusService {
         request.setAmount(amount.longValue());
         request.setUniqueAmount(amount.longValue());
         request.setStatus(RequestStatus.PENDING_ADMIN);
-        requestRepository.save(request);
-        String userMessage = String.format(languageSessionService.getTranslation(chatId, "message.topup_request_sent"),
+        requestRollupService.save(request);
+        String userMessage = languageSessionService.format(chatId, "message.topup_request_sent",
                 request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount());
         messageSender.sendMessage(chatId, userMessage);
 
@@ -546,7 +557,7 @@ public class BonusService {
     }
 
     private void sendAdminApprovalRequest(Long chatId, HizmatRequest request) {
-        String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
+        String number = userDirectory.getPhoneNumber(request.getChatId());
         String message = String.format(
                 "*#Bonus pul yechish so'rovi:*\n\n" +
                         "\uD83C\uDD94: `%d`\n" +
@@ -574,61 +585,27 @@ public class BonusService {
                 .replace("[", "\\[");
     }
 
+    /**
+     * Approves a bonus request and queues its deposit in the same transaction; the user hears about the
+     * transfer from {@link #onPlatformOperationSettled} once the platform has answered.
+     */
     public void handleAdminApproveTransfer(Long chatId, Long requestId)  {
         HizmatRequest request = requestRepository.findById(requestId)
                 .orElseThrow(() -> new IllegalStateException("Request not found: " + requestId));
 
-        creditReferral(request.getChatId(), request.getAmount());
-
         String platformName = request.getPlatform();
-        Platform platformData = platformRepository.findByName(platformName)
+        Platform platformData = platformRegistry.findByName(platformName)
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
 
-        if (platformData.getType().equals("mostbet")){
-            try {
-                BalanceLimit transferSuccessful =mostbetService.transferToPlatform(request);
-                request.setStatus(RequestStatus.BONUS_APPROVED);
-                request.setTransactionId(UUID.randomUUID().toString());
-                requestRepository.save(request);
-                messageSender.animateAndDeleteMessages(request.getChatId(), sessionService.getMessageIds(request.getChatId()), "OPEN");
-                sessionService.clearMessageIds(request.getChatId());
-                String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-
-                if (transferSuccessful == null) {
-                    String message = String.format("🆔: %d #Bonus tasdiqlandi ✅ \n\uD83C\uDF10 %s :  %s\n💰 Bonus: %,d so‘m\n\uD83D\uDC64 Foydalanuvchi: `%d` \n\uD83D\uDCDE %s \n\n 📅 [%s]",
-                            request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), request.getChatId(), number, LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                    String bonusMessage = String.format(languageSessionService.getTranslation(request.getChatId(), "message.bonus_approved"),
-                            request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                    messageSender.sendMessage(request.getChatId(), bonusMessage);
-                    adminLogBotService.sendToAdmins(message);
-                } else {
-                    String message = String.format("🆔: %d #Bonus tasdiqlandi ✅\n\uD83C\uDF10 %s :  %s\n💰 Bonus: %,d so‘m\n Foydalanuvchi: `%d` \n \uD83D\uDCDE %s \n\n  \uD83C\uDFE6: %,d %s \n\n 📅 [%s]",
-                            request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), request.getChatId(), number, transferSuccessful.getLimit().longValue(), platformData.getCurrency().toString(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                    String bonusMessage = String.format(languageSessionService.getTranslation(request.getChatId(), "message.bonus_approved"),
-                            request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                    messageSender.sendMessage(request.getChatId(), bonusMessage);
-                    adminLogBotService.sendToAdmins(message);
-                }
-            } catch (Exception e) {
-                logger.error("❌ Error transferring top-up to platform for chatId {}: {}", request.getChatId(), e.getMessage());
-                messageSender.sendMessage(request.getChatId(), languageSessionService.getTranslation(request.getChatId(), "message.transfer_failed"));
-                adminLogBotService.sendToAdmins("So‘rov tasdiqlandi, lekin kontorada xatolik yuz berdi: " + e.getMessage() + " (Foydalanuvchi: " + request.getChatId() + ")");
-            }
-
-        }else {
-
+        long amount;
+        String lng = null;
+        String cardNumber = null;
+        if (platformData.getType().equals("mostbet")) {
+            amount = mostbetService.depositAmount(request);
+        } else {
             String hash = platformData.getApiKey();
             String cashierPass = platformData.getPassword();
             String cashdeskId = platformData.getWorkplaceId();
-            String lng = "uz";
-            String userId = request.getPlatformUserId();
-            String cardNumber = request.getCardNumber();
-            ExchangeRate latest = exchangeRateRepository.findLatest()
-                    .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
-            long amount = request.getCurrency().equals(Currency.RUB) ?
-                    BigDecimal.valueOf(request.getAmount())
-                            .multiply(latest.getUzsToRub())
-                            .longValue() / 1000 : request.getAmount();
             if (hash == null || cashierPass == null || cashdeskId == null ||
                     hash.isEmpty() || cashierPass.isEmpty() || cashdeskId.isEmpty()) {
                 logger.error("Invalid platform credentials for transfer {}", platformName);
@@ -636,88 +613,84 @@ public class BonusService {
                 sendMainMenu(request.getChatId());
                 return;
             }
+            lng = "uz";
+            cardNumber = request.getCardNumber();
+            ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
+            amount = request.getCurrency().equals(Currency.RUB) ?
+                    latest.uzsToRub(request.getAmount()) : request.getAmount();
+        }
+
+        Optional<PlatformOperation> submitted = platformOperationService.submitDeposit(requestId, request.getStatus(), r -> {
+            r.setStatus(RequestStatus.BONUS_APPROVED);
+            r.setTransactionId(UUID.randomUUID().toString());
+        }, platformData, amount, lng, cardNumber);
+        if (submitted.isEmpty()) {
+            logger.warn("Bonus request {} changed while it was being approved, skipping", requestId);
+            return;
+        }
+        creditReferral(request.getChatId(), request.getAmount());
+        messageSender.sendMessage(request.getChatId(),
+                languageSessionService.format(request.getChatId(), "message.bonus_in_progress", request.getId()));
+    }
 
-            String confirm = DigestUtils.md5DigestAsHex((userId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-            String sha256Input = "hash=" + hash + "&lng=" + lng + "&userid=" + userId;
-            String sha256Part = sha256Hex(sha256Input);
-            String md5Input = "summa=" + amount + "&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId;
-            String md5Part = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-            String finalSignature = sha256Hex(sha256Part + md5Part);
-
-            String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Deposit/%s/Add", userId);
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("sign", finalSignature);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            Map<String, Object> body = new HashMap<>();
-            body.put("cashdeskId", Integer.parseInt(cashdeskId));
-            body.put("lng", lng);
-            body.put("summa", amount);
-            body.put("confirm", confirm);
-            body.put("cardNumber", cardNumber);
-
-            try {
-                HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-                ResponseEntity<Map> response = restTemplate.exchange(apiUrl, HttpMethod.POST, entity, Map.class);
-                Map<String, Object> responseBody = response.getBody();
-
-                Object successObj = responseBody != null ? responseBody.get("success") : null;
-                if (successObj == null && responseBody != null) successObj = responseBody.get("Success");
-
-                if (Boolean.TRUE.equals(successObj)) {
-                    request.setStatus(RequestStatus.BONUS_APPROVED);
-                    request.setTransactionId(UUID.randomUUID().toString());
-                    requestRepository.save(request);
-                    logger.info("✅ Platform transfer completed: chatId={}, userId={}, amount={}", request.getChatId(), userId, amount);
-                    messageSender.animateAndDeleteMessages(request.getChatId(), sessionService.getMessageIds(request.getChatId()), "OPEN");
-                    sessionService.clearMessageIds(request.getChatId());
-                    String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-
-                    BalanceLimit cashdeskBalance = getCashdeskBalance(hash, cashierPass, cashdeskId);
-                    if (cashdeskBalance == null) {
-                        String message = String.format("🆔: %d #Bonus tasdiqlandi ✅ \n\uD83C\uDF10 %s :  %s\n💰 Bonus: %,d so‘m\n\uD83D\uDC64 Foydalanuvchi: `%d` \n\uD83D\uDCDE %s \n\n 📅 [%s]",
-                                request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), request.getChatId(), number, LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                        String bonusMessage = String.format(languageSessionService.getTranslation(request.getChatId(), "message.bonus_approved"),
-                                request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                        messageSender.sendMessage(request.getChatId(), bonusMessage);
-                        adminLogBotService.sendToAdmins(message);
-                    } else {
-                        String message = String.format("🆔: %d #Bonus tasdiqlandi ✅\n\uD83C\uDF10 %s :  %s\n💰 Bonus: %,d so‘m\n Foydalanuvchi: `%d` \n \uD83D\uDCDE %s \n\n  \uD83C\uDFE6: %,d %s \n\n 📅 [%s]",
-                                request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), request.getChatId(), number, cashdeskBalance.getLimit().longValue(), platformData.getCurrency().toString(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                        String bonusMessage = String.format(languageSessionService.getTranslation(request.getChatId(), "message.bonus_approved"),
-                                request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                        messageSender.sendMessage(request.getChatId(), bonusMessage);
-                        adminLogBotService.sendToAdmins(message);
-                    }
-                } else {
-                    String error = responseBody != null && responseBody.get("Message") != null
-                            ? responseBody.get("Message").toString()
-                            : "Platform javob bermadi.";
-                    logger.error("❌ Transfer failed for chatId {}: {}", request.getChatId(), error);
-                    adminLogBotService.sendToAdmins("So‘rov tasdiqlandi, lekin kontorada xatolik yuz berdi: " + error + " (Foydalanuvchi: " + request.getChatId() + ")");
-                    handleTransferFailure(chatId, request);
-                }
-            } catch (Exception e) {
-                logger.error("❌ Error transferring top-up to platform for chatId {}: {}", request.getChatId(), e.getMessage());
-                messageSender.sendMessage(request.getChatId(), languageSessionService.getTranslation(request.getChatId(), "message.transfer_failed"));
-                adminLogBotService.sendToAdmins("So‘rov tasdiqlandi, lekin kontorada xatolik yuz berdi: " + e.getMessage() + " (Foydalanuvchi: " + request.getChatId() + ")");
-            }
+    /**
+     * Finishes a bonus transfer once its deposit has settled, in order with the user's own updates.
+     */
+    @EventListener
+    public void onPlatformOperationSettled(PlatformOperationService.Settled settled) {
+        PlatformOperation operation = settled.operation();
+        if (operation.getType() != PlatformOperationType.DEPOSIT) {
+            return;
+        }
+        requestRepository.findById(operation.getRequestId())
+                .filter(request -> request.getStatus() == RequestStatus.BONUS_APPROVED)
+                .ifPresent(request -> updateDispatcher.dispatch(request.getChatId(), () -> finishTransfer(request, operation)));
+    }
+
+    private void finishTransfer(HizmatRequest request, PlatformOperation operation) {
+        Long userChatId = request.getChatId();
+        if (operation.getStatus() == PlatformOperationStatus.SUCCEEDED) {
+            logger.info("✅ Platform transfer completed: chatId={}, userId={}, amount={}", userChatId, request.getPlatformUserId(), operation.getAmount());
+            messageSender.animateAndDeleteMessages(userChatId, sessionService.getMessageIds(userChatId), "OPEN");
+            sessionService.clearMessageIds(userChatId);
+            String number = userDirectory.getPhoneNumber(userChatId);
 
-            sendMainMenu(request.getChatId());
+            BalanceLimit cashdeskBalance = PlatformOperationService.balanceAfter(operation);
+            String message;
+            if (cashdeskBalance == null || cashdeskBalance.getLimit() == null) {
+                message = String.format("🆔: %d #Bonus tasdiqlandi ✅ \n\uD83C\uDF10 %s :  %s\n💰 Bonus: %,d so‘m\n\uD83D\uDC64 Foydalanuvchi: `%d` \n\uD83D\uDCDE %s \n\n 📅 [%s]",
+                        request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), userChatId, number, LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            } else {
+                message = String.format("🆔: %d #Bonus tasdiqlandi ✅\n\uD83C\uDF10 %s :  %s\n💰 Bonus: %,d so‘m\n Foydalanuvchi: `%d` \n \uD83D\uDCDE %s \n\n  \uD83C\uDFE6: %,d %s \n\n 📅 [%s]",
+                        request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), userChatId, number, cashdeskBalance.getLimit().longValue(), request.getCurrency().toString(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            }
+            String bonusMessage = languageSessionService.format(userChatId, "message.bonus_approved",
+                    request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            messageSender.sendMessage(userChatId, bonusMessage);
+            adminLogBotService.sendToAdmins(message);
+        } else if (operation.getStatus() == PlatformOperationStatus.UNKNOWN) {
+            // Admins are already asked to check it on the platform
+            logger.error("Bonus transfer outcome unknown for chatId {}: {}", userChatId, operation.getMessage());
+            messageSender.sendMessage(userChatId, languageSessionService.format(userChatId, "message.bonus_transfer_unknown", request.getId()));
+        } else if (operation.getHttpStatus() == null) {
+            String error = operation.getMessage() != null ? operation.getMessage() : "Platform javob bermadi.";
+            logger.error("❌ Transfer failed for chatId {}: {}", userChatId, error);
+            adminLogBotService.sendToAdmins("So‘rov tasdiqlandi, lekin kontorada xatolik yuz berdi: " + error + " (Foydalanuvchi: " + userChatId + ")");
+            handleTransferFailure(userChatId, request);
+        } else {
+            logger.error("❌ Error transferring top-up to platform for chatId {}: {}", userChatId, operation.getMessage());
+            messageSender.sendMessage(userChatId, languageSessionService.getTranslation(userChatId, "message.transfer_failed"));
+            adminLogBotService.sendToAdmins("So‘rov tasdiqlandi, lekin kontorada xatolik yuz berdi: " + operation.getMessage() + " (Foydalanuvchi: " + userChatId + ")");
         }
+        sendMainMenu(userChatId);
     }
 
     private void handleTransferFailure(Long chatId, HizmatRequest request) {
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
         long amount = request.getCurrency().equals(Currency.RUB) ?
-                BigDecimal.valueOf(request.getUniqueAmount())
-                        .multiply(latest.getUzsToRub())
-                        .longValue() / 1000 : request.getUniqueAmount();
-        String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-        long rubAmount = BigDecimal.valueOf(request.getUniqueAmount())
-                .multiply(latest.getUzsToRub())
-                .longValue() / 1000;
+                latest.uzsToRub(request.getUniqueAmount()) : request.getUniqueAmount();
+        String number = userDirectory.getPhoneNumber(request.getChatId());
+        long rubAmount = latest.uzsToRub(request.getUniqueAmount());
         String errorLogMessage = String.format(
                 "🆔: %d \n Transfer xatosi ❌\n" +
                         "👤 User ID [%s] %s\n" +
@@ -748,8 +721,8 @@ public class BonusService {
         HizmatRequest request = requestRepository.findById(requestId)
                 .orElseThrow(() -> new IllegalStateException("Request not found: " + requestId));
         request.setStatus(RequestStatus.CANCELED);
-        requestRepository.save(request);
-        String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
+        requestRollupService.save(request);
+        String number = userDirectory.getPhoneNumber(request.getChatId());
         UserBalance balance = userBalanceRepository.findById(request.getChatId())
                 .orElse(UserBalance.builder().chatId(requestId).tickets(0L).balance(BigDecimal.ZERO).build());
         String errorLogMessage = String.format(
@@ -763,7 +736,7 @@ public class BonusService {
                 request.getChatId(), number, request.getPlatform(), request.getPlatformUserId(), request.getUniqueAmount(), balance.getBalance().longValue(),
                 LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
         );
-        String userErrorLogMessage = String.format(languageSessionService.getTranslation(request.getChatId(), "message.bonus_declined"),
+        String userErrorLogMessage = languageSessionService.format(request.getChatId(), "message.bonus_declined",
                 request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getUniqueAmount(), balance.getBalance().longValue(),
                 LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
         SendMessage message = new SendMessage();
@@ -812,6 +785,7 @@ public class BonusService {
         }
         BlockedUser blockedUser = BlockedUser.builder().chatId(userChatId).phoneNumber("BLOCKED").build();
         blockedUserRepository.save(blockedUser);
+        userDirectory.invalidate(userChatId);
 
         messageSender.sendMessage(userChatId, languageSessionService.getTranslation(userChatId, "message.user_blocked"));
         adminLogBotService.sendToAdmins("Foydalanuvchi bloklandi: Foydalanuvchi: " + userChatId);
@@ -823,7 +797,7 @@ public class BonusService {
                     .orElse(UserBalance.builder().chatId(chatId).tickets(0L).balance(BigDecimal.ZERO).build());
             Long availableTickets = balance.getTickets();
             if (availableTickets < MINIMUM_TICKETS) {
-                messageSender.sendMessage(chatId, String.format(languageSessionService.getTranslation(chatId, "message.insufficient_tickets"),
+                messageSender.sendMessage(chatId, languageSessionService.format(chatId, "message.insufficient_tickets",
                         MINIMUM_TICKETS, availableTickets));
                 sendLotteryMenu(chatId);
                 return;
@@ -841,11 +815,11 @@ public class BonusService {
             StringBuilder winningsLog = new StringBuilder();
             ticketWinnings.forEach((ticketNumber, amount) ->
                     winningsLog.append(String.format("%,d so‘m\n", amount.longValue())));
-            winningsLog.append(String.format(languageSessionService.getTranslation(chatId, "message.lottery_results"),
+            winningsLog.append(languageSessionService.format(chatId, "message.lottery_results",
                     "", totalWinnings.longValue(), balance.getBalance().longValue()));
             messageSender.sendMessage(chatId, winningsLog.toString());
 
-            String number = blockedUserRepository.findByChatId(chatId).get().getPhoneNumber();
+            String number = userDirectory.getPhoneNumber(chatId);
             String adminLog = String.format(
                     "Lotereya o‘ynaldi 🎟\n" +
                             "👤 User ID [%s] %s\n" +
@@ -860,7 +834,7 @@ public class BonusService {
             sendLotteryMenu(chatId);
         } catch (IllegalStateException e) {
             logger.error("Lottery play failed for chatId {}: {}", chatId, e.getMessage());
-            messageSender.sendMessage(chatId, String.format(languageSessionService.getTranslation(chatId, "message.lottery_error"), e.getMessage()));
+            messageSender.sendMessage(chatId, languageSessionService.format(chatId, "message.lottery_error", e.getMessage()));
             sendLotteryMenu(chatId);
         }
     }
@@ -887,16 +861,6 @@ public class BonusService {
         logger.info("Credited {} UZS to referrer {} for referredChatId {}", commission, referrerChatId, referredChatId);
     }
 
-    private String sha256Hex(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes("UTF-8"));
-            return DatatypeConverter.printHexBinary(hash).toLowerCase();
-        } catch (Exception e) {
-            throw new RuntimeException("SHA-256 calculation failed", e);
-        }
-    }
-
     private void sendMainMenu(Long chatId) {
         sessionService.clearSession(chatId);
         sessionService.setUserState(chatId, "MAIN_MENU");
@@ -908,85 +872,27 @@ public class BonusService {
     }
 
     private InlineKeyboardMarkup createMainMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.topup"), "TOPUP")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.withdraw"), "WITHDRAW")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.bonus"), "BONUS")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.contact"), "CONTACT")));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, MAIN_MENU_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createBonusMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.lottery"), "BONUS_LOTTERY")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.referral"), "BONUS_REFERRAL")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.topup_bonus"), "BONUS_TOPUP")));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, BONUS_MENU_KEYBOARD);
     }
 
     private InlineKeyboardMarkup backButtonKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, NAVIGATION_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createLotteryKeyboard(Long chatId, long ticketCount) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        if (ticketCount >= MINIMUM_TICKETS) {
-            rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.lottery_play"), "BONUS_LOTTERY_PLAY")));
-        }
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, ticketCount >= MINIMUM_TICKETS ? LOTTERY_KEYBOARD : NAVIGATION_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createReferralKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "button.referral_link"), "BONUS_REFERRAL_LINK")));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, REFERRAL_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createTopUpPlatformKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        List<Platform> uzsPlatforms = platformRepository.findByCurrency(Currency.UZS);
-        List<Platform> rubPlatforms = platformRepository.findByCurrency(Currency.RUB);
-
-        int maxRows = Math.max(uzsPlatforms.size(), rubPlatforms.size());
-        for (int i = 0; i < maxRows; i++) {
-            List<InlineKeyboardButton> row = new ArrayList<>();
-            if (i < uzsPlatforms.size()) {
-                Platform uzsPlatform = uzsPlatforms.get(i);
-                row.add(createButton("🇺🇿 " + uzsPlatform.getName(), "BONUS_TOPUP_PLATFORM:" + uzsPlatform.getName()));
-            }
-            if (i < rubPlatforms.size()) {
-                Platform rubPlatform = rubPlatforms.get(i);
-                row.add(createButton("🇷🇺 " + rubPlatform.getName(), "BONUS_TOPUP_PLATFORM:" + rubPlatform.getName()));
-            } else {
-                i++;
-                if (i < uzsPlatforms.size() && i < maxRows) {
-                    Platform uzsPlatform = uzsPlatforms.get(i);
-                    row.add(createButton("🇺🇿 " + uzsPlatform.getName(), "BONUS_TOPUP_PLATFORM:" + uzsPlatform.getName()));
-                }
-            }
-            if (!row.isEmpty()) {
-                rows.add(row);
-            }
-        }
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, TOPUP_PLATFORM_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createSavedIdKeyboard(Long chatId, List<HizmatRequest> recentRequests) {
@@ -1009,39 +915,15 @@ public class BonusService {
     }
 
     private InlineKeyboardMarkup createApprovalKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(
-                createButton(languageSessionService.getTranslation(chatId, "button.approve"), "BONUS_TOPUP_APPROVE_USER"),
-                createButton(languageSessionService.getTranslation(chatId, "button.reject"), "BONUS_TOPUP_REJECT_USER")
-        ));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, APPROVAL_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createAmountKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(
-                createButton("3,600", "BONUS_TOPUP_AMOUNT_3600"),
-                createButton("100,000", "BONUS_TOPUP_AMOUNT_100000")
-        ));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, AMOUNT_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createConfirmKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(
-                createButton(languageSessionService.getTranslation(chatId, "button.yes"), "BONUS_TOPUP_CONFIRM_YES"),
-                createButton(languageSessionService.getTranslation(chatId, "button.no"), "BONUS_TOPUP_CONFIRM_NO")
-        ));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, CONFIRM_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createAdminApprovalKeyboard(Long chatId, Long requestId, Long userChatId) {
@@ -1061,18 +943,11 @@ public class BonusService {
     }
 
     private InlineKeyboardMarkup createNavigationKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, NAVIGATION_KEYBOARD);
     }
 
     private List<InlineKeyboardButton> createNavigationButtons(Long chatId) {
-        List<InlineKeyboardButton> buttons = new ArrayList<>();
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "button.back"), "BACK"));
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "button.home"), "HOME"));
-        return buttons;
+        return keyboardCatalog.row(chatId, NAVIGATION_KEYBOARD);
     }
 
     private InlineKeyboardButton createButton(String text, String callback) {
@@ -1085,35 +960,4 @@ public class BonusService {
     private boolean isValidUserId(String userId) {
         return userId.matches("\\d+");
     }
-
-    public BalanceLimit getCashdeskBalance(String hash, String cashierPass, String cashdeskId) {
-        RestTemplate restTemplate = new RestTemplate();
-        String baseUrl = "https://partners.servcul.com/CashdeskBotAPI";
-        String dt = ZonedDateTime.now(ZoneOffset.UTC)
-                .format(DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss"));
-
-        // Generate signature
-        String sha256Input = String.format("hash=%s&cashierpass=%s&dt=%s", hash, cashierPass, dt);
-        String sha256Result = sha256Hex(sha256Input);
-        String md5Input = String.format("dt=%s&cashierpass=%s&cashdeskid=%s", dt, cashierPass, cashdeskId);
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result + md5Result);
-
-        // Generate confirm
-        String confirm = DigestUtils.md5DigestAsHex((cashdeskId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-
-        // Build URL
-        String url = String.format("%s/Cashdesk/%s/Balance?confirm=%s&dt=%s", baseUrl, cashdeskId, confirm, dt);
-
-        // Set headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        // Make GET request and extract balance
-        Map<String, Object> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class).getBody();
-        Object balanceObj = response != null ? response.get("Balance") : null;
-        Object limitObj = response != null ? response.get("Limit") : null;
-        return balanceObj != null ? new BalanceLimit(new BigDecimal(balanceObj.toString()), new BigDecimal(limitObj.toString())) : null;
-    }
-}
\ No newline at end of file
+}
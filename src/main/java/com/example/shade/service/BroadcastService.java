@@ -1,33 +1,66 @@
 package com.example.shade.service;
 
 import com.example.shade.bot.MessageSender;
-import com.example.shade.bot.ShadePaymentBot;
-import com.example.shade.model.BlockedUser;
+import com.example.shade.bot.TelegramRateLimiter;
+import com.example.shade.model.Broadcast;
+import com.example.shade.model.BroadcastStatus;
 import com.example.shade.repository.BlockedUserRepository;
+import com.example.shade.repository.BroadcastRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.CopyMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Sends broadcasts in the background. Recipients are read from the database a page at a time, sent on a
+ * small worker pool throttled by {@link TelegramRateLimiter}, and progress is stored after every page so
+ * a broadcast can be paused, resumed, or picked up again after a restart.
+ */
 @Service
 @RequiredArgsConstructor
 public class BroadcastService {
     private static final Logger logger = LoggerFactory.getLogger(BroadcastService.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+    private static final String BLOCKED = "BLOCKED";
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_SEND_ATTEMPTS = 3;
+
     private final BlockedUserRepository blockedUserRepository;
+    private final BroadcastRepository broadcastRepository;
     private final TaskScheduler taskScheduler;
     private final MessageSender messageSender;
+    private final TelegramRateLimiter rateLimiter;
+
+    @Value("${broadcast.workers:8}")
+    private int workerCount;
 
-    public void sendBroadcast(String messageText, String parseMode, String buttonText, String buttonUrl, LocalDateTime scheduledTime) {
+    // Broadcasts run one at a time; they share the bot's rate limit anyway
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private ExecutorService workers;
+
+    public Broadcast sendBroadcast(String messageText, String parseMode, String buttonText, String buttonUrl, LocalDateTime scheduledTime) {
         // Validate parseMode
         String effectiveParseMode = parseMode != null && parseMode.equalsIgnoreCase("HTML") ? "HTML" : null;
         if (effectiveParseMode != null && !isValidHtml(messageText)) {
@@ -35,53 +68,207 @@ public class BroadcastService {
             throw new IllegalArgumentException("Invalid HTML content in message text.");
         }
 
-        // Prepare the message
-        InlineKeyboardMarkup markup;
-        if (buttonText != null && !buttonText.trim().isEmpty() && buttonUrl != null && !buttonUrl.trim().isEmpty()) {
-            markup = createButtonMarkup(buttonText, buttonUrl);
+        return create(Broadcast.builder()
+                .messageText(messageText)
+                .parseMode(effectiveParseMode)
+                .buttonText(buttonText)
+                .buttonUrl(buttonUrl)
+                .scheduledTime(scheduledTime));
+    }
+
+    /**
+     * Broadcasts a copy of message {@code messageId} of {@code sourceChatId} right away; {@code description}
+     * is only what the broadcast list shows for it.
+     */
+    public Broadcast sendCopy(Long sourceChatId, Integer messageId, String description) {
+        return create(Broadcast.builder()
+                .messageText(description != null ? description : "")
+                .sourceChatId(sourceChatId)
+                .sourceMessageId(messageId));
+    }
+
+    private Broadcast create(Broadcast.BroadcastBuilder builder) {
+        Broadcast draft = builder.build();
+        boolean scheduled = draft.getScheduledTime() != null && draft.getScheduledTime().isAfter(LocalDateTime.now(ZONE));
+        draft.setStatus(scheduled ? BroadcastStatus.SCHEDULED : BroadcastStatus.RUNNING);
+        draft.setTotalCount(blockedUserRepository.countByPhoneNumberNot(BLOCKED));
+        draft.setCreatedAt(LocalDateTime.now(ZONE));
+        Broadcast broadcast = broadcastRepository.save(draft);
+        logger.info("Broadcast {} created for {} non-blocked users", broadcast.getId(), broadcast.getTotalCount());
+
+        if (scheduled) {
+            schedule(broadcast);
         } else {
-            markup = null;
+            submit(broadcast.getId());
+        }
+        return broadcast;
+    }
+
+    public Optional<Broadcast> getBroadcast(Long id) {
+        return broadcastRepository.findById(id);
+    }
+
+    public List<Broadcast> getBroadcasts() {
+        return broadcastRepository.findAllByOrderByCreatedAtDesc();
+    }
+
+    /**
+     * Stops the broadcast after the page in flight; returns false if it was not running or scheduled.
+     */
+    public boolean pause(Long id) {
+        return broadcastRepository.updateStatus(id,
+                List.of(BroadcastStatus.RUNNING, BroadcastStatus.SCHEDULED), BroadcastStatus.PAUSED) > 0;
+    }
+
+    public boolean resume(Long id) {
+        if (broadcastRepository.updateStatus(id, List.of(BroadcastStatus.PAUSED), BroadcastStatus.RUNNING) == 0) {
+            return false;
         }
+        submit(id);
+        return true;
+    }
+
+    public boolean cancel(Long id) {
+        return broadcastRepository.updateStatus(id,
+                List.of(BroadcastStatus.RUNNING, BroadcastStatus.SCHEDULED, BroadcastStatus.PAUSED),
+                BroadcastStatus.CANCELED) > 0;
+    }
 
-        // Get all non-blocked users
-        List<BlockedUser> users = blockedUserRepository.findAllByPhoneNumberNot("BLOCKED");
-        logger.info("Found {} non-blocked users for broadcast", users.size());
-
-        // Track success and failure counts
-        AtomicInteger successCount = new AtomicInteger(0);
-        AtomicInteger failureCount = new AtomicInteger(0);
-
-        // Create broadcast task
-        Runnable broadcastTask = () -> {
-            for (BlockedUser user : users) {
-                try {
-                    SendMessage message = new SendMessage();
-                    message.setChatId(user.getChatId());
-                    message.setText(messageText);
-                    if (effectiveParseMode != null) {
-                        message.setParseMode(effectiveParseMode);
-                    }
-                    if (markup != null) {
-                        message.setReplyMarkup(markup);
-                    }
-                    messageSender.sendMessage(message, user.getChatId());
-                    successCount.incrementAndGet();
-                    logger.info("Broadcast sent to user {}", user.getChatId());
-                } catch (Exception e) {
-                    failureCount.incrementAndGet();
-                    logger.error("Failed to send broadcast to user {}: {}", user.getChatId(), e.getMessage());
+    // Continues broadcasts cut off by a restart and re-arms the scheduled ones
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        for (Broadcast broadcast : broadcastRepository.findByStatusIn(List.of(BroadcastStatus.RUNNING, BroadcastStatus.SCHEDULED))) {
+            if (broadcast.getStatus() == BroadcastStatus.RUNNING) {
+                logger.info("Resuming broadcast {} after chat {}", broadcast.getId(), broadcast.getLastChatId());
+                submit(broadcast.getId());
+            } else {
+                schedule(broadcast);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void schedule(Broadcast broadcast) {
+        taskScheduler.schedule(() -> {
+            if (broadcastRepository.updateStatus(broadcast.getId(), List.of(BroadcastStatus.SCHEDULED), BroadcastStatus.RUNNING) > 0) {
+                submit(broadcast.getId());
+            }
+        }, broadcast.getScheduledTime().atZone(ZONE).toInstant());
+        logger.info("Broadcast {} scheduled for {}", broadcast.getId(), broadcast.getScheduledTime());
+    }
+
+    private void submit(Long id) {
+        coordinator.execute(() -> {
+            try {
+                run(id);
+            } catch (Exception e) {
+                logger.error("Broadcast {} stopped: {}", id, e.getMessage(), e);
+            }
+        });
+    }
+
+    private void run(Long id) {
+        Broadcast broadcast = broadcastRepository.findById(id).orElse(null);
+        if (broadcast == null || broadcast.getStatus() != BroadcastStatus.RUNNING) {
+            return;
+        }
+        InlineKeyboardMarkup markup = hasButton(broadcast) ? createButtonMarkup(broadcast.getButtonText(), broadcast.getButtonUrl()) : null;
+        long cursor = broadcast.getLastChatId() != null ? broadcast.getLastChatId() : Long.MIN_VALUE;
+
+        while (true) {
+            List<Long> chatIds = blockedUserRepository.findChatIdsAfter(BLOCKED, cursor, PageRequest.of(0, PAGE_SIZE));
+            if (chatIds.isEmpty()) {
+                break;
+            }
+            AtomicLong sent = new AtomicLong();
+            AtomicLong failed = new AtomicLong();
+            CompletableFuture<?>[] page = chatIds.stream()
+                    .map(chatId -> CompletableFuture.runAsync(() -> {
+                        if (send(broadcast, markup, chatId)) {
+                            sent.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }, workers()))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(page).join();
+
+            cursor = chatIds.get(chatIds.size() - 1);
+            broadcastRepository.recordProgress(id, cursor, sent.get(), failed.get());
+
+            BroadcastStatus status = broadcastRepository.findById(id).map(Broadcast::getStatus).orElse(BroadcastStatus.CANCELED);
+            if (status != BroadcastStatus.RUNNING) {
+                logger.info("Broadcast {} {} after chat {}", id, status.name().toLowerCase(), cursor);
+                return;
+            }
+        }
+
+        broadcastRepository.markCompleted(id, LocalDateTime.now(ZONE));
+        broadcastRepository.findById(id).ifPresent(done ->
+                logger.info("Broadcast {} completed: {} successful, {} failed", id, done.getSentCount(), done.getFailedCount()));
+    }
+
+    private boolean send(Broadcast broadcast, InlineKeyboardMarkup markup, Long chatId) {
+        for (int attempt = 1; attempt <= MAX_SEND_ATTEMPTS; attempt++) {
+            try {
+                rateLimiter.acquire();
+                if (broadcast.getSourceMessageId() != null) {
+                    CopyMessage copy = new CopyMessage();
+                    copy.setChatId(chatId.toString());
+                    copy.setFromChatId(broadcast.getSourceChatId().toString());
+                    copy.setMessageId(broadcast.getSourceMessageId());
+                    messageSender.execute(copy);
+                    return true;
+                }
+                SendMessage message = new SendMessage();
+                message.setChatId(chatId);
+                message.setText(broadcast.getMessageText());
+                if (broadcast.getParseMode() != null) {
+                    message.setParseMode(broadcast.getParseMode());
+                }
+                if (markup != null) {
+                    message.setReplyMarkup(markup);
                 }
+                messageSender.execute(message, chatId);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (e.getErrorCode() != null && e.getErrorCode() == 429 && retryAfter != null) {
+                    logger.warn("Rate limited while broadcasting to {}, backing off {}s", chatId, retryAfter);
+                    rateLimiter.backOff(retryAfter);
+                    continue;
+                }
+                logger.error("Failed to send broadcast to user {}: {}", chatId, e.getMessage());
+                return false;
+            } catch (TelegramApiException e) {
+                logger.error("Failed to send broadcast to user {}: {}", chatId, e.getMessage());
+                return false;
             }
-            logger.info("Broadcast completed: {} successful, {} failed", successCount.get(), failureCount.get());
-        };
+        }
+        logger.error("Failed to send broadcast to user {}: still rate limited after {} attempts", chatId, MAX_SEND_ATTEMPTS);
+        return false;
+    }
 
-        // Schedule or execute immediately
-        if (scheduledTime != null && scheduledTime.isAfter(LocalDateTime.now(ZoneId.of("GMT+5")))) {
-            taskScheduler.schedule(broadcastTask, scheduledTime.atZone(ZoneId.systemDefault()).toInstant());
-            logger.info("Broadcast scheduled for {}", scheduledTime);
-        } else {
-            broadcastTask.run();
+    private synchronized ExecutorService workers() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(workerCount);
         }
+        return workers;
+    }
+
+    private boolean hasButton(Broadcast broadcast) {
+        return broadcast.getButtonText() != null && !broadcast.getButtonText().trim().isEmpty()
+                && broadcast.getButtonUrl() != null && !broadcast.getButtonUrl().trim().isEmpty();
     }
 
     private InlineKeyboardMarkup createButtonMarkup(String buttonText, String buttonUrl) {
@@ -105,4 +292,4 @@ public class BroadcastService {
         // Check if any HTML tags remain
         return !messageText.matches(".*<[a-zA-Z]+[^>]*>.*");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+package com.example.shade.service;
+
+import com.example.shade.model.AdminCard;
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.PaymentSystem;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.repository.AdminCardRepository;
+import com.example.shade.repository.HizmatRequestRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Polls Oson card history for every UZCARD admin card that has PENDING_PAYMENT requests and approves
+ * the requests whose unique amount shows up, so users don't have to press "confirm" for the payment
+ * to be picked up. Humo cards are still checked on confirmation only. Polls run on their own thread, so
+ * slow Oson calls don't hold up the shared scheduler, and a poll is skipped while the previous one is
+ * still running.
+ */
+@Service
+@RequiredArgsConstructor
+public class CardHistoryPoller {
+    private static final Logger logger = LoggerFactory.getLogger(CardHistoryPoller.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+    private static final long MATCH_WINDOW_MINUTES = 15;
+    private static final int MAX_PAGES = 5;
+
+    private final HizmatRequestRepository requestRepository;
+    private final AdminCardRepository adminCardRepository;
+    private final OsonService osonService;
+    private final TopUpService topUpService;
+
+    // Highest Oson transaction id already handled per admin card id
+    private final Map<Long, Long> lastSeenTransactionIds = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${oson.poller.enabled:true}")
+    private boolean enabled;
+
+    @Scheduled(fixedDelayString = "${oson.poller.interval-ms:15000}", initialDelayString = "${oson.poller.interval-ms:15000}")
+    public void poll() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                pollCards();
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void pollCards() {
+        Map<Long, Map<Long, List<HizmatRequest>>> pendingByCard = indexPendingPayments();
+        for (Map.Entry<Long, Map<Long, List<HizmatRequest>>> entry : pendingByCard.entrySet()) {
+            AdminCard card = adminCardRepository.findById(entry.getKey()).orElse(null);
+            if (card == null || card.getPaymentSystem() != PaymentSystem.UZCARD) {
+                continue;
+            }
+            try {
+                pollCard(card, entry.getValue());
+            } catch (Exception e) {
+                logger.warn("Card history poll failed for admin card {}: {}", card.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * adminCardId -> uniqueAmount -> PENDING_PAYMENT requests waiting for that amount.
+     */
+    private Map<Long, Map<Long, List<HizmatRequest>>> indexPendingPayments() {
+        Map<Long, Map<Long, List<HizmatRequest>>> index = new HashMap<>();
+        for (HizmatRequest request : requestRepository.findByStatus(RequestStatus.PENDING_PAYMENT)) {
+            if (request.getAdminCardId() == null || request.getUniqueAmount() == null) {
+                continue;
+            }
+            index.computeIfAbsent(request.getAdminCardId(), id -> new HashMap<>())
+                    .computeIfAbsent(request.getUniqueAmount(), amount -> new ArrayList<>())
+                    .add(request);
+        }
+        return index;
+    }
+
+    private void pollCard(AdminCard card, Map<Long, List<HizmatRequest>> pendingByAmount) throws Exception {
+        Long lastSeen = lastSeenTransactionIds.get(card.getId());
+        List<Map<String, Object>> transactions = osonService.getCardHistorySince(card.getCardNumber(), lastSeen, MAX_PAGES);
+        if (transactions.isEmpty()) {
+            return;
+        }
+
+        OffsetDateTime windowStart = OffsetDateTime.now().minusMinutes(MATCH_WINDOW_MINUTES);
+        long newCursor = lastSeen != null ? lastSeen : Long.MIN_VALUE;
+        long oldestUnsettled = Long.MAX_VALUE;
+        for (Map<String, Object> transaction : transactions) {
+            long transactionId = Long.parseLong(String.valueOf(transaction.get("id")));
+            newCursor = Math.max(newCursor, transactionId);
+            int status = Integer.parseInt(String.valueOf(transaction.get("status")));
+            OffsetDateTime txTime = parseTimestamp((String) transaction.get("ts"));
+            if (txTime == null || txTime.isBefore(windowStart)) {
+                continue;
+            }
+            if (status != 1) {
+                // Not settled yet; keep the cursor below it so it is looked at again next time
+                oldestUnsettled = Math.min(oldestUnsettled, transactionId);
+                continue;
+            }
+            long amount = Long.parseLong(String.valueOf(transaction.get("amount")));
+            if (amount % 100 != 0) {
+                continue;
+            }
+            List<HizmatRequest> candidates = pendingByAmount.get(amount / 100);
+            if (candidates == null) {
+                continue;
+            }
+            if (candidates.size() > 1) {
+                logger.warn("Ambiguous payment of {} on admin card {}: {} pending requests, leaving for manual check",
+                        amount / 100, card.getId(), candidates.size());
+                continue;
+            }
+            HizmatRequest request = candidates.get(0);
+            if (txTime.isBefore(request.getCreatedAt().atZone(ZONE).toOffsetDateTime())
+                    || requestRepository.existsByTransactionId(String.valueOf(transactionId))) {
+                continue;
+            }
+            Object refnum = transaction.get("refnum");
+            Long billId = refnum != null ? Long.parseLong(String.valueOf(refnum)) : null;
+            if (topUpService.approveMatchedPayment(request.getId(), String.valueOf(transactionId), billId)) {
+                pendingByAmount.remove(amount / 100);
+            }
+        }
+        lastSeenTransactionIds.put(card.getId(), oldestUnsettled != Long.MAX_VALUE ? Math.min(newCursor, oldestUnsettled - 1) : newCursor);
+    }
+
+    private OffsetDateTime parseTimestamp(String ts) {
+        try {
+            return ts != null ? OffsetDateTime.parse(ts, OsonService.OSON_TIMESTAMP_FORMATTER) : null;
+        } catch (DateTimeParseException e) {
+            logger.error("Failed to parse timestamp '{}': {}", ts, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.shade.service;
+
+import com.example.shade.dto.BalanceLimit;
+import com.example.shade.model.Currency;
+import com.example.shade.model.Platform;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The balance and limit of every platform's cashdesk, kept locally so a transfer doesn't have to ask
+ * the platform for it afterwards. A platform is seeded from its balance API the first time it is used;
+ * after that deposits take the amount off and payouts put it back. The real balance is fetched again
+ * every cashdesk.balance.reconcile-ms, and sooner once cashdesk.balance.reconcile-after-operations
+ * local changes have piled up or the local value went negative.
+ * <p>
+ * Every transfer is bracketed by {@link #begin(Platform)} and {@link #end(Platform)}, from before the
+ * provider call until its amount has been applied here. A fetch that overlaps any such transfer can't
+ * tell whether the transfer is already in the answer, so it is neither used to seed nor to reconcile;
+ * the reconcile is run again once the platform has no transfers in flight.
+ * <p>
+ * Admins are told once when a limit drops below cashdesk.balance.low-threshold.&lt;currency&gt; (for
+ * example cashdesk.balance.low-threshold.uzs=5000000), and again only after it has recovered. The
+ * thresholds are off unless configured.
+ */
+@Service
+public class CashdeskBalanceTracker {
+    private static final Logger logger = LoggerFactory.getLogger(CashdeskBalanceTracker.class);
+
+    private final CashdeskClient cashdeskClient;
+    private final MostbetService mostbetService;
+    private final PlatformRegistry platformRegistry;
+    private final AdminLogBotService adminLogBotService;
+    private final int reconcileAfterOperations;
+    private final Map<Currency, BigDecimal> lowThresholds = new EnumMap<>(Currency.class);
+    private final Map<Long, Tracked> balances = new ConcurrentHashMap<>();
+    private final Map<Long, Transfers> transfers = new ConcurrentHashMap<>();
+    private final ExecutorService reconciler = Executors.newSingleThreadExecutor();
+
+    public record Snapshot(BigDecimal balance, BigDecimal limit, LocalDateTime syncedAt, int operationsSinceSync,
+                           BigDecimal lastDrift, boolean low) {
+    }
+
+    public CashdeskBalanceTracker(CashdeskClient cashdeskClient,
+                                  MostbetService mostbetService,
+                                  PlatformRegistry platformRegistry,
+                                  AdminLogBotService adminLogBotService,
+                                  Environment environment) {
+        this.cashdeskClient = cashdeskClient;
+        this.mostbetService = mostbetService;
+        this.platformRegistry = platformRegistry;
+        this.adminLogBotService = adminLogBotService;
+        this.reconcileAfterOperations = environment.getProperty("cashdesk.balance.reconcile-after-operations", Integer.class, 25);
+        for (Currency currency : Currency.values()) {
+            long threshold = environment.getProperty("cashdesk.balance.low-threshold." + currency.name().toLowerCase(),
+                    Long.class, 0L);
+            lowThresholds.put(currency, BigDecimal.valueOf(threshold));
+        }
+    }
+
+    /**
+     * Marks a transfer on {@code platform} as in flight. Call before the provider call, and
+     * {@link #end(Platform)} once its result has been applied here (or it failed).
+     */
+    public void begin(Platform platform) {
+        Transfers platformTransfers = transfers(platform);
+        synchronized (platformTransfers) {
+            platformTransfers.active++;
+            platformTransfers.started++;
+        }
+    }
+
+    public void end(Platform platform) {
+        Transfers platformTransfers = transfers(platform);
+        boolean reconcile;
+        synchronized (platformTransfers) {
+            platformTransfers.active--;
+            reconcile = platformTransfers.active == 0 && platformTransfers.reconcileDeferred;
+            if (reconcile) {
+                platformTransfers.reconcileDeferred = false;
+            }
+        }
+        if (reconcile) {
+            scheduleReconcile(platform);
+        }
+    }
+
+    /**
+     * Takes a successful deposit of {@code amount} (in the platform's currency) off the cashdesk and
+     * returns what is left. The first deposit of a platform fetches the balance instead, which already
+     * includes it.
+     */
+    public BalanceLimit deposited(Platform platform, long amount) throws Exception {
+        return apply(platform, BigDecimal.valueOf(amount).negate());
+    }
+
+    /**
+     * Puts a successful payout back on the cashdesk. Nothing is fetched for a platform that isn't
+     * tracked yet; its first deposit will seed it.
+     */
+    public void paidOut(Platform platform, BigDecimal amount) {
+        Tracked tracked = balances.get(platform.getId());
+        if (tracked == null || amount == null) {
+            return;
+        }
+        BalanceLimit after;
+        synchronized (tracked) {
+            after = tracked.add(amount);
+        }
+        afterChange(platform, tracked, after);
+    }
+
+    public Map<String, Snapshot> getSnapshots() {
+        Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+        balances.forEach((platformId, tracked) -> {
+            String name = platformRegistry.findById(platformId).map(Platform::getName).orElse(String.valueOf(platformId));
+            synchronized (tracked) {
+                snapshots.put(name, new Snapshot(tracked.balance, tracked.limit, tracked.syncedAt, tracked.operations,
+                        tracked.lastDrift, tracked.low));
+            }
+        });
+        return snapshots;
+    }
+
+    @Scheduled(fixedDelayString = "${cashdesk.balance.reconcile-ms:300000}", initialDelayString = "${cashdesk.balance.reconcile-ms:300000}")
+    public void reconcileAll() {
+        for (Long platformId : balances.keySet()) {
+            platformRegistry.findById(platformId).ifPresentOrElse(this::scheduleReconcile, () -> balances.remove(platformId));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reconciler.shutdownNow();
+    }
+
+    private BalanceLimit apply(Platform platform, BigDecimal delta) throws Exception {
+        Tracked tracked = balances.get(platform.getId());
+        if (tracked == null) {
+            Transfers platformTransfers = transfers(platform);
+            long startedBefore;
+            synchronized (platformTransfers) {
+                startedBefore = platformTransfers.started;
+            }
+            BalanceLimit fetched = fetch(platform);
+            if (fetched == null) {
+                return null;
+            }
+            Tracked seeded = new Tracked();
+            seeded.sync(fetched);
+            Tracked existing;
+            synchronized (platformTransfers) {
+                // Seed only if this transfer was alone around the fetch, so the answer includes it and nothing else pending
+                if (platformTransfers.active > 1 || platformTransfers.started != startedBefore) {
+                    return fetched;
+                }
+                existing = balances.putIfAbsent(platform.getId(), seeded);
+            }
+            if (existing == null) {
+                checkLow(platform, seeded, fetched);
+                return fetched;
+            }
+            tracked = existing;
+        }
+        BalanceLimit after;
+        synchronized (tracked) {
+            after = tracked.add(delta);
+        }
+        afterChange(platform, tracked, after);
+        return after;
+    }
+
+    private void afterChange(Platform platform, Tracked tracked, BalanceLimit after) {
+        checkLow(platform, tracked, after);
+        boolean negative = after.getLimit() != null && after.getLimit().signum() < 0;
+        int operations;
+        synchronized (tracked) {
+            operations = tracked.operations;
+        }
+        if (negative || operations >= reconcileAfterOperations) {
+            scheduleReconcile(platform);
+        }
+    }
+
+    private void scheduleReconcile(Platform platform) {
+        Tracked tracked = balances.get(platform.getId());
+        if (tracked == null || !tracked.reconcileQueued.compareAndSet(false, true)) {
+            return;
+        }
+        reconciler.execute(() -> {
+            tracked.reconcileQueued.set(false);
+            reconcile(platform, tracked);
+        });
+    }
+
+    private void reconcile(Platform platform, Tracked tracked) {
+        Transfers platformTransfers = transfers(platform);
+        long startedBefore;
+        synchronized (platformTransfers) {
+            if (platformTransfers.active > 0) {
+                platformTransfers.reconcileDeferred = true;
+                return;
+            }
+            startedBefore = platformTransfers.started;
+        }
+        BalanceLimit fetched;
+        try {
+            fetched = fetch(platform);
+        } catch (Exception e) {
+            logger.warn("Balance reconcile for platform {} failed: {}", platform.getName(), e.toString());
+            return;
+        }
+        if (fetched == null) {
+            return;
+        }
+        BigDecimal drift;
+        // Held while syncing so no transfer can begin between the check and the sync
+        synchronized (platformTransfers) {
+            // A transfer ran while fetching, so the answer may or may not include it; try again once it is done
+            if (platformTransfers.active > 0 || platformTransfers.started != startedBefore) {
+                if (platformTransfers.active > 0) {
+                    platformTransfers.reconcileDeferred = true;
+                } else {
+                    scheduleReconcile(platform);
+                }
+                return;
+            }
+            synchronized (tracked) {
+                drift = tracked.limit != null && fetched.getLimit() != null ? fetched.getLimit().subtract(tracked.limit) : BigDecimal.ZERO;
+                tracked.sync(fetched);
+                tracked.lastDrift = drift;
+            }
+        }
+        if (drift.signum() != 0) {
+            logger.warn("Cashdesk balance of platform {} drifted by {}", platform.getName(), drift);
+        }
+        checkLow(platform, tracked, fetched);
+    }
+
+    private Transfers transfers(Platform platform) {
+        return transfers.computeIfAbsent(platform.getId(), id -> new Transfers());
+    }
+
+    private BalanceLimit fetch(Platform platform) throws Exception {
+        if ("mostbet".equals(platform.getType())) {
+            MostbetService.BalanceResponse balance = mostbetService.getBalance(platform.getApiKey(), platform.getSecret(), platform.getWorkplaceId());
+            return new BalanceLimit(null, BigDecimal.valueOf(balance.balance()));
+        }
+        return CashdeskClient.await(cashdeskClient.balance(platform));
+    }
+
+    private void checkLow(Platform platform, Tracked tracked, BalanceLimit current) {
+        BigDecimal threshold = platform.getCurrency() != null ? lowThresholds.get(platform.getCurrency()) : null;
+        if (threshold == null || threshold.signum() <= 0 || current.getLimit() == null) {
+            return;
+        }
+        boolean low = current.getLimit().compareTo(threshold) < 0;
+        boolean alert;
+        synchronized (tracked) {
+            alert = low && !tracked.low;
+            tracked.low = low;
+        }
+        if (alert) {
+            logger.warn("Cashdesk limit of platform {} is low: {}", platform.getName(), current.getLimit());
+            adminLogBotService.sendToAdmins(String.format("⚠️ %s kassasida limit kam qoldi: %,d %s",
+                    platform.getName(), current.getLimit().longValue(), platform.getCurrency()));
+        }
+    }
+
+    // Guarded by its own monitor
+    private static final class Tracked {
+        private BigDecimal balance;
+        private BigDecimal limit;
+        private LocalDateTime syncedAt;
+        private int operations;
+        private BigDecimal lastDrift = BigDecimal.ZERO;
+        private boolean low;
+        private final AtomicBoolean reconcileQueued = new AtomicBoolean();
+
+        void sync(BalanceLimit fetched) {
+            balance = fetched.getBalance();
+            limit = fetched.getLimit();
+            syncedAt = LocalDateTime.now(ZoneId.of("GMT+5"));
+            operations = 0;
+        }
+
+        BalanceLimit add(BigDecimal delta) {
+            if (balance != null) {
+                balance = balance.add(delta);
+            }
+            if (limit != null) {
+                limit = limit.add(delta);
+            }
+            operations++;
+            return new BalanceLimit(balance, limit);
+        }
+    }
+
+    // Guarded by its own monitor; taken before a Tracked monitor, never after
+    private static final class Transfers {
+        private int active;
+        private long started;
+        private boolean reconcileDeferred;
+    }
+}
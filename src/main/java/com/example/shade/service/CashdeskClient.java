@@ -0,0 +1,306 @@
+package com.example.shade.service;
+
+import com.example.shade.dto.BalanceLimit;
+import com.example.shade.model.Platform;
+import com.example.shade.model.UserProfile;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The servcul Cashdesk bot API used by "common" platforms: user lookup, deposit, payout and cashdesk
+ * balance. Requests are signed as sha256(sha256hex(a) + md5hex(b)) with per-thread digests; the parts
+ * that only depend on the platform's credentials are prepared once per platform. Calls run on their own
+ * pool and return futures; {@link #await} unwraps a failure to the exception the call threw, so
+ * callers can keep catching HttpClientErrorException.
+ */
+@Service
+public class CashdeskClient {
+    private static final Logger logger = LoggerFactory.getLogger(CashdeskClient.class);
+    private static final String BASE_URL = "https://partners.servcul.com/CashdeskBotAPI";
+    private static final DateTimeFormatter BALANCE_DT = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> digest("MD5"));
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> digest("SHA-256"));
+
+    private final OutboundHttpClients httpClients;
+    private final ExecutorService executor;
+    // Keyed by platform id; rebuilt when the registry hands out a new copy of the platform
+    private final Map<Long, Credentials> credentials = new ConcurrentHashMap<>();
+    private final Map<Operation, Counters> counters = new EnumMap<>(Operation.class);
+
+    public enum Operation {
+        FIND_USER, DEPOSIT, PAYOUT, BALANCE
+    }
+
+    /**
+     * Outcome of a deposit or payout. {@code message} is the API's Message, {@code summa} the paid out
+     * Summa when the API returned one.
+     */
+    public record Result(boolean success, String message, BigDecimal summa, Map<String, Object> body) {
+    }
+
+    public record Stats(long calls, long failures, long averageMillis) {
+    }
+
+    public CashdeskClient(OutboundHttpClients httpClients,
+                          @Value("${cashdesk.client.threads:8}") int threads) {
+        this.httpClients = httpClients;
+        this.executor = Executors.newFixedThreadPool(threads);
+        for (Operation operation : Operation.values()) {
+            counters.put(operation, new Counters());
+        }
+    }
+
+    /**
+     * The user's profile, or null when the API answered without one. A user that doesn't exist fails
+     * with HttpClientErrorException.NotFound.
+     */
+    public CompletableFuture<UserProfile> findUser(Platform platform, String userId) {
+        Credentials keys = credentials(platform);
+        return call(Operation.FIND_USER, () -> {
+            String sign = sign(keys.sha256("hash=", keys.hash, "&userid=", userId, "&cashdeskid=", keys.cashdeskId),
+                    keys.md5("userid=", userId, "&cashierpass=", keys.cashierPass, "&hash=", keys.hash));
+            String url = BASE_URL + "/Users/" + userId + "?confirm=" + keys.confirm(userId) + "&cashdeskId=" + keys.cashdeskId;
+            ResponseEntity<UserProfile> response = httpClients.cashdesk()
+                    .exchange(url, HttpMethod.GET, new HttpEntity<>(headers(sign)), UserProfile.class);
+            return response.getStatusCode().is2xxSuccessful() ? response.getBody() : null;
+        });
+    }
+
+    public CompletableFuture<Result> deposit(Platform platform, String userId, long amount, String lng, String cardNumber) {
+        Credentials keys = credentials(platform);
+        return call(Operation.DEPOSIT, () -> {
+            String sign = sign(keys.sha256("hash=", keys.hash, "&lng=", lng, "&userid=", userId),
+                    keys.md5("summa=", Long.toString(amount), keys.cashierSuffix));
+            Map<String, Object> body = new HashMap<>();
+            body.put("cashdeskId", Integer.parseInt(keys.cashdeskId));
+            body.put("lng", lng);
+            body.put("summa", amount);
+            body.put("confirm", keys.confirm(userId));
+            body.put("cardNumber", cardNumber);
+            return post("/Deposit/" + userId + "/Add", sign, body);
+        });
+    }
+
+    public CompletableFuture<Result> payout(Platform platform, String userId, String code, String lng) {
+        Credentials keys = credentials(platform);
+        return call(Operation.PAYOUT, () -> {
+            String sign = sign(keys.sha256("hash=", keys.hash, "&lng=", lng, "&userid=", userId),
+                    keys.md5("code=", code, keys.cashierSuffix));
+            Map<String, Object> body = new HashMap<>();
+            body.put("cashdeskId", Integer.parseInt(keys.cashdeskId));
+            body.put("lng", lng);
+            body.put("code", code);
+            body.put("confirm", keys.confirm(userId));
+            return post("/Deposit/" + userId + "/Payout", sign, body);
+        });
+    }
+
+    /**
+     * The cashdesk's balance and limit, or null when the API didn't report a balance.
+     */
+    public CompletableFuture<BalanceLimit> balance(Platform platform) {
+        Credentials keys = credentials(platform);
+        return call(Operation.BALANCE, () -> {
+            String dt = ZonedDateTime.now(ZoneOffset.UTC).format(BALANCE_DT);
+            String sign = sign(keys.sha256("hash=", keys.hash, "&cashierpass=", keys.cashierPass, "&dt=", dt),
+                    keys.md5("dt=", dt, "&cashierpass=", keys.cashierPass, "&cashdeskid=", keys.cashdeskId));
+            String url = BASE_URL + "/Cashdesk/" + keys.cashdeskId + "/Balance?confirm=" + keys.cashdeskConfirm + "&dt=" + dt;
+            Map<?, ?> response = httpClients.cashdesk()
+                    .exchange(url, HttpMethod.GET, new HttpEntity<>(headers(sign)), Map.class).getBody();
+            Object balance = response != null ? response.get("Balance") : null;
+            Object limit = response != null ? response.get("Limit") : null;
+            return balance != null ? new BalanceLimit(new BigDecimal(balance.toString()), new BigDecimal(limit.toString())) : null;
+        });
+    }
+
+    /**
+     * Waits for the call and rethrows what it failed with, unwrapped from CompletionException.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public Map<Operation, Stats> getStats() {
+        Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+        counters.forEach((operation, counter) -> {
+            long calls = counter.calls.sum();
+            stats.put(operation, new Stats(calls, counter.failures.sum(), calls == 0 ? 0 : counter.millis.sum() / calls));
+        });
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> CompletableFuture<T> call(Operation operation, Supplier<T> request) {
+        Counters counter = counters.get(operation);
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return request.get();
+            } catch (RuntimeException e) {
+                counter.failures.increment();
+                logger.warn("Cashdesk {} failed: {}", operation, e.toString());
+                throw e;
+            } finally {
+                counter.calls.increment();
+                counter.millis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }, executor);
+    }
+
+    private Result post(String path, String sign, Map<String, Object> body) {
+        HttpHeaders headers = headers(sign);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<Map> response = httpClients.cashdesk()
+                .exchange(BASE_URL + path, HttpMethod.POST, new HttpEntity<>(body, headers), Map.class);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> responseBody = response.getBody();
+        Object success = responseBody != null ? responseBody.get("success") : null;
+        if (success == null && responseBody != null) {
+            success = responseBody.get("Success");
+        }
+        String message = responseBody != null && responseBody.get("Message") != null
+                ? responseBody.get("Message").toString() : null;
+        BigDecimal summa = null;
+        Object summaValue = responseBody != null ? responseBody.get("Summa") : null;
+        if (summaValue != null) {
+            try {
+                summa = new BigDecimal(summaValue.toString());
+            } catch (NumberFormatException e) {
+                logger.warn("Failed to parse summa value: {}", summaValue);
+            }
+        }
+        return new Result(response.getStatusCode().is2xxSuccessful() && Boolean.TRUE.equals(success), message, summa, responseBody);
+    }
+
+    private static HttpHeaders headers(String sign) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("sign", sign);
+        return headers;
+    }
+
+    private Credentials credentials(Platform platform) {
+        Credentials current = credentials.get(platform.getId());
+        if (current == null || current.source != platform) {
+            current = new Credentials(platform);
+            credentials.put(platform.getId(), current);
+        }
+        return current;
+    }
+
+    private static String sign(String sha256Part, String md5Part) {
+        MessageDigest sha256 = SHA256.get();
+        sha256.update(sha256Part.getBytes(StandardCharsets.US_ASCII));
+        sha256.update(md5Part.getBytes(StandardCharsets.US_ASCII));
+        return hex(sha256.digest());
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder millis = new LongAdder();
+    }
+
+    // Everything derived from the platform alone; cashierSuffix ends the md5 input of deposit and payout
+    private static final class Credentials {
+        private final Platform source;
+        private final String hash;
+        private final String cashierPass;
+        private final String cashdeskId;
+        private final byte[] confirmSuffix;
+        private final String cashierSuffix;
+        private final String cashdeskConfirm;
+
+        Credentials(Platform platform) {
+            this.source = platform;
+            this.hash = String.valueOf(platform.getApiKey());
+            this.cashierPass = String.valueOf(platform.getPassword());
+            this.cashdeskId = String.valueOf(platform.getWorkplaceId());
+            this.confirmSuffix = (":" + hash).getBytes(StandardCharsets.UTF_8);
+            this.cashierSuffix = "&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId;
+            this.cashdeskConfirm = md5(cashdeskId, ":" + hash);
+        }
+
+        // md5(userId + ":" + hash)
+        String confirm(String userId) {
+            MessageDigest md5 = MD5.get();
+            md5.update(userId.getBytes(StandardCharsets.UTF_8));
+            md5.update(confirmSuffix);
+            return hex(md5.digest());
+        }
+
+        String md5(String... parts) {
+            MessageDigest md5 = MD5.get();
+            for (String part : parts) {
+                md5.update(part.getBytes(StandardCharsets.UTF_8));
+            }
+            return hex(md5.digest());
+        }
+
+        String sha256(String... parts) {
+            MessageDigest sha256 = SHA256.get();
+            for (String part : parts) {
+                sha256.update(part.getBytes(StandardCharsets.UTF_8));
+            }
+            return hex(sha256.digest());
+        }
+    }
+}
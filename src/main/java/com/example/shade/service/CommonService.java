@@ -6,14 +6,12 @@ import com.example.shade.model.HizmatRequest;
 import com.example.shade.model.Platform;
 import com.example.shade.model.UserProfile;
 import com.example.shade.repository.HizmatRequestRepository;
-import com.example.shade.repository.PlatformRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
@@ -28,9 +26,8 @@ public class CommonService {
     private static final Logger logger = LoggerFactory.getLogger(CommonService.class);
     private final UserSessionService sessionService;
     private final HizmatRequestRepository requestRepository;
-    private final PlatformRepository platformRepository;
+    private final PlatformRegistry platformRegistry;
     private final MessageSender messageSender;
-    private final RestTemplate restTemplate = new RestTemplate() ;
 
     public void sendPlatformSelection(Long chatId, String prefix) {
         SendMessage message = new SendMessage();
@@ -141,8 +138,8 @@ public class CommonService {
     private InlineKeyboardMarkup createPlatformKeyboard(String prefix) {
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        List<Platform> uzsPlatforms = platformRepository.findByCurrency(Currency.UZS);
-        List<Platform> rubPlatforms = platformRepository.findByCurrency(Currency.RUB);
+        List<Platform> uzsPlatforms = platformRegistry.findByCurrency(Currency.UZS);
+        List<Platform> rubPlatforms = platformRegistry.findByCurrency(Currency.RUB);
         int maxRows = Math.max(uzsPlatforms.size(), rubPlatforms.size());
         for (int i = 0; i < maxRows; i++) {
             List<InlineKeyboardButton> row = new ArrayList<>();
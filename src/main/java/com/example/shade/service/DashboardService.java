@@ -1,18 +1,26 @@
 package com.example.shade.service;
 
+import com.example.shade.dto.ChatRequestCount;
+import com.example.shade.dto.DailyRequestCount;
 import com.example.shade.dto.DashboardStats;
+import com.example.shade.dto.RequestAggregate;
 import com.example.shade.dto.RequestFilter;
 import com.example.shade.model.HizmatRequest;
 import com.example.shade.model.RequestStatus;
 import com.example.shade.model.RequestType;
-import com.example.shade.repository.HizmatRequestRepository;
-import com.example.shade.repository.PlatformRepository;
+import com.example.shade.repository.RequestAggregationRepository;
+import com.example.shade.repository.RequestDailyRollupRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -20,49 +28,40 @@ import java.util.stream.Collectors;
 @Service
 public class DashboardService {
 
+    private static final int TOP_USERS_LIMIT = 10;
+    private static final int RECENT_REQUESTS_LIMIT = 5;
+    // The admin panel sends inclusive end dates as 23:59:59, so treat that as covering the whole day
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59, 59);
+
+    @Autowired
+    private RequestAggregationRepository aggregationRepository;
+
     @Autowired
-    private HizmatRequestRepository requestRepository;
+    private RequestDailyRollupRepository rollupRepository;
 
     public DashboardStats getDashboardStats(RequestFilter filter) {
-        long totalRequests = getRequestCount(filter);
-        long approvedRequests = getRequestCount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, filter.getType(),
-                filter.getStartDate(), filter.getEndDate()));
-        long pendingRequests = getRequestCount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.PENDING, filter.getType(),
-                filter.getStartDate(), filter.getEndDate()));
-        long pendingAdminRequests = getRequestCount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.PENDING_ADMIN, filter.getType(),
-                filter.getStartDate(), filter.getEndDate()));
-        long canceledRequests = getRequestCount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.CANCELED, filter.getType(),
-                filter.getStartDate(), filter.getEndDate()));
-        long failedRequests = getRequestCount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.FAILED, filter.getType(),
-                filter.getStartDate(), filter.getEndDate()));
-        double totalApprovedWithdrawalAmount = getTotalApprovedWithdrawalAmount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, RequestType.WITHDRAWAL,
-                filter.getStartDate(), filter.getEndDate()));
-        double totalApprovedTopUpAmount = getTotalApprovedTopUpAmount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, RequestType.TOP_UP,
-                filter.getStartDate(), filter.getEndDate()));
-        double totalApprovedBonusAmount = getTotalApprovedBonusAmount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.BONUS_APPROVED, null,
-                filter.getStartDate(), filter.getEndDate()));
-        Map<RequestStatus, Long> statusDistribution = getStatusDistribution(filter);
-        Map<String, Long> requestsByPlatform = getRequestsByPlatform(filter);
+        // One grouped scan over (platform, status, type) feeds every counter, total and per-platform figure
+        List<RequestAggregate> aggregates = aggregate(filter, null, null);
+        RequestStatus status = filter.getStatus();
+        RequestType type = filter.getType();
+
+        long totalRequests = countOf(aggregates, status, type);
+        long approvedRequests = countOf(aggregates, RequestStatus.APPROVED, type);
+        long pendingRequests = countOf(aggregates, RequestStatus.PENDING, type);
+        long pendingAdminRequests = countOf(aggregates, RequestStatus.PENDING_ADMIN, type);
+        long canceledRequests = countOf(aggregates, RequestStatus.CANCELED, type);
+        long failedRequests = countOf(aggregates, RequestStatus.FAILED, type);
+        double totalApprovedWithdrawalAmount = amountOf(aggregates, RequestStatus.APPROVED, RequestType.WITHDRAWAL);
+        double totalApprovedTopUpAmount = amountOf(aggregates, RequestStatus.APPROVED, RequestType.TOP_UP);
+        double totalApprovedBonusAmount = amountOf(aggregates, RequestStatus.BONUS_APPROVED, null);
+        Map<RequestStatus, Long> statusDistribution = statusDistributionOf(aggregates, status, type);
+        Map<String, Long> requestsByPlatform = countByPlatformOf(aggregates, status, type);
         Map<String, Long> requestsByDate = getRequestsByDate(filter);
-        Map<String, Double> amountByPlatform = getAmountByPlatform(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, RequestType.WITHDRAWAL,
-                filter.getStartDate(), filter.getEndDate()));
-        double averageApprovedAmount = getAverageApprovedAmount(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, RequestType.WITHDRAWAL,
-                filter.getStartDate(), filter.getEndDate()));
+        Map<String, Double> amountByPlatform = amountByPlatformOf(aggregates, RequestStatus.APPROVED, RequestType.WITHDRAWAL);
+        double averageApprovedAmount = averageOf(aggregates, RequestStatus.APPROVED, RequestType.WITHDRAWAL);
         Map<Long, Long> topUsers = getTopUsersByRequestCount(filter);
         List<Map<String, Object>> recentRequests = getRecentRequests(filter);
-        Map<String, Map<String, Double>> platformGraphData = getPlatformGraphData(new RequestFilter(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, null,
-                filter.getStartDate(), filter.getEndDate()));
+        Map<String, Map<String, Double>> platformGraphData = platformGraphDataOf(aggregates);
 
         return new DashboardStats(totalRequests, approvedRequests, pendingRequests, pendingAdminRequests,
                 canceledRequests, failedRequests, totalApprovedWithdrawalAmount, statusDistribution, requestsByPlatform,
@@ -71,221 +70,74 @@ public class DashboardService {
     }
 
     public long getRequestCount(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.size();
+        return countOf(aggregate(filter, filter.getStatus(), filter.getType()), null, null);
     }
 
     public double getTotalApprovedWithdrawalAmount(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, RequestType.WITHDRAWAL);
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .mapToDouble(r -> r.getUniqueAmount() != null ? r.getUniqueAmount() : 0.0)
-                .sum();
+        return amountOf(aggregate(filter, RequestStatus.APPROVED, RequestType.WITHDRAWAL), null, null);
     }
 
     public double getTotalApprovedTopUpAmount(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, RequestType.TOP_UP);
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .mapToDouble(r -> r.getUniqueAmount() != null ? r.getUniqueAmount() : 0.0)
-                .sum();
+        return amountOf(aggregate(filter, RequestStatus.APPROVED, RequestType.TOP_UP), null, null);
     }
 
     public double getTotalApprovedBonusAmount(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.BONUS_APPROVED, null);
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .mapToDouble(r -> r.getUniqueAmount() != null ? r.getUniqueAmount() : 0.0)
-                .sum();
+        return amountOf(aggregate(filter, RequestStatus.BONUS_APPROVED, null), null, null);
     }
 
     public Map<RequestStatus, Long> getStatusDistribution(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .collect(Collectors.groupingBy(
-                        HizmatRequest::getStatus,
-                        Collectors.counting()
-                ));
+        return statusDistributionOf(aggregate(filter, filter.getStatus(), filter.getType()), null, null);
     }
 
     public Map<String, Long> getRequestsByPlatform(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .collect(Collectors.groupingBy(
-                        HizmatRequest::getPlatform,
-                        Collectors.counting()
-                ));
+        return countByPlatformOf(aggregate(filter, filter.getStatus(), filter.getType()), null, null);
     }
 
     public Map<String, Long> getRequestsByDate(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
+        DateSplit split = DateSplit.of(filter.getStartDate(), filter.getEndDate(), RequestRollupService.today());
+        List<DailyRequestCount> counts = new ArrayList<>();
+        if (split.hasClosedDays()) {
+            counts.addAll(rollupRepository.countByDay(
+                    filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType(),
+                    split.fromDay(), split.toDay()));
         }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
+        for (TimeRange range : split.rawRanges()) {
+            counts.addAll(aggregationRepository.countByDay(
+                    filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType(),
+                    range.start(), range.end()));
         }
-        return requests.stream()
-                .collect(Collectors.groupingBy(
-                        r -> r.getCreatedAt().toLocalDate().format(DateTimeFormatter.ISO_LOCAL_DATE),
-                        Collectors.counting()
+        return counts.stream()
+                .collect(Collectors.toMap(
+                        c -> c.getDay().format(DateTimeFormatter.ISO_LOCAL_DATE),
+                        DailyRequestCount::getCount,
+                        Long::sum
                 ));
     }
 
     public Map<String, Double> getAmountByPlatform(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .filter(r -> r.getStatus() == RequestStatus.APPROVED && r.getType() == RequestType.WITHDRAWAL)
-                .collect(Collectors.groupingBy(
-                        HizmatRequest::getPlatform,
-                        Collectors.summingDouble(r -> r.getUniqueAmount() != null ? r.getUniqueAmount() : 0.0)
-                ));
+        return amountByPlatformOf(aggregate(filter, filter.getStatus(), filter.getType()),
+                RequestStatus.APPROVED, RequestType.WITHDRAWAL);
     }
 
     public double getAverageApprovedAmount(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .filter(r -> r.getStatus() == RequestStatus.APPROVED && r.getType() == RequestType.WITHDRAWAL)
-                .mapToDouble(r -> r.getUniqueAmount() != null ? r.getUniqueAmount() : 0.0)
-                .average()
-                .orElse(0.0);
+        return averageOf(aggregate(filter, filter.getStatus(), filter.getType()),
+                RequestStatus.APPROVED, RequestType.WITHDRAWAL);
     }
 
     public Map<Long, Long> getTopUsersByRequestCount(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
-        return requests.stream()
-                .collect(Collectors.groupingBy(
-                        HizmatRequest::getChatId,
-                        Collectors.counting()
-                ))
-                .entrySet().stream()
-                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
-                .limit(10)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        HashMap::new
-                ));
+        List<ChatRequestCount> counts = aggregationRepository.countByChatId(
+                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType(),
+                filter.getStartDate(), filter.getEndDate(), PageRequest.of(0, TOP_USERS_LIMIT));
+        Map<Long, Long> result = new LinkedHashMap<>();
+        counts.forEach(c -> result.put(c.getChatId(), c.getCount()));
+        return result;
     }
 
     public List<Map<String, Object>> getRecentRequests(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType());
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
-        }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
-        }
+        List<HizmatRequest> requests = aggregationRepository.findRecent(
+                filter.getCardId(), filter.getPlatformId(), filter.getStatus(), filter.getType(),
+                filter.getStartDate(), filter.getEndDate(), PageRequest.of(0, RECENT_REQUESTS_LIMIT));
         return requests.stream()
-                .sorted((r1, r2) -> r2.getCreatedAt().compareTo(r1.getCreatedAt()))
-                .limit(5)
                 .map(r -> {
                     Map<String, Object> map = new HashMap<>();
                     map.put("id", r.getId());
@@ -304,36 +156,129 @@ public class DashboardService {
     }
 
     public Map<String, Map<String, Double>> getPlatformGraphData(RequestFilter filter) {
-        List<HizmatRequest> requests = requestRepository.findByFilters(
-                filter.getCardId(), filter.getPlatformId(), RequestStatus.APPROVED, null);
-        if (filter.getStartDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isBefore(filter.getStartDate()))
-                    .collect(Collectors.toList());
+        return platformGraphDataOf(aggregate(filter, RequestStatus.APPROVED, null));
+    }
+
+    /**
+     * Closed days are read from request_daily_rollup; only the partial days at the edges of the
+     * range (and today) are aggregated from hizmat_request.
+     */
+    private List<RequestAggregate> aggregate(RequestFilter filter, RequestStatus status, RequestType type) {
+        DateSplit split = DateSplit.of(filter.getStartDate(), filter.getEndDate(), RequestRollupService.today());
+        List<RequestAggregate> aggregates = new ArrayList<>();
+        if (split.hasClosedDays()) {
+            aggregates.addAll(rollupRepository.aggregateByPlatformStatusType(
+                    filter.getCardId(), filter.getPlatformId(), status, type, split.fromDay(), split.toDay()));
         }
-        if (filter.getEndDate() != null) {
-            requests = requests.stream()
-                    .filter(r -> !r.getCreatedAt().isAfter(filter.getEndDate()))
-                    .collect(Collectors.toList());
+        for (TimeRange range : split.rawRanges()) {
+            aggregates.addAll(aggregationRepository.aggregateByPlatformStatusType(
+                    filter.getCardId(), filter.getPlatformId(), status, type, range.start(), range.end()));
         }
+        return aggregates;
+    }
+
+    private static boolean matches(RequestAggregate a, RequestStatus status, RequestType type) {
+        return (status == null || a.getStatus() == status) && (type == null || a.getType() == type);
+    }
+
+    private static long countOf(List<RequestAggregate> aggregates, RequestStatus status, RequestType type) {
+        return aggregates.stream()
+                .filter(a -> matches(a, status, type))
+                .mapToLong(RequestAggregate::getCount)
+                .sum();
+    }
+
+    private static double amountOf(List<RequestAggregate> aggregates, RequestStatus status, RequestType type) {
+        return aggregates.stream()
+                .filter(a -> matches(a, status, type))
+                .mapToDouble(RequestAggregate::getAmount)
+                .sum();
+    }
+
+    private static double averageOf(List<RequestAggregate> aggregates, RequestStatus status, RequestType type) {
+        long count = countOf(aggregates, status, type);
+        return count == 0 ? 0.0 : amountOf(aggregates, status, type) / count;
+    }
+
+    private static Map<RequestStatus, Long> statusDistributionOf(List<RequestAggregate> aggregates,
+                                                                 RequestStatus status, RequestType type) {
+        return aggregates.stream()
+                .filter(a -> matches(a, status, type))
+                .collect(Collectors.groupingBy(
+                        RequestAggregate::getStatus,
+                        Collectors.summingLong(RequestAggregate::getCount)
+                ));
+    }
+
+    private static Map<String, Long> countByPlatformOf(List<RequestAggregate> aggregates,
+                                                       RequestStatus status, RequestType type) {
+        return aggregates.stream()
+                .filter(a -> matches(a, status, type))
+                .collect(Collectors.groupingBy(
+                        RequestAggregate::getPlatform,
+                        Collectors.summingLong(RequestAggregate::getCount)
+                ));
+    }
+
+    private static Map<String, Double> amountByPlatformOf(List<RequestAggregate> aggregates,
+                                                          RequestStatus status, RequestType type) {
+        return aggregates.stream()
+                .filter(a -> matches(a, status, type))
+                .collect(Collectors.groupingBy(
+                        RequestAggregate::getPlatform,
+                        Collectors.summingDouble(RequestAggregate::getAmount)
+                ));
+    }
+
+    private static Map<String, Map<String, Double>> platformGraphDataOf(List<RequestAggregate> aggregates) {
         Map<String, Map<String, Double>> result = new HashMap<>();
-        requests.stream()
-                .filter(r -> r.getStatus() == RequestStatus.APPROVED)
-                .collect(Collectors.groupingBy(HizmatRequest::getPlatform))
-                .forEach((platform, platformRequests) -> {
-                    Map<String, Double> amounts = new HashMap<>();
-                    double withdrawalAmount = platformRequests.stream()
-                            .filter(r -> r.getType() == RequestType.WITHDRAWAL)
-                            .mapToDouble(r -> r.getUniqueAmount() != null ? r.getUniqueAmount() : 0.0)
-                            .sum();
-                    double topUpAmount = platformRequests.stream()
-                            .filter(r -> r.getType() == RequestType.TOP_UP)
-                            .mapToDouble(r -> r.getUniqueAmount() != null ? r.getUniqueAmount() : 0.0)
-                            .sum();
-                    amounts.put("withdrawal", withdrawalAmount);
-                    amounts.put("top_up", topUpAmount);
-                    result.put(platform, amounts);
+        aggregates.stream()
+                .filter(a -> a.getStatus() == RequestStatus.APPROVED)
+                .forEach(a -> {
+                    Map<String, Double> amounts = result.computeIfAbsent(a.getPlatform(), p -> {
+                        Map<String, Double> m = new HashMap<>();
+                        m.put("withdrawal", 0.0);
+                        m.put("top_up", 0.0);
+                        return m;
+                    });
+                    if (a.getType() == RequestType.WITHDRAWAL) {
+                        amounts.merge("withdrawal", a.getAmount(), Double::sum);
+                    } else if (a.getType() == RequestType.TOP_UP) {
+                        amounts.merge("top_up", a.getAmount(), Double::sum);
+                    }
                 });
         return result;
     }
-}
\ No newline at end of file
+
+    private record TimeRange(LocalDateTime start, LocalDateTime end) {
+    }
+
+    private record DateSplit(LocalDate fromDay, LocalDate toDay, List<TimeRange> rawRanges) {
+
+        boolean hasClosedDays() {
+            return fromDay == null || fromDay.isBefore(toDay);
+        }
+
+        static DateSplit of(LocalDateTime start, LocalDateTime end, LocalDate today) {
+            LocalDate fromDay = start == null ? null
+                    : start.toLocalTime().equals(LocalTime.MIDNIGHT) ? start.toLocalDate() : start.toLocalDate().plusDays(1);
+            LocalDate toDay = today;
+            if (end != null) {
+                LocalDate endDay = end.toLocalTime().isBefore(END_OF_DAY) ? end.toLocalDate() : end.toLocalDate().plusDays(1);
+                toDay = endDay.isBefore(today) ? endDay : today;
+            }
+            if (fromDay != null && !fromDay.isBefore(toDay)) {
+                return new DateSplit(fromDay, toDay, List.of(new TimeRange(start, end)));
+            }
+            List<TimeRange> rawRanges = new ArrayList<>();
+            if (start != null && start.isBefore(fromDay.atStartOfDay())) {
+                rawRanges.add(new TimeRange(start, fromDay.atStartOfDay().minusNanos(1000)));
+            }
+            LocalDateTime tailStart = toDay.atStartOfDay();
+            if (end == null || !end.isBefore(tailStart)) {
+                rawRanges.add(new TimeRange(tailStart, end));
+            }
+            return new DateSplit(fromDay, toDay, rawRanges);
+        }
+    }
+}
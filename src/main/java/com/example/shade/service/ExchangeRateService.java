@@ -4,37 +4,97 @@ import com.example.shade.model.ExchangeRate;
 import com.example.shade.repository.ExchangeRateRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Owns the current exchange rate. The latest row is loaded once and kept as an immutable snapshot that
+ * is swapped whenever a new rate is saved, so conversions on the money paths don't query the database.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ExchangeRateService {
 
     private final ExchangeRateRepository exchangeRateRepository;
+    private final AtomicReference<RateSnapshot> snapshot = new AtomicReference<>();
+
+    // Conversions match what the money paths always computed: uzsToRub is applied per 1000 UZS
+    public record RateSnapshot(Long id, BigDecimal uzsToRub, BigDecimal rubToUzs, LocalDateTime createdAt) {
+        static RateSnapshot of(ExchangeRate rate) {
+            return new RateSnapshot(rate.getId(), rate.getUzsToRub(), rate.getRubToUzs(), rate.getCreatedAt());
+        }
+
+        public long uzsToRub(long uzsAmount) {
+            return BigDecimal.valueOf(uzsAmount).multiply(uzsToRub).longValue() / 1000;
+        }
+
+        public BigDecimal rubToUzs(BigDecimal rubAmount) {
+            return rubAmount.multiply(rubToUzs);
+        }
+    }
+
+    public RateSnapshot current() {
+        RateSnapshot rate = latest();
+        if (rate == null) {
+            throw new RuntimeException("No exchange rate found in the database");
+        }
+        return rate;
+    }
+
+    public long uzsToRub(long uzsAmount) {
+        return current().uzsToRub(uzsAmount);
+    }
+
+    public BigDecimal rubToUzs(BigDecimal rubAmount) {
+        return current().rubToUzs(rubAmount);
+    }
 
     public Double getLatestRate() {
-        ExchangeRate rate = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("Valyuta kursi topilmadi"));
-        return rate.getRubToUzs().doubleValue();
+        RateSnapshot rate = latest();
+        if (rate == null) {
+            throw new RuntimeException("Valyuta kursi topilmadi");
+        }
+        return rate.rubToUzs().doubleValue();
     }
 
-    @Transactional
     public void updateRate(Double rate) {
         BigDecimal rubToUzs = BigDecimal.valueOf(rate);
         BigDecimal uzsToRub = BigDecimal.ONE.divide(rubToUzs, 6, BigDecimal.ROUND_HALF_UP);
+        save(uzsToRub, rubToUzs, LocalDateTime.now());
+        log.info("Exchange rate updated: 1 RUB = {} UZS", rate);
+    }
 
-        ExchangeRate exchangeRate = ExchangeRate.builder()
-                .rubToUzs(rubToUzs)
+    public ExchangeRate save(BigDecimal uzsToRub, BigDecimal rubToUzs, LocalDateTime createdAt) {
+        ExchangeRate exchangeRate = exchangeRateRepository.save(ExchangeRate.builder()
                 .uzsToRub(uzsToRub)
-                .createdAt(LocalDateTime.now())
-                .build();
+                .rubToUzs(rubToUzs)
+                .createdAt(createdAt)
+                .build());
+        snapshot.set(RateSnapshot.of(exchangeRate));
+        return exchangeRate;
+    }
 
-        exchangeRateRepository.save(exchangeRate);
-        log.info("Exchange rate updated: 1 RUB = {} UZS", rate);
+    // Picks up rates written straight to the database or by another instance
+    @Scheduled(fixedDelayString = "${exchange-rate.refresh-ms:60000}", initialDelayString = "${exchange-rate.refresh-ms:60000}")
+    public void revalidate() {
+        reload();
+    }
+
+    private RateSnapshot latest() {
+        RateSnapshot rate = snapshot.get();
+        return rate != null ? rate : reload();
+    }
+
+    private synchronized RateSnapshot reload() {
+        RateSnapshot rate = exchangeRateRepository.findLatest().map(RateSnapshot::of).orElse(null);
+        if (rate != null) {
+            snapshot.set(rate);
+        }
+        return rate;
     }
 }
@@ -2,75 +2,59 @@ package com.example.shade.service;
 
 import com.example.shade.model.FeatureSettings;
 import com.example.shade.repository.FeatureSettingsRepository;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Date-8/11/2025
  * By Sardor Tokhirov
  * Time-4:45 AM (GMT+5)
+ *
+ * Feature gates are read on almost every update, so the latest settings row is kept as an in-memory
+ * snapshot. Toggles swap it right after saving and a periodic reload picks up changes made elsewhere.
  */
-
-
-
 @Service
 @RequiredArgsConstructor
 public class FeatureService {
     private static final Logger logger = LoggerFactory.getLogger(FeatureService.class);
     private final FeatureSettingsRepository featureSettingsRepository;
+    private final AtomicReference<FeatureSettings> snapshot = new AtomicReference<>();
 
-    @Transactional
     public FeatureSettings getGlobalSettings() {
-        return featureSettingsRepository.findLatest()
-                .orElseGet(() -> {
-                    FeatureSettings settings = new FeatureSettings();
-                    settings.setTopUpEnabled(true);
-                    settings.setWithdrawEnabled(true);
-                    settings.setBonusEnabled(true);
-                    settings.setCreatedAt(LocalDateTime.now());
-                    return featureSettingsRepository.save(settings);
-                });
+        FeatureSettings settings = snapshot.get();
+        return settings != null ? settings : reload();
+    }
+
+    @Scheduled(fixedDelayString = "${feature.settings.refresh-ms:30000}", initialDelayString = "${feature.settings.refresh-ms:30000}")
+    public void revalidate() {
+        FeatureSettings previous = snapshot.get();
+        FeatureSettings latest = reload();
+        if (previous != null && !previous.getId().equals(latest.getId())) {
+            logger.info("Feature settings changed outside this instance, now {}", latest);
+        }
     }
 
-    @Transactional
-    public void toggleTopUp(boolean enabled) {
+    public synchronized void toggleTopUp(boolean enabled) {
         FeatureSettings current = getGlobalSettings();
-        FeatureSettings settings = new FeatureSettings();
-        settings.setTopUpEnabled(enabled);
-        settings.setWithdrawEnabled(current.getWithdrawEnabled());
-        settings.setBonusEnabled(current.getBonusEnabled());
-        settings.setCreatedAt(LocalDateTime.now());
-        featureSettingsRepository.save(settings);
+        snapshot.set(saveSettings(enabled, current.getWithdrawEnabled(), current.getBonusEnabled()));
         logger.info("Top-up {} globally", enabled ? "enabled" : "disabled");
     }
 
-    @Transactional
-    public void toggleWithdraw(boolean enabled) {
+    public synchronized void toggleWithdraw(boolean enabled) {
         FeatureSettings current = getGlobalSettings();
-        FeatureSettings settings = new FeatureSettings();
-        settings.setTopUpEnabled(current.getTopUpEnabled());
-        settings.setWithdrawEnabled(enabled);
-        settings.setBonusEnabled(current.getBonusEnabled());
-        settings.setCreatedAt(LocalDateTime.now());
-        featureSettingsRepository.save(settings);
+        snapshot.set(saveSettings(current.getTopUpEnabled(), enabled, current.getBonusEnabled()));
         logger.info("Withdraw {} globally", enabled ? "enabled" : "disabled");
     }
 
-    @Transactional
-    public void toggleBonus(boolean enabled) {
+    public synchronized void toggleBonus(boolean enabled) {
         FeatureSettings current = getGlobalSettings();
-        FeatureSettings settings = new FeatureSettings();
-        settings.setTopUpEnabled(current.getTopUpEnabled());
-        settings.setWithdrawEnabled(current.getWithdrawEnabled());
-        settings.setBonusEnabled(enabled);
-        settings.setCreatedAt(LocalDateTime.now());
-        featureSettingsRepository.save(settings);
+        snapshot.set(saveSettings(current.getTopUpEnabled(), current.getWithdrawEnabled(), enabled));
         logger.info("Bonus {} globally", enabled ? "enabled" : "disabled");
     }
 
@@ -85,4 +69,20 @@ public class FeatureService {
     public boolean canPerformBonus() {
         return getGlobalSettings().getBonusEnabled();
     }
-}
\ No newline at end of file
+
+    private synchronized FeatureSettings reload() {
+        FeatureSettings settings = featureSettingsRepository.findLatest()
+                .orElseGet(() -> saveSettings(true, true, true));
+        snapshot.set(settings);
+        return settings;
+    }
+
+    private FeatureSettings saveSettings(boolean topUpEnabled, boolean withdrawEnabled, boolean bonusEnabled) {
+        FeatureSettings settings = new FeatureSettings();
+        settings.setTopUpEnabled(topUpEnabled);
+        settings.setWithdrawEnabled(withdrawEnabled);
+        settings.setBonusEnabled(bonusEnabled);
+        settings.setCreatedAt(LocalDateTime.now());
+        return featureSettingsRepository.save(settings);
+    }
+}
@@ -6,7 +6,6 @@ import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -22,7 +21,7 @@ import java.util.Map;
 @Service
 @RequiredArgsConstructor
 public class HumoService {
-    private final RestTemplate restTemplate  = new RestTemplate();
+    private final OutboundHttpClients httpClients;
 
     public ResponseEntity<Object> forwardRequest(String path, HttpMethod method, HttpServletRequest request) {
         String targetUrl = "http://localhost:2806" + path;
@@ -50,7 +49,7 @@ public class HumoService {
 
         HttpEntity<String> entity = new HttpEntity<>(body.isEmpty() ? null : body, headers);
         try {
-            ResponseEntity<Object> response = restTemplate.exchange(targetUrl, method, entity, Object.class);
+            ResponseEntity<Object> response = httpClients.humo().exchange(targetUrl, method, entity, Object.class);
             return ResponseEntity.status(response.getStatusCode()).body(response.getBody());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to forward request");
@@ -60,7 +59,7 @@ public class HumoService {
     public boolean verifyPaymentAmount(Long uniqueAmount) {
         String targetUrl = "http://localhost:2806/last_transactions?amount=" + uniqueAmount;
         try {
-            ResponseEntity<Map> response = restTemplate.getForEntity(targetUrl, Map.class);
+            ResponseEntity<Map> response = httpClients.humo().getForEntity(targetUrl, Map.class);
             Map<String, Object> body = response.getBody();
             if (body != null && body.containsKey("transactions")) {
                 List<?> transactions = (List<?>) body.get("transactions");
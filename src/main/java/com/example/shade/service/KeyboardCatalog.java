@@ -0,0 +1,194 @@
+package com.example.shade.service;
+
+import com.example.shade.model.Currency;
+import com.example.shade.model.Language;
+import com.example.shade.model.Platform;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Built keyboards per language. A keyboard is described once as a {@link Layout} constant and rendered
+ * the first time a chat of each language needs it; after that rendering is a map lookup. Platform
+ * keyboards also depend on the platforms in {@link PlatformRegistry}; a keyboard is rendered again once
+ * the platforms or the {@link TranslationCatalog} are reloaded. The returned markups are shared, so they must not be modified.
+ */
+@Service
+@RequiredArgsConstructor
+public class KeyboardCatalog {
+    private final TranslationCatalog translationCatalog;
+    private final LanguageSessionService languageSessionService;
+    private final PlatformRegistry platformRegistry;
+
+    private final Map<Language, Map<Layout, Rendered>> keyboards = new EnumMap<>(Language.class);
+    private final AtomicReference<Platforms> platforms = new AtomicReference<>();
+
+    {
+        for (Language language : Language.values()) {
+            keyboards.put(language, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * A button label is either a message key or, when not {@code translated}, the text itself. In
+     * platform rows the label is a format taking the platform name.
+     */
+    public record Button(String label, String callback, boolean translated) {
+        public static Button translated(String key, String callback) {
+            return new Button(key, callback, true);
+        }
+
+        public static Button literal(String text, String callback) {
+            return new Button(text, callback, false);
+        }
+    }
+
+    private record Platforms(long version, List<String> uzs, List<String> rub) {
+    }
+
+    // platforms is the snapshot a platform keyboard was rendered from, null for other keyboards
+    private record Rendered(InlineKeyboardMarkup markup, Platforms platforms, long translations) {
+    }
+
+    /**
+     * Rows of fixed buttons, optionally preceded by one button per platform whose callback is
+     * {@code platformCallbackPrefix} followed by the platform name. Compared by identity, so declare
+     * layouts as constants.
+     */
+    public static final class Layout {
+        private final List<List<Button>> rows;
+        private final String platformCallbackPrefix;
+        private final Button uzsPlatform;
+        private final Button rubPlatform;
+
+        private Layout(List<List<Button>> rows, String platformCallbackPrefix, Button uzsPlatform, Button rubPlatform) {
+            this.rows = rows;
+            this.platformCallbackPrefix = platformCallbackPrefix;
+            this.uzsPlatform = uzsPlatform;
+            this.rubPlatform = rubPlatform;
+        }
+
+        @SafeVarargs
+        public static Layout of(List<Button>... rows) {
+            return new Layout(List.of(rows), null, null, null);
+        }
+
+        @SafeVarargs
+        public static Layout platforms(String callbackPrefix, Button uzsLabel, Button rubLabel, List<Button>... rows) {
+            return new Layout(List.of(rows), callbackPrefix, uzsLabel, rubLabel);
+        }
+
+        boolean dependsOnPlatforms() {
+            return platformCallbackPrefix != null;
+        }
+    }
+
+    public InlineKeyboardMarkup get(Long chatId, Layout layout) {
+        Language language = languageSessionService.getLanguage(chatId);
+        Platforms current = layout.dependsOnPlatforms() ? platforms() : null;
+        Map<Layout, Rendered> byLayout = keyboards.get(language);
+        long translations = translationCatalog.version();
+        Rendered rendered = byLayout.get(layout);
+        if (rendered == null || rendered.platforms() != current || rendered.translations() != translations) {
+            rendered = new Rendered(render(language, layout, current), current, translations);
+            byLayout.put(layout, rendered);
+        }
+        return rendered.markup();
+    }
+
+    /**
+     * The buttons of a single row rendered for the chat's language, for keyboards that also carry
+     * per-user buttons and so can't be cached whole.
+     */
+    public List<InlineKeyboardButton> row(Long chatId, Layout layout) {
+        return get(chatId, layout).getKeyboard().get(0);
+    }
+
+    public boolean hasPlatforms() {
+        Platforms current = platforms();
+        return !current.uzs().isEmpty() || !current.rub().isEmpty();
+    }
+
+    private InlineKeyboardMarkup render(Language language, Layout layout, Platforms current) {
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        if (current != null) {
+            rows.addAll(platformRows(language, layout, current));
+        }
+        for (List<Button> row : layout.rows) {
+            rows.add(row.stream().map(button -> button(label(language, button), button.callback())).toList());
+        }
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(List.copyOf(rows));
+        return markup;
+    }
+
+    // Keeps the two-column layout the platform keyboards always had: UZS on the left, RUB on the right,
+    // and a row without a RUB platform takes the next UZS one instead
+    private List<List<InlineKeyboardButton>> platformRows(Language language, Layout layout, Platforms current) {
+        String uzsFormat = label(language, layout.uzsPlatform);
+        String rubFormat = label(language, layout.rubPlatform);
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        int maxRows = Math.max(current.uzs().size(), current.rub().size());
+        for (int i = 0; i < maxRows; i++) {
+            List<InlineKeyboardButton> row = new ArrayList<>();
+            if (i < current.uzs().size()) {
+                row.add(platformButton(uzsFormat, layout.platformCallbackPrefix, current.uzs().get(i)));
+            }
+            if (i < current.rub().size()) {
+                row.add(platformButton(rubFormat, layout.platformCallbackPrefix, current.rub().get(i)));
+            } else {
+                i++;
+                if (i < current.uzs().size()) {
+                    row.add(platformButton(uzsFormat, layout.platformCallbackPrefix, current.uzs().get(i)));
+                }
+            }
+            if (!row.isEmpty()) {
+                rows.add(List.copyOf(row));
+            }
+        }
+        return rows;
+    }
+
+    private Platforms platforms() {
+        long version = platformRegistry.version();
+        Platforms current = platforms.get();
+        if (current == null || current.version() != version) {
+            current = new Platforms(version, platformNames(Currency.UZS), platformNames(Currency.RUB));
+            platforms.set(current);
+        }
+        return current;
+    }
+
+    private List<String> platformNames(Currency currency) {
+        return platformRegistry.findByCurrency(currency).stream()
+                .map(Platform::getName)
+                .filter(name -> name != null && !name.isEmpty())
+                .toList();
+    }
+
+    private String label(Language language, Button button) {
+        if (!button.translated()) {
+            return button.label();
+        }
+        return translationCatalog.text(language, button.label());
+    }
+
+    private static InlineKeyboardButton platformButton(String format, String callbackPrefix, String name) {
+        return button(String.format(format, name), callbackPrefix + name);
+    }
+
+    private static InlineKeyboardButton button(String text, String callback) {
+        InlineKeyboardButton button = new InlineKeyboardButton();
+        button.setText(text);
+        button.setCallbackData(callback);
+        return button;
+    }
+}
@@ -1,13 +1,10 @@
 package com.example.shade.service;
 
 import com.example.shade.model.Language;
-import com.example.shade.model.UserSession;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.context.MessageSource;
 import org.springframework.stereotype.Component;
 
-import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
@@ -24,20 +21,25 @@ public class LanguageSessionService {
     private final Map<Long, Language> sessionStore = new ConcurrentHashMap<>();
 
 
-    private final MessageSource messageSource;
+    private final TranslationCatalog translationCatalog;
 
 
     public String getTranslation(Long chatId, String textCode) {
-        Language language = sessionStore.get(chatId);
-        if (language == null) {
-            return messageSource.getMessage(textCode, null, new Locale("uz"));
-        }
-        Locale locale = new Locale(language.getCode());
-        try {
-            return messageSource.getMessage(textCode, null, locale);
-        } catch (Exception e) {
-            return "Translation not found for code: " + textCode;
-        }
+        return translationCatalog.text(getLanguage(chatId), textCode);
+    }
+
+    /**
+     * The chat's translation of {@code textCode} formatted with {@code args}, as String.format would.
+     */
+    public String format(Long chatId, String textCode, Object... args) {
+        return translationCatalog.format(getLanguage(chatId), textCode, args);
+    }
+
+    /**
+     * The chat's language, or UZ when it isn't known yet.
+     */
+    public Language getLanguage(Long chatId) {
+        return sessionStore.getOrDefault(chatId, Language.UZ);
     }
 
     public void addUserLanguageSession(Long chatId, Language language) {
@@ -6,7 +6,6 @@ import com.example.shade.model.HizmatRequest;
 import com.example.shade.model.LotteryPrize;
 import com.example.shade.model.RequestStatus;
 import com.example.shade.model.UserBalance;
-import com.example.shade.repository.BlockedUserRepository;
 import com.example.shade.repository.HizmatRequestRepository;
 import com.example.shade.repository.LotteryPrizeRepository;
 import com.example.shade.repository.UserBalanceRepository;
@@ -42,7 +41,7 @@ public class LotteryService {
     private final LotteryPrizeRepository lotteryPrizeRepository;
     private final HizmatRequestRepository hizmatRequestRepository;
     private final LottoBotService lottoBotService;
-    private final BlockedUserRepository blockedUserRepository;
+    private final UserDirectoryService userDirectory;
     private final MessageSender messageSender;
     private final AdminLogBotService adminLogBotService;
     private final LanguageSessionService languageSessionService;
@@ -258,8 +257,7 @@ public class LotteryService {
                             .build());
             balance.setBalance(balance.getBalance().add(awardAmount));
             userBalanceRepository.save(balance);
-            String messageText = String.format(
-                    languageSessionService.getTranslation(chatId, "lottery.message.award_notification"),
+            String messageText = languageSessionService.format(chatId, "lottery.message.award_notification",
                     amount, balance.getBalance().longValue(),
                     LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
             );
@@ -269,7 +267,7 @@ public class LotteryService {
             message.setText(messageText);
             message.setReplyMarkup(backButtonKeyboard(chatId));
             messageSender.sendMessage(message, chatId);
-            String number = blockedUserRepository.findByChatId(chatId).get().getPhoneNumber();
+            String number = userDirectory.getPhoneNumber(chatId);
 
             adminLogBotService.sendToAdmins("#Кунлик бонусда голиб болганлар\n\n" +
                     "Kunlik bonus: " + amount + " \n" +
@@ -38,8 +38,7 @@ public class LottoBotService {
                 : userId.toString();
         String date = LocalDateTime.now(ZoneId.of("GMT+5"))
                 .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        String logMessage = String.format(
-                languageSessionService.getTranslation(userId, "lotto.message.win_log"),
+        String logMessage = languageSessionService.format(userId, "lotto.message.win_log",
                 numberOfTickets, amount, maskedUserId, date, getRandomCongratulations(userId)
         );
 
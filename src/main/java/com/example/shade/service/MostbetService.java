@@ -1,18 +1,13 @@
 package com.example.shade.service;
 
-import com.example.shade.dto.BalanceLimit;
 import com.example.shade.model.*;
-import com.example.shade.repository.ExchangeRateRepository;
-import com.example.shade.repository.PlatformRepository;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.http.*;
-import org.springframework.web.client.RestTemplate;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.codec.binary.Hex;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -31,7 +26,7 @@ public class MostbetService {
     private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
     private static final DateTimeFormatter FMT = DateTimeFormatter.ofPattern(DATE_FORMAT);
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final OutboundHttpClients httpClients;
     private final ObjectMapper mapper = new ObjectMapper();
 
     // Credentials and constants from your code
@@ -41,8 +36,7 @@ public class MostbetService {
 //    private final String secret = "8c23c4aa-c228-448b-a86d-c04077c39603";
     private final String project = "MBC";
 
-    private final PlatformRepository  platformRepository;;
-    private final ExchangeRateRepository exchangeRateRepository;;
+    private final ExchangeRateService exchangeRateService;
     private String now() {
         return LocalDateTime.now(ZoneOffset.UTC).format(FMT);
     }
@@ -71,7 +65,7 @@ public class MostbetService {
         // Note: The body for GET requests is an empty string, which is correct.
         HttpEntity<?> req = new HttpEntity<>(headers(apiKey,secret,path, ""));
         String url = FULL_BASE_URL + "/" + cashpointId + "/balance";
-        ResponseEntity<BalanceResponse> resp = restTemplate.exchange(url, HttpMethod.GET, req, BalanceResponse.class);
+        ResponseEntity<BalanceResponse> resp = httpClients.mostbet().exchange(url, HttpMethod.GET, req, BalanceResponse.class);
         return resp.getBody();
     }
 
@@ -85,7 +79,7 @@ public class MostbetService {
         h.set("X-Project", project);
         HttpEntity<String> req = new HttpEntity<>(json, h);
         String url = FULL_BASE_URL + "/" + cashpointId + "/player/deposit";
-        ResponseEntity<TransactionResponse> resp = restTemplate.exchange(url, HttpMethod.POST, req, TransactionResponse.class);
+        ResponseEntity<TransactionResponse> resp = httpClients.mostbet().exchange(url, HttpMethod.POST, req, TransactionResponse.class);
         return resp.getBody();
     }
 
@@ -100,7 +94,7 @@ public class MostbetService {
         h.set("X-Project", project);
         HttpEntity<String> req = new HttpEntity<>(json, h);
         String url = FULL_BASE_URL + "/" + cashpointId + "/player/cashout/confirmation";
-        ResponseEntity<TransactionResponse> resp = restTemplate.exchange(url, HttpMethod.POST, req, TransactionResponse.class);
+        ResponseEntity<TransactionResponse> resp = httpClients.mostbet().exchange(url, HttpMethod.POST, req, TransactionResponse.class);
         return resp.getBody();
     }
 
@@ -136,32 +130,21 @@ public class MostbetService {
         String path = API_PATH_PREFIX + "/" + cashpointId + "/player/cashout/list/page?" + qs;
         HttpEntity<?> req = new HttpEntity<>(headers(apiKey, secret, path, ""));
         String url = FULL_BASE_URL + "/" + cashpointId + "/player/cashout/list/page?" + qs;
-        ResponseEntity<CashoutListResponse> resp = restTemplate.exchange(url, HttpMethod.GET, req, CashoutListResponse.class);
+        ResponseEntity<CashoutListResponse> resp = httpClients.mostbet().exchange(url, HttpMethod.GET, req, CashoutListResponse.class);
         return resp.getBody();
     }
 
-    public BalanceLimit transferToPlatform(HizmatRequest request) throws Exception {
-        String platformName = request.getPlatform();
-        Platform platform = platformRepository.findByName(platformName)
-                .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
-        String apiKey = platform.getApiKey();
-        String secret = platform.getSecret();
-        String cashpointId = platform.getWorkplaceId();
-        String userId = request.getPlatformUserId();
+    /**
+     * Deposits the request's amount to the player and returns it in the platform's currency; the
+     * cashpoint balance after it comes from {@link CashdeskBalanceTracker}.
+     */
+    // The request's amount in the platform's currency
+    public long depositAmount(HizmatRequest request) {
         long amount = request.getUniqueAmount();
-
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
         if (request.getCurrency().equals(Currency.RUB)) {
-            amount = BigDecimal.valueOf(request.getUniqueAmount())
-                    .multiply(latest.getUzsToRub())
-                    .longValue() / 1000;
+            amount = exchangeRateService.current().uzsToRub(request.getUniqueAmount());
         }
-
-        deposit(  apiKey, secret,cashpointId, 1, userId, amount, platform.getCurrency().toString());
-        BalanceResponse balance = getBalance( apiKey, secret,cashpointId);
-
-        return new BalanceLimit(null,new BigDecimal(balance.balance));
+        return amount;
     }
 
     public record CashoutListResponse(List<CashoutItem> items, int totalCount) {}
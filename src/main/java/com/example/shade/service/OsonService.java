@@ -7,34 +7,116 @@ import com.example.shade.repository.OsonConfigRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 public class OsonService {
     private static final Logger logger = LoggerFactory.getLogger(OsonService.class);
-    private final RestTemplate restTemplate;
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private final OutboundHttpClients httpClients;
     private final OsonConfigRepository osonConfigRepository;
-    private static final DateTimeFormatter OSON_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
-    private String authToken;
+    static final DateTimeFormatter OSON_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
+
+    // Tokens and card ids are cached per OsonConfig id; logins for one config are serialised on its own lock
+    private final Map<Long, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final Map<Long, Object> loginLocks = new ConcurrentHashMap<>();
+    private final Map<String, Long> cardIds = new ConcurrentHashMap<>();
+    private final Map<Long, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    @Value("${oson.token.ttl-minutes:30}")
+    private long tokenTtlMinutes;
+
+    @Value("${oson.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${oson.retry.base-delay-ms:300}")
+    private long baseDelayMs;
+
+    @Value("${oson.retry.max-delay-ms:3000}")
+    private long maxDelayMs;
+
+    @Value("${oson.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${oson.circuit.open-seconds:60}")
+    private long openSeconds;
+
+    private record CachedToken(String token, Instant expiresAt) {
+        boolean isValid() {
+            return Instant.now().isBefore(expiresAt);
+        }
+    }
+
+    /**
+     * Thrown for a failed attempt that is worth repeating: a rejected token, a non-zero errno
+     * or a transport error. Anything else propagates to the caller straight away.
+     */
+    private static class RetryableOsonException extends RuntimeException {
+        RetryableOsonException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Opens after {@code failureThreshold} consecutive failed attempts and rejects calls until
+     * {@code openSeconds} have passed. After that a single call is let through as a probe while the
+     * rest are still rejected; its success closes the circuit and its failure opens it again.
+     */
+    private static class CircuitBreaker {
+        private int consecutiveFailures;
+        private Instant openUntil = Instant.MIN;
+        private boolean probing;
+
+        synchronized boolean allowsCall() {
+            if (Instant.now().isBefore(openUntil) || probing) {
+                return false;
+            }
+            if (!openUntil.equals(Instant.MIN)) {
+                probing = true;
+            }
+            return true;
+        }
+
+        synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            openUntil = Instant.MIN;
+            probing = false;
+        }
+
+        synchronized boolean recordFailure(int threshold, Duration openFor) {
+            consecutiveFailures++;
+            if (probing || consecutiveFailures >= threshold) {
+                openUntil = Instant.now().plus(openFor);
+                consecutiveFailures = 0;
+                probing = false;
+                return true;
+            }
+            return false;
+        }
+    }
 
     private OsonConfig getConfig() {
         return osonConfigRepository.findByPrimaryConfigTrue()
                 .orElseThrow(() -> new IllegalStateException("Oson configuration not found"));
     }
 
-    private synchronized String login() {
-        OsonConfig config = getConfig();
+    private String login(OsonConfig config) {
         String url = config.getApiUrl() + "/api/user/login";
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -56,68 +138,184 @@ public class OsonService {
         HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(body, headers);
 
         try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.POST, entity, Map.class);
+            ResponseEntity<Map> response = httpClients.oson().exchange(url, HttpMethod.POST, entity, Map.class);
             Map<String, Object> responseBody = response.getBody();
             if (response.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
-                authToken = (String) responseBody.get("token");
-                logger.info("Oson login successful, token: {}", authToken);
-                return authToken;
+                String token = (String) responseBody.get("token");
+                logger.info("Oson login successful for config {}", config.getId());
+                return token;
             } else {
                 logger.error("Oson login failed: {}", responseBody != null ? responseBody.get("errstr") : "No response body");
-                throw new RuntimeException("Oson login failed: " + (responseBody != null ? responseBody.get("errstr") : "Unknown error"));
+                throw new RetryableOsonException("Oson login failed: " + (responseBody != null ? responseBody.get("errstr") : "Unknown error"));
             }
         } catch (HttpClientErrorException e) {
             logger.error("Oson login HTTP error: {}", e.getMessage());
             throw new RuntimeException("Oson login failed: HTTP " + e.getStatusCode());
+        } catch (RetryableOsonException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Unexpected error during Oson login: {}", e.getMessage());
-            throw new RuntimeException("Oson login failed: " + e.getMessage());
+            throw new RetryableOsonException("Oson login failed: " + e.getMessage());
         }
     }
 
-    private String getAuthToken() {
-        return login();
+    private String getAuthToken(OsonConfig config) {
+        CachedToken cached = tokens.get(config.getId());
+        if (cached != null && cached.isValid()) {
+            return cached.token();
+        }
+        synchronized (loginLocks.computeIfAbsent(config.getId(), id -> new Object())) {
+            cached = tokens.get(config.getId());
+            if (cached != null && cached.isValid()) {
+                return cached.token();
+            }
+            String token = login(config);
+            tokens.put(config.getId(), new CachedToken(token, Instant.now().plus(Duration.ofMinutes(tokenTtlMinutes))));
+            return token;
+        }
     }
 
-    private Long getCardIdByNumber(String cardNumber) {
-        OsonConfig config = getConfig();
-        String url = config.getApiUrl() + "/api/user/card_v2";
+    /**
+     * Drops the cached token only if it is still the one that was rejected, so a burst of 401s
+     * on the same stale token results in a single re-login.
+     */
+    private void invalidateToken(OsonConfig config, String rejectedToken) {
+        tokens.computeIfPresent(config.getId(), (id, cached) -> cached.token().equals(rejectedToken) ? null : cached);
+    }
+
+    /**
+     * Runs {@code call} with a fresh token, retrying retryable failures with exponential backoff and
+     * jitter. Gives up with an {@link IllegalStateException} once attempts are exhausted or the
+     * config's circuit is open, which callers treat as "Oson unavailable".
+     */
+    private <T> T callWithRetry(OsonConfig config, String operation, Function<String, T> call) {
+        CircuitBreaker breaker = circuitBreakers.computeIfAbsent(config.getId(), id -> new CircuitBreaker());
+        RuntimeException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (!breaker.allowsCall()) {
+                throw new IllegalStateException("Oson " + operation + " skipped: circuit open for config " + config.getId());
+            }
+            String token = null;
+            try {
+                token = getAuthToken(config);
+                T result = call.apply(token);
+                breaker.recordSuccess();
+                return result;
+            } catch (RetryableOsonException e) {
+                lastError = e;
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode().value() != 401) {
+                    // Oson answered, only this request was rejected
+                    breaker.recordSuccess();
+                    throw new RuntimeException("Oson " + operation + " failed: HTTP " + e.getStatusCode());
+                }
+                lastError = e;
+            } catch (RuntimeException e) {
+                // Transport errors and 5xx responses
+                lastError = e;
+            }
+            if (token != null) {
+                invalidateToken(config, token);
+            }
+            logger.warn("Oson {} attempt {}/{} failed for config {}: {}", operation, attempt, maxAttempts, config.getId(), lastError.getMessage());
+            if (breaker.recordFailure(failureThreshold, Duration.ofSeconds(openSeconds))) {
+                logger.error("Oson circuit opened for config {} for {}s", config.getId(), openSeconds);
+            }
+            if (attempt < maxAttempts) {
+                sleepBeforeRetry(attempt);
+            }
+        }
+        throw new IllegalStateException("Oson " + operation + " failed after " + maxAttempts + " attempts: "
+                + (lastError != null ? lastError.getMessage() : "unknown error"));
+    }
+
+    private void sleepBeforeRetry(int attempt) {
+        long backoff = Math.min(maxDelayMs, baseDelayMs << (attempt - 1));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry Oson call");
+        }
+    }
+
+    private HttpHeaders authHeaders(String token) {
         HttpHeaders headers = new HttpHeaders();
         headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-        headers.set("token", getAuthToken());
+        headers.set("token", token);
         headers.set("User-Agent", "Oson/11.4.9 (uz.oson; build:2; iOS 18.5.0) Alamofire/4.9.1");
         headers.set("Accept-Language", "en-UZ;q=1.0, ru-UZ;q=0.9");
         headers.set("Accept-Encoding", "gzip;q=1.0, compress;q=0.5");
         headers.set("Connection", "keep-alive");
+        return headers;
+    }
 
-        HttpEntity<Void> entity = new HttpEntity<>(headers);
+    private List<Map<String, Object>> getArray(OsonConfig config, String url, String token) {
+        ResponseEntity<Map> response = httpClients.oson().exchange(url, HttpMethod.GET, new HttpEntity<>(authHeaders(token)), Map.class);
+        Map<String, Object> responseBody = response.getBody();
+        if (response.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
+            return (List<Map<String, Object>>) responseBody.get("array");
+        }
+        throw new RetryableOsonException("errno " + (responseBody != null ? responseBody.get("errno") + " " + responseBody.get("errstr") : "no response body"));
+    }
 
-        try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-            if (response.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
-                List<Map<String, Object>> cards = (List<Map<String, Object>>) responseBody.get("array");
-                for (Map<String, Object> card : cards) {
-                    String number = (String) card.get("number");
-                    if (number != null && number.endsWith(cardNumber.substring(cardNumber.length() - 4))) {
-                        return Long.valueOf(String.valueOf(card.get("id")));
-                    }
+    private Long getCardIdByNumber(OsonConfig config, String cardNumber) {
+        String key = config.getId() + ":" + cardNumber;
+        Long cardId = cardIds.get(key);
+        if (cardId == null) {
+            cardId = fetchCardIdByNumber(config, cardNumber);
+            if (cardId != null) {
+                cardIds.put(key, cardId);
+            }
+        }
+        return cardId;
+    }
+
+    private Long fetchCardIdByNumber(OsonConfig config, String cardNumber) {
+        String url = config.getApiUrl() + "/api/user/card_v2";
+        List<Map<String, Object>> cards = callWithRetry(config, "card lookup", token -> getArray(config, url, token));
+        for (Map<String, Object> card : cards) {
+            String number = (String) card.get("number");
+            if (number != null && number.endsWith(cardNumber.substring(cardNumber.length() - 4))) {
+                return Long.valueOf(String.valueOf(card.get("id")));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Card history entries with an id greater than {@code lastSeenId}, newest first. Without a cursor only
+     * the first page is read; with one, pages are followed until the cursor or {@code maxPages} is reached.
+     */
+    public List<Map<String, Object>> getCardHistorySince(String adminCardNumber, Long lastSeenId, int maxPages) {
+        OsonConfig config = getConfig();
+        Long cardId = getCardIdByNumber(config, adminCardNumber);
+        if (cardId == null) {
+            throw new IllegalStateException("Admin card not found in Oson: ****" + adminCardNumber.substring(adminCardNumber.length() - 4));
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int page = 0; page < maxPages; page++) {
+            String url = String.format("%s/api/user/card_history?card_id=%d&count=%d&manufacturer=1&offset=%d&version=2",
+                    config.getApiUrl(), cardId, HISTORY_PAGE_SIZE, page * HISTORY_PAGE_SIZE);
+            List<Map<String, Object>> batch;
+            try {
+                batch = callWithRetry(config, "card history", token -> getArray(config, url, token));
+            } catch (RuntimeException e) {
+                cardIds.remove(config.getId() + ":" + adminCardNumber);
+                throw e;
+            }
+            for (Map<String, Object> transaction : batch) {
+                if (lastSeenId != null && Long.parseLong(String.valueOf(transaction.get("id"))) <= lastSeenId) {
+                    return result;
                 }
-                return null;
-            } else {
-                authToken = null;
-                return getCardIdByNumber(cardNumber);
+                result.add(transaction);
             }
-        } catch (HttpClientErrorException e) {
-            if (e.getStatusCode().value() == 401) {
-                authToken = null;
-                return getCardIdByNumber(cardNumber);
+            if (lastSeenId == null || batch.size() < HISTORY_PAGE_SIZE) {
+                break;
             }
-            throw new RuntimeException("Failed to fetch cards: HTTP " + e.getStatusCode()+ e.getMessage());
-        } catch (Exception e) {
-            authToken = null;
-            return getCardIdByNumber(cardNumber);
         }
+        return result;
     }
 
     public Map<String, Object> verifyPaymentByAmountAndCard(Long chatId, String platform, String platformUserId, long amount, String userCardNumber, String adminCardId, long uniqueAmount) {
@@ -126,70 +324,47 @@ public class OsonService {
         response.put("error", "Payment verification failed");
         uniqueAmount = uniqueAmount * 100; // Adjust for Oson API (assuming amount in tiyin)
 
-        Long cardId = getCardIdByNumber(adminCardId);
+        OsonConfig config = getConfig();
+        Long cardId = getCardIdByNumber(config, adminCardId);
         if (cardId == null) {
             response.put("error", "Admin card not found");
             return response;
         }
 
-        OsonConfig config = getConfig();
         String url = String.format("%s/api/user/card_history?card_id=%d&count=20&manufacturer=1&offset=0&version=2", config.getApiUrl(), cardId);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-        headers.set("token", getAuthToken());
-        headers.set("User-Agent", "Oson/11.4.9 (uz.oson; build:2; iOS 18.5.0) Alamofire/4.9.1");
-        headers.set("Accept-Language", "en-UZ;q=1.0, ru-UZ;q=0.9");
-        headers.set("Accept-Encoding", "gzip;q=1.0, compress;q=0.5");
-        headers.set("Connection", "keep-alive");
+        List<Map<String, Object>> transactions;
+        try {
+            transactions = callWithRetry(config, "card history", token -> getArray(config, url, token));
+        } catch (RuntimeException e) {
+            // The cached card id may be stale; look it up again on the next check
+            cardIds.remove(config.getId() + ":" + adminCardId);
+            throw e;
+        }
 
-        HttpEntity<Void> entity = new HttpEntity<>(headers);
+        OffsetDateTime now = OffsetDateTime.now();
+        for (Map<String, Object> transaction : transactions) {
+            long txAmount = Long.parseLong(String.valueOf(transaction.get("amount")));
+            String ts = (String) transaction.get("ts");
+            int status = Integer.parseInt(String.valueOf(transaction.get("status")));
 
-        try {
-            ResponseEntity<Map> apiResponse = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-            Map<String, Object> responseBody = apiResponse.getBody();
-            if (apiResponse.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
-                List<Map<String, Object>> transactions = (List<Map<String, Object>>) responseBody.get("array");
-                String userCardLastDigits = userCardNumber.substring(userCardNumber.length() - 4);
-                OffsetDateTime now = OffsetDateTime.now();
-
-                for (Map<String, Object> transaction : transactions) {
-                    long txAmount = Long.parseLong(String.valueOf(transaction.get("amount")));
-                    String ts = (String) transaction.get("ts");
-                    int status = Integer.parseInt(String.valueOf(transaction.get("status")));
-
-                    if (txAmount == uniqueAmount && status == 1) {
-                        try {
-                            OffsetDateTime txTime = OffsetDateTime.parse(ts, OSON_TIMESTAMP_FORMATTER);
-                            if (txTime.isAfter(now.minusMinutes(15))) {
-                                response.put("status", "SUCCESS");
-                                response.put("transactionId", String.valueOf(transaction.get("id")));
-                                response.put("billId", transaction.get("refnum"));
-                                response.put("payUrl", "");
-                                return response;
-                            }
-                        } catch (DateTimeParseException e) {
-                            logger.error("Failed to parse timestamp '{}': {}", ts, e.getMessage());
-                            response.put("error", "Invalid timestamp format in transaction: " + ts);
-                            return response;
-                        }
+            if (txAmount == uniqueAmount && status == 1) {
+                try {
+                    OffsetDateTime txTime = OffsetDateTime.parse(ts, OSON_TIMESTAMP_FORMATTER);
+                    if (txTime.isAfter(now.minusMinutes(15))) {
+                        response.put("status", "SUCCESS");
+                        response.put("transactionId", String.valueOf(transaction.get("id")));
+                        response.put("billId", transaction.get("refnum"));
+                        response.put("payUrl", "");
+                        return response;
                     }
+                } catch (DateTimeParseException e) {
+                    logger.error("Failed to parse timestamp '{}': {}", ts, e.getMessage());
+                    response.put("error", "Invalid timestamp format in transaction: " + ts);
+                    return response;
                 }
-                response.put("error", "No matching payment found");
-            } else {
-                authToken = null;
-                return verifyPaymentByAmountAndCard(chatId, platform, platformUserId, amount, userCardNumber, adminCardId, uniqueAmount);
             }
-        } catch (HttpClientErrorException e) {
-            if (e.getStatusCode().value() == 401) {
-                authToken = null;
-                return verifyPaymentByAmountAndCard(chatId, platform, platformUserId, amount, userCardNumber, adminCardId, uniqueAmount);
-            }
-            logger.error("HTTP error fetching card history: {}", e.getMessage());
-            response.put("error", "HTTP error: " + e.getStatusCode());
-        } catch (Exception e) {
-            authToken = null;
-            return verifyPaymentByAmountAndCard(chatId, platform, platformUserId, amount, userCardNumber, adminCardId, uniqueAmount);
         }
+        response.put("error", "No matching payment found");
         return response;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,280 @@
+package com.example.shade.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The RestTemplates every outbound integration goes through, one per provider. Each sits on its own
+ * JDK HttpClient, so connections to the provider are kept alive and reused instead of paying a TLS
+ * handshake per call, and has explicit timeouts from http.&lt;provider&gt;.connect-timeout-ms and
+ * read-timeout-ms, so a hung provider can't hold a thread forever. At most http.&lt;provider&gt;.max-connections
+ * requests run against one host at a time; a caller waits up to the connect timeout for a slot.
+ * Latency of every request is recorded in a histogram per provider.
+ */
+@Component
+public class OutboundHttpClients {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundHttpClients.class);
+    // Upper bounds of the latency buckets in milliseconds; the last bucket takes everything slower
+    private static final long[] BUCKETS_MS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final Map<Provider, Client> clients = new EnumMap<>(Provider.class);
+
+    public enum Provider {
+        CASHDESK("cashdesk", 3000, 15000, 20),
+        MOSTBET("mostbet", 3000, 15000, 20),
+        OSON("oson", 3000, 20000, 10),
+        HUMO("humo", 3000, 30000, 10);
+
+        private final String key;
+        private final long connectTimeoutMs;
+        private final long readTimeoutMs;
+        private final int maxConnections;
+
+        Provider(String key, long connectTimeoutMs, long readTimeoutMs, int maxConnections) {
+            this.key = key;
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    /**
+     * Thrown when no connection slot to the host freed up in time; the request was never sent.
+     */
+    public static class ConnectionsBusyException extends IOException {
+        public ConnectionsBusyException(String message) {
+            super(message);
+        }
+    }
+
+    public record Stats(long requests, long errors, long rejected, int inFlight, long averageMillis,
+                        long p50Millis, long p95Millis, long p99Millis, Map<String, Long> latencyBuckets) {
+    }
+
+    public OutboundHttpClients(Environment environment) {
+        for (Provider provider : Provider.values()) {
+            String prefix = "http." + provider.key + ".";
+            long connectTimeoutMs = environment.getProperty(prefix + "connect-timeout-ms", Long.class, provider.connectTimeoutMs);
+            long readTimeoutMs = environment.getProperty(prefix + "read-timeout-ms", Long.class, provider.readTimeoutMs);
+            int maxConnections = environment.getProperty(prefix + "max-connections", Integer.class, provider.maxConnections);
+            clients.put(provider, new Client(provider, connectTimeoutMs, readTimeoutMs, maxConnections));
+        }
+    }
+
+    public RestTemplate cashdesk() {
+        return get(Provider.CASHDESK);
+    }
+
+    public RestTemplate mostbet() {
+        return get(Provider.MOSTBET);
+    }
+
+    public RestTemplate oson() {
+        return get(Provider.OSON);
+    }
+
+    public RestTemplate humo() {
+        return get(Provider.HUMO);
+    }
+
+    public RestTemplate get(Provider provider) {
+        return clients.get(provider).restTemplate;
+    }
+
+    /**
+     * Longest a request to the provider may wait for its response once sent.
+     */
+    public long getReadTimeoutMs(Provider provider) {
+        return clients.get(provider).readTimeoutMs;
+    }
+
+    public Map<Provider, Stats> getStats() {
+        Map<Provider, Stats> stats = new EnumMap<>(Provider.class);
+        clients.forEach((provider, client) -> stats.put(provider, client.stats()));
+        return stats;
+    }
+
+    private static final class Client implements ClientHttpRequestInterceptor {
+        private final Provider provider;
+        private final long connectTimeoutMs;
+        private final long readTimeoutMs;
+        private final int maxConnections;
+        private final RestTemplate restTemplate;
+        private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS_MS.length + 1];
+
+        Client(Provider provider, long connectTimeoutMs, long readTimeoutMs, int maxConnections) {
+            this.provider = provider;
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+            this.maxConnections = maxConnections;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build();
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+            this.restTemplate = new RestTemplate(requestFactory);
+            this.restTemplate.getInterceptors().add(this);
+        }
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+                throws IOException {
+            String host = request.getURI().getHost();
+            Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(maxConnections, true));
+            try {
+                if (!permits.tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    rejected.increment();
+                    throw new ConnectionsBusyException("All " + maxConnections + " connections to " + host + " are busy");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+            }
+            Call call = new Call(permits, System.nanoTime());
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                if (response.getStatusCode().is5xxServerError()) {
+                    errors.increment();
+                }
+                return new TrackedResponse(response, call);
+            } catch (IOException | RuntimeException e) {
+                errors.increment();
+                logger.warn("{} request {} {} failed: {}", provider, request.getMethod(), host, e.toString());
+                call.finish();
+                throw e;
+            }
+        }
+
+        Stats stats() {
+            long count = requests.sum();
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                histogram.put(i < BUCKETS_MS.length ? "<=" + BUCKETS_MS[i] + "ms" : ">" + BUCKETS_MS[BUCKETS_MS.length - 1] + "ms", counts[i]);
+            }
+            return new Stats(count, errors.sum(), rejected.sum(), inFlight.get(),
+                    count == 0 ? 0 : totalMillis.sum() / count,
+                    percentile(counts, 0.50), percentile(counts, 0.95), percentile(counts, 0.99), histogram);
+        }
+
+        // The upper bound of the bucket the percentile falls into, -1 when it is past the last bound
+        private static long percentile(long[] counts, double quantile) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long seen = 0;
+            for (int i = 0; i < BUCKETS_MS.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.ceil(total * quantile)) {
+                    return BUCKETS_MS[i];
+                }
+            }
+            return -1;
+        }
+
+        private void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            requests.increment();
+            totalMillis.add(millis);
+            int bucket = 0;
+            while (bucket < BUCKETS_MS.length && millis > BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+
+        // The host slot is held until the response body has been read and closed
+        private final class Call {
+            private final Semaphore permits;
+            private final long startNanos;
+            private final AtomicBoolean finished = new AtomicBoolean();
+
+            Call(Semaphore permits, long startNanos) {
+                this.permits = permits;
+                this.startNanos = startNanos;
+                inFlight.incrementAndGet();
+            }
+
+            void finish() {
+                if (finished.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                    permits.release();
+                    record(System.nanoTime() - startNanos);
+                }
+            }
+        }
+
+        private record TrackedResponse(ClientHttpResponse delegate, Call call) implements ClientHttpResponse {
+            @Override
+            public HttpStatusCode getStatusCode() throws IOException {
+                return delegate.getStatusCode();
+            }
+
+            @Override
+            public String getStatusText() throws IOException {
+                return delegate.getStatusText();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return delegate.getHeaders();
+            }
+
+            @Override
+            public InputStream getBody() throws IOException {
+                return delegate.getBody();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    delegate.close();
+                } finally {
+                    call.finish();
+                }
+            }
+        }
+    }
+}
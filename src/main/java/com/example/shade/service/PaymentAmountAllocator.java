@@ -0,0 +1,151 @@
+package com.example.shade.service;
+
+import com.example.shade.model.AdminCard;
+import com.example.shade.model.AmountReservation;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.repository.AdminCardRepository;
+import com.example.shade.repository.AmountReservationRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hands out the unique amount a top-up request waits for. A (card, amount) slot belongs to at most one
+ * open request: claims are made in memory first and then persisted to amount_reservation, whose unique
+ * constraint is the final word and lets the map be rebuilt after a restart. When every slot for an
+ * amount is taken on one card the request moves on to the next least recently used card.
+ */
+@Service
+@RequiredArgsConstructor
+public class PaymentAmountAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentAmountAllocator.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+    private static final int SLOTS_PER_AMOUNT = 100;
+    private static final Duration ORPHAN_GRACE = Duration.ofMinutes(5);
+    private static final List<RequestStatus> ACTIVE_STATUSES =
+            List.of(RequestStatus.PENDING_PAYMENT, RequestStatus.PENDING_SCREENSHOT);
+
+    private final AmountReservationRepository reservationRepository;
+    private final AdminCardRepository adminCardRepository;
+
+    private final Map<Long, Set<Long>> reservedAmountsByCard = new ConcurrentHashMap<>();
+    private final Map<Long, AmountReservation> reservationsByRequest = new ConcurrentHashMap<>();
+
+    public record Allocation(AdminCard adminCard, long uniqueAmount) {
+    }
+
+    @PostConstruct
+    public void loadReservations() {
+        List<AmountReservation> reservations = reservationRepository.findAll();
+        reservations.forEach(this::remember);
+        logger.info("Loaded {} amount reservations", reservations.size());
+    }
+
+    /**
+     * Reserves a free amount in [baseAmount, baseAmount + 100) for the request, replacing any slot it
+     * already holds.
+     */
+    public Allocation allocate(Long requestId, long baseAmount) {
+        release(requestId);
+        // A reservation the map doesn't know about would fail every slot on the request_id constraint
+        reservationRepository.deleteByRequestId(requestId);
+        List<AdminCard> cards = adminCardRepository.findPrimaryOrderByLastUsed();
+        if (cards.isEmpty()) {
+            throw new IllegalStateException("No admin cards available");
+        }
+        int start = ThreadLocalRandom.current().nextInt(SLOTS_PER_AMOUNT);
+        for (AdminCard card : cards) {
+            Set<Long> reserved = reservedAmountsByCard.computeIfAbsent(card.getId(), id -> ConcurrentHashMap.newKeySet());
+            for (int i = 0; i < SLOTS_PER_AMOUNT; i++) {
+                long amount = baseAmount + (start + i) % SLOTS_PER_AMOUNT;
+                if (!reserved.add(amount)) {
+                    continue;
+                }
+                try {
+                    AmountReservation reservation = reservationRepository.saveAndFlush(AmountReservation.builder()
+                            .adminCardId(card.getId())
+                            .uniqueAmount(amount)
+                            .requestId(requestId)
+                            .createdAt(LocalDateTime.now(ZONE))
+                            .build());
+                    reservationsByRequest.put(requestId, reservation);
+                    return new Allocation(card, amount);
+                } catch (DataIntegrityViolationException e) {
+                    AmountReservation holder = reservationRepository.findByAdminCardIdAndUniqueAmount(card.getId(), amount).orElse(null);
+                    if (holder == null) {
+                        reserved.remove(amount);
+                        throw new IllegalStateException("Could not reserve amount " + amount + " for request " + requestId, e);
+                    }
+                    // Held in the database but not in memory; keep it marked so it is not tried again
+                    logger.warn("Amount {} on admin card {} is already reserved in the database", amount, card.getId());
+                    remember(holder);
+                } catch (RuntimeException e) {
+                    reserved.remove(amount);
+                    throw e;
+                }
+            }
+            logger.warn("All amount slots for {} are taken on admin card {}, trying the next card", baseAmount, card.getId());
+        }
+        throw new IllegalStateException("No free payment amount slot for " + baseAmount);
+    }
+
+    public void release(Long requestId) {
+        AmountReservation reservation = reservationsByRequest.get(requestId);
+        if (reservation == null) {
+            return;
+        }
+        reservationRepository.deleteByRequestId(requestId);
+        reservationsByRequest.remove(requestId);
+        Set<Long> reserved = reservedAmountsByCard.get(reservation.getAdminCardId());
+        if (reserved != null) {
+            reserved.remove(reservation.getUniqueAmount());
+        }
+    }
+
+    /**
+     * Requests whose slot has been held for longer than {@code ttl}.
+     */
+    public List<Long> findExpiredRequestIds(Duration ttl) {
+        LocalDateTime cutoff = LocalDateTime.now(ZONE).minus(ttl);
+        return reservationsByRequest.values().stream()
+                .filter(reservation -> reservation.getCreatedAt().isBefore(cutoff))
+                .map(AmountReservation::getRequestId)
+                .toList();
+    }
+
+    // Frees slots whose request was deleted or settled without going through RequestRollupService
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void releaseOrphans() {
+        List<AmountReservation> orphans = reservationRepository.findOrphaned(
+                LocalDateTime.now(ZONE).minus(ORPHAN_GRACE), ACTIVE_STATUSES);
+        for (AmountReservation orphan : orphans) {
+            logger.info("Releasing orphaned amount {} on admin card {} held by request {}",
+                    orphan.getUniqueAmount(), orphan.getAdminCardId(), orphan.getRequestId());
+            remember(orphan);
+            release(orphan.getRequestId());
+        }
+    }
+
+    public static boolean isActive(RequestStatus status) {
+        return ACTIVE_STATUSES.contains(status);
+    }
+
+    private void remember(AmountReservation reservation) {
+        reservationsByRequest.put(reservation.getRequestId(), reservation);
+        reservedAmountsByCard.computeIfAbsent(reservation.getAdminCardId(), id -> ConcurrentHashMap.newKeySet())
+                .add(reservation.getUniqueAmount());
+    }
+}
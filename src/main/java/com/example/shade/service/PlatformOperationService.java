@@ -0,0 +1,511 @@
+package com.example.shade.service;
+
+import com.example.shade.dto.BalanceLimit;
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.Platform;
+import com.example.shade.model.PlatformOperation;
+import com.example.shade.model.PlatformOperationStatus;
+import com.example.shade.model.PlatformOperationType;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.repository.PlatformOperationRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Outbox of platform deposits and payouts. {@link #submitDeposit} and {@link #submitPayout} change the
+ * request's status and write a platform_operation row in one transaction, and a pool of
+ * platform.operations.workers carries the rows out, at most platform.operations.per-platform at a time
+ * against one platform. The idempotency key is the operation type and request id: submitting the same
+ * request again joins the existing operation, and only a definitively failed one is run again.
+ * Nobody waits for the platform: once an operation has settled a {@link Settled} event is published and
+ * the flow that submitted it picks it up from there.
+ * <p>
+ * A call that failed before it reached the platform (no connection, no free connection slot, 503) is
+ * retried with backoff up to platform.operations.max-attempts. A call whose outcome can't be known, a
+ * timeout or an operation whose runner went away, becomes UNKNOWN and admins are told to check it; it
+ * is never retried on its own.
+ * <p>
+ * A running operation is leased to the instance that claimed it for platform.operations.lease-ms, and
+ * the lease is renewed every platform.operations.heartbeat-ms while the call is in flight. Only once a
+ * lease has been expired for longer than the provider read timeout, so the call can no longer be
+ * waiting for its answer, is the operation taken for interrupted; other instances' running operations
+ * are left alone during a rolling deploy. The outcome is written only while the operation is still
+ * RUNNING under its lease, so a reclaimed operation is never settled twice.
+ */
+@Service
+public class PlatformOperationService {
+    private static final Logger logger = LoggerFactory.getLogger(PlatformOperationService.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+    private static final int DISPATCH_BATCH = 50;
+    private static final Set<PlatformOperationStatus> SETTLED = Set.of(
+            PlatformOperationStatus.SUCCEEDED, PlatformOperationStatus.FAILED, PlatformOperationStatus.UNKNOWN);
+
+    private final PlatformOperationRepository operationRepository;
+    private final RequestRollupService requestRollupService;
+    private final PlatformRegistry platformRegistry;
+    private final CashdeskClient cashdeskClient;
+    private final MostbetService mostbetService;
+    private final CashdeskBalanceTracker balanceTracker;
+    private final AdminLogBotService adminLogBotService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int perPlatform;
+    private final int maxAttempts;
+    private final long retryMs;
+    private final long leaseMs;
+    // A lease must have run out this long ago before the operation is reclaimed
+    private final long reclaimAfterMs;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ExecutorService workers;
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+    private final Map<String, Semaphore> platformPermits = new ConcurrentHashMap<>();
+    private final Map<PlatformOperationStatus, LongAdder> outcomes = new EnumMap<>(PlatformOperationStatus.class);
+    private final LongAdder retries = new LongAdder();
+
+    public record Stats(long pending, long running, long unknown, long succeeded, long failed, long retries) {
+    }
+
+    /**
+     * Published once an operation is SUCCEEDED, FAILED or UNKNOWN, on the worker that ran it.
+     */
+    public record Settled(PlatformOperation operation) {
+    }
+
+    // What one attempt came to; retry only when the platform certainly didn't see the call
+    private record Outcome(PlatformOperationStatus status, BigDecimal resultAmount, Integer httpStatus,
+                           String message, boolean retry) {
+        static Outcome succeeded(BigDecimal resultAmount) {
+            return new Outcome(PlatformOperationStatus.SUCCEEDED, resultAmount, null, null, false);
+        }
+
+        static Outcome failed(Integer httpStatus, String message) {
+            return new Outcome(PlatformOperationStatus.FAILED, null, httpStatus, message, false);
+        }
+
+        static Outcome unknown(String message) {
+            return new Outcome(PlatformOperationStatus.UNKNOWN, null, null, message, false);
+        }
+
+        static Outcome retry(String message) {
+            return new Outcome(PlatformOperationStatus.FAILED, null, null, message, true);
+        }
+    }
+
+    public PlatformOperationService(PlatformOperationRepository operationRepository,
+                                    RequestRollupService requestRollupService,
+                                    PlatformRegistry platformRegistry,
+                                    CashdeskClient cashdeskClient,
+                                    MostbetService mostbetService,
+                                    CashdeskBalanceTracker balanceTracker,
+                                    AdminLogBotService adminLogBotService,
+                                    ApplicationEventPublisher eventPublisher,
+                                    OutboundHttpClients httpClients,
+                                    @Value("${platform.operations.workers:4}") int workerCount,
+                                    @Value("${platform.operations.per-platform:2}") int perPlatform,
+                                    @Value("${platform.operations.max-attempts:3}") int maxAttempts,
+                                    @Value("${platform.operations.retry-ms:2000}") long retryMs,
+                                    @Value("${platform.operations.lease-ms:30000}") long leaseMs) {
+        this.operationRepository = operationRepository;
+        this.requestRollupService = requestRollupService;
+        this.platformRegistry = platformRegistry;
+        this.cashdeskClient = cashdeskClient;
+        this.mostbetService = mostbetService;
+        this.balanceTracker = balanceTracker;
+        this.adminLogBotService = adminLogBotService;
+        this.eventPublisher = eventPublisher;
+        this.perPlatform = perPlatform;
+        this.maxAttempts = maxAttempts;
+        this.retryMs = retryMs;
+        this.leaseMs = leaseMs;
+        this.reclaimAfterMs = Math.max(httpClients.getReadTimeoutMs(OutboundHttpClients.Provider.CASHDESK),
+                httpClients.getReadTimeoutMs(OutboundHttpClients.Provider.MOSTBET));
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        for (PlatformOperationStatus status : SETTLED) {
+            outcomes.put(status, new LongAdder());
+        }
+    }
+
+    /**
+     * Applies {@code update} to the request if it is still in {@code expected} status, as
+     * {@link RequestRollupService#transition} does, and queues a deposit of {@code amount} (in the
+     * platform's currency) to its platform user in the same transaction. {@code lng} and
+     * {@code cardNumber} are only used by cashdesk platforms. Empty if the request had left
+     * {@code expected}; nothing is queued then.
+     */
+    @Transactional
+    public Optional<PlatformOperation> submitDeposit(Long requestId, RequestStatus expected, Consumer<HizmatRequest> update,
+                                                     Platform platform, long amount, String lng, String cardNumber) {
+        return requestRollupService.transition(requestId, expected, update).map(request -> enqueue(PlatformOperation.builder()
+                .idempotencyKey(PlatformOperationType.DEPOSIT + ":" + request.getId())
+                .requestId(request.getId())
+                .type(PlatformOperationType.DEPOSIT)
+                .platform(platform.getName())
+                .platformUserId(request.getPlatformUserId())
+                .amount(amount)
+                .lng(lng)
+                .cardNumber(cardNumber)));
+    }
+
+    /**
+     * Like {@link #submitDeposit}, for a payout of the withdrawal {@code code} for {@code userId}.
+     */
+    @Transactional
+    public Optional<PlatformOperation> submitPayout(Long requestId, RequestStatus expected, Consumer<HizmatRequest> update,
+                                                    Platform platform, String userId, String code, String lng) {
+        return requestRollupService.transition(requestId, expected, update).map(request -> enqueue(PlatformOperation.builder()
+                .idempotencyKey(PlatformOperationType.PAYOUT + ":" + request.getId())
+                .requestId(request.getId())
+                .type(PlatformOperationType.PAYOUT)
+                .platform(platform.getName())
+                .platformUserId(userId)
+                .code(code)
+                .lng(lng)));
+    }
+
+    /**
+     * The cashdesk balance recorded after a successful deposit, or null when it isn't known.
+     */
+    public static BalanceLimit balanceAfter(PlatformOperation operation) {
+        if (operation.getBalanceAfter() == null && operation.getLimitAfter() == null) {
+            return null;
+        }
+        return new BalanceLimit(operation.getBalanceAfter(), operation.getLimitAfter());
+    }
+
+    /**
+     * Queues an UNKNOWN or FAILED operation again once an admin has checked it didn't go through.
+     */
+    public boolean retry(Long id) {
+        LocalDateTime now = LocalDateTime.now(ZONE);
+        boolean queued = operationRepository.updateStatus(id, PlatformOperationStatus.UNKNOWN, PlatformOperationStatus.PENDING, now) > 0
+                || operationRepository.updateStatus(id, PlatformOperationStatus.FAILED, PlatformOperationStatus.PENDING, now) > 0;
+        if (queued) {
+            dispatcher.execute(this::dispatch);
+        }
+        return queued;
+    }
+
+    public List<PlatformOperation> getUnresolved() {
+        return operationRepository.findByStatus(PlatformOperationStatus.UNKNOWN);
+    }
+
+    public Stats getStats() {
+        return new Stats(operationRepository.countByStatus(PlatformOperationStatus.PENDING),
+                operationRepository.countByStatus(PlatformOperationStatus.RUNNING),
+                operationRepository.countByStatus(PlatformOperationStatus.UNKNOWN),
+                outcomes.get(PlatformOperationStatus.SUCCEEDED).sum(), outcomes.get(PlatformOperationStatus.FAILED).sum(),
+                retries.sum());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverInterrupted() {
+        reclaimExpired();
+        dispatcher.execute(this::dispatch);
+    }
+
+    @Scheduled(fixedDelayString = "${platform.operations.heartbeat-ms:10000}", initialDelayString = "${platform.operations.heartbeat-ms:10000}")
+    public void heartbeat() {
+        LocalDateTime now = LocalDateTime.now(ZONE);
+        operationRepository.renewLeases(instanceId, leaseUntil(now));
+        reclaimExpired();
+    }
+
+    @Scheduled(fixedDelayString = "${platform.operations.poll-ms:1000}", initialDelayString = "${platform.operations.poll-ms:1000}")
+    public void poll() {
+        dispatcher.execute(this::dispatch);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        dispatcher.shutdownNow();
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    // An operation whose runner stopped renewing its lease may or may not have reached the platform
+    private void reclaimExpired() {
+        LocalDateTime now = LocalDateTime.now(ZONE);
+        LocalDateTime cutoff = now.minusNanos(TimeUnit.MILLISECONDS.toNanos(reclaimAfterMs));
+        for (PlatformOperation operation : operationRepository.findLeaseExpired(cutoff)) {
+            if (operationRepository.expire(operation.getId(), cutoff, now) > 0) {
+                operation.setStatus(PlatformOperationStatus.UNKNOWN);
+                alertUnknown(operation, "interrupted, its runner stopped");
+                publishSettled(operation);
+            }
+        }
+    }
+
+    private LocalDateTime leaseUntil(LocalDateTime now) {
+        return now.plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMs));
+    }
+
+    private PlatformOperation enqueue(PlatformOperation.PlatformOperationBuilder builder) {
+        LocalDateTime now = LocalDateTime.now(ZONE);
+        PlatformOperation candidate = builder
+                .status(PlatformOperationStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        PlatformOperation operation = operationRepository.findByIdempotencyKey(candidate.getIdempotencyKey())
+                .map(existing -> {
+                    if (existing.getStatus() != PlatformOperationStatus.FAILED) {
+                        logger.info("Platform operation {} already exists for {}, status {}",
+                                existing.getId(), existing.getIdempotencyKey(), existing.getStatus());
+                        return existing;
+                    }
+                    // A definite failure never moved money, so the request may be tried again
+                    existing.setStatus(PlatformOperationStatus.PENDING);
+                    existing.setAttempts(0);
+                    existing.setNextAttemptAt(now);
+                    existing.setAmount(candidate.getAmount());
+                    existing.setCode(candidate.getCode());
+                    existing.setLng(candidate.getLng());
+                    existing.setCardNumber(candidate.getCardNumber());
+                    existing.setHttpStatus(null);
+                    existing.setMessage(null);
+                    existing.setUpdatedAt(now);
+                    return operationRepository.save(existing);
+                })
+                .orElseGet(() -> operationRepository.save(candidate));
+        if (operation.getStatus() == PlatformOperationStatus.PENDING) {
+            afterCommit(() -> dispatcher.execute(this::dispatch));
+        }
+        return operation;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void dispatch() {
+        LocalDateTime now = LocalDateTime.now(ZONE);
+        for (PlatformOperation operation : operationRepository.findDue(now, PageRequest.of(0, DISPATCH_BATCH))) {
+            Semaphore permits = platformPermits.computeIfAbsent(operation.getPlatform(), platform -> new Semaphore(perPlatform));
+            if (!permits.tryAcquire()) {
+                continue;
+            }
+            if (operationRepository.claim(operation.getId(), instanceId, leaseUntil(now), now) == 0) {
+                permits.release();
+                continue;
+            }
+            workers.execute(() -> {
+                try {
+                    run(operation.getId());
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+    }
+
+    private void run(Long id) {
+        PlatformOperation operation = operationRepository.findById(id).orElse(null);
+        if (operation == null || operation.getStatus() != PlatformOperationStatus.RUNNING
+                || !instanceId.equals(operation.getLeaseOwner())) {
+            return;
+        }
+        Platform platform = platformRegistry.findByName(operation.getPlatform()).orElse(null);
+        PlatformOperation settled;
+        if (platform == null) {
+            settled = settle(operation, null, Outcome.failed(null, "Platform not found: " + operation.getPlatform()));
+        } else {
+            balanceTracker.begin(platform);
+            try {
+                Outcome outcome;
+                try {
+                    outcome = execute(operation, platform);
+                } catch (Exception e) {
+                    outcome = classify(e);
+                }
+                settled = settle(operation, platform, outcome);
+            } finally {
+                balanceTracker.end(platform);
+            }
+        }
+        if (settled != null) {
+            publishSettled(settled);
+        }
+    }
+
+    // Null when the operation was queued for another attempt or was reclaimed while it ran
+    private PlatformOperation settle(PlatformOperation operation, Platform platform, Outcome outcome) {
+        Long id = operation.getId();
+        LocalDateTime now = LocalDateTime.now(ZONE);
+        if (outcome.retry() && operation.getAttempts() < maxAttempts) {
+            LocalDateTime nextAttemptAt = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(retryMs << (operation.getAttempts() - 1)));
+            if (operationRepository.requeue(id, instanceId, nextAttemptAt, outcome.httpStatus(), outcome.message(), now) == 0) {
+                logger.warn("Platform operation {} was reclaimed while it ran, not retrying it", id);
+                return null;
+            }
+            retries.increment();
+            logger.warn("Platform operation {} attempt {} failed, retrying: {}", id, operation.getAttempts(), outcome.message());
+            return null;
+        }
+        operation.setStatus(outcome.status());
+        operation.setResultAmount(outcome.resultAmount());
+        operation.setHttpStatus(outcome.httpStatus());
+        operation.setMessage(outcome.message());
+        operation.setLeaseOwner(null);
+        operation.setLeaseUntil(null);
+        operation.setUpdatedAt(now);
+        if (outcome.status() == PlatformOperationStatus.SUCCEEDED && platform != null) {
+            recordBalance(operation, platform);
+        }
+        if (operationRepository.settle(id, instanceId, operation.getStatus(), operation.getResultAmount(),
+                operation.getBalanceAfter(), operation.getLimitAfter(), operation.getHttpStatus(), operation.getMessage(), now) == 0) {
+            logger.error("Platform operation {} ({} of request {}) came to {} after it was reclaimed, outcome not recorded: {}",
+                    id, operation.getType(), operation.getRequestId(), operation.getStatus(), operation.getMessage());
+            // Admins were already told it is unknown; this is what they should find on the platform
+            adminLogBotService.sendToAdmins(String.format("ℹ️ %s #%d (so‘rov %d, %s: %s) kechikib yakunlandi: %s",
+                    operation.getType(), id, operation.getRequestId(), operation.getPlatform(),
+                    operation.getPlatformUserId(), operation.getStatus()));
+            return null;
+        }
+        if (operation.getStatus() != PlatformOperationStatus.UNKNOWN) {
+            outcomes.get(operation.getStatus()).increment();
+        }
+        logger.info("Platform operation {} ({} of request {}) {} after {} attempts", id, operation.getType(),
+                operation.getRequestId(), operation.getStatus(), operation.getAttempts());
+        if (operation.getStatus() == PlatformOperationStatus.UNKNOWN) {
+            alertUnknown(operation, operation.getMessage());
+        }
+        return operation;
+    }
+
+    private void publishSettled(PlatformOperation operation) {
+        try {
+            eventPublisher.publishEvent(new Settled(operation));
+        } catch (RuntimeException e) {
+            logger.error("Handling settled platform operation {} failed", operation.getId(), e);
+        }
+    }
+
+    private Outcome execute(PlatformOperation operation, Platform platform) throws Exception {
+        boolean mostbet = "mostbet".equals(platform.getType());
+        if (operation.getType() == PlatformOperationType.DEPOSIT) {
+            if (mostbet) {
+                mostbetService.deposit(platform.getApiKey(), platform.getSecret(), platform.getWorkplaceId(), 1,
+                        operation.getPlatformUserId(), operation.getAmount(), platform.getCurrency().toString());
+                return Outcome.succeeded(null);
+            }
+            requireCredentials(platform);
+            CashdeskClient.Result result = CashdeskClient.await(cashdeskClient.deposit(platform, operation.getPlatformUserId(),
+                    operation.getAmount(), operation.getLng(), operation.getCardNumber()));
+            return result.success() ? Outcome.succeeded(null) : Outcome.failed(null, result.message());
+        }
+        if (mostbet) {
+            MostbetService.WithdrawalResult result = mostbetService.withdrawMoney(platform.getApiKey(), platform.getSecret(),
+                    platform.getWorkplaceId(), operation.getPlatformUserId(), operation.getCode());
+            if (result != null && "COMPLETED".equalsIgnoreCase(result.status())) {
+                return Outcome.succeeded(BigDecimal.valueOf(result.amount()));
+            }
+            return Outcome.failed(null, "Platform returned status: " + (result != null ? result.status() : "UNKNOWN"));
+        }
+        requireCredentials(platform);
+        CashdeskClient.Result result = CashdeskClient.await(cashdeskClient.payout(platform, operation.getPlatformUserId(),
+                operation.getCode(), operation.getLng()));
+        return result.success() ? Outcome.succeeded(result.summa()) : Outcome.failed(null, result.message());
+    }
+
+    private static void requireCredentials(Platform platform) {
+        if (isBlank(platform.getApiKey()) || isBlank(platform.getPassword()) || isBlank(platform.getWorkplaceId())) {
+            throw new IllegalStateException("Invalid cashdesk credentials for platform " + platform.getName());
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static Outcome classify(Exception e) {
+        if (e instanceof HttpClientErrorException clientError) {
+            return Outcome.failed(clientError.getStatusCode().value(), clientError.getMessage());
+        }
+        if (e instanceof HttpServerErrorException.ServiceUnavailable) {
+            return Outcome.retry(e.getMessage());
+        }
+        if (e instanceof ResourceAccessException) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause instanceof OutboundHttpClients.ConnectionsBusyException) {
+                return Outcome.retry(e.getMessage());
+            }
+            return Outcome.unknown(e.getMessage());
+        }
+        // Raised before anything was sent: missing credentials, bad ids, no pending mostbet cashout
+        if (e instanceof IllegalStateException || e instanceof IllegalArgumentException) {
+            return Outcome.failed(null, e.getMessage());
+        }
+        return Outcome.unknown(e.toString());
+    }
+
+    private void recordBalance(PlatformOperation operation, Platform platform) {
+        try {
+            if (operation.getType() == PlatformOperationType.DEPOSIT) {
+                BalanceLimit balance = balanceTracker.deposited(platform, operation.getAmount());
+                if (balance != null) {
+                    operation.setBalanceAfter(balance.getBalance());
+                    operation.setLimitAfter(balance.getLimit());
+                }
+            } else {
+                balanceTracker.paidOut(platform, operation.getResultAmount());
+            }
+        } catch (Exception e) {
+            logger.warn("Balance after platform operation {} unknown: {}", operation.getId(), e.toString());
+        }
+    }
+
+    private void alertUnknown(PlatformOperation operation, String reason) {
+        outcomes.get(PlatformOperationStatus.UNKNOWN).increment();
+        logger.error("Platform operation {} of request {} has an unknown outcome: {}", operation.getId(), operation.getRequestId(), reason);
+        adminLogBotService.sendToAdmins(String.format("⚠️ %s #%d (so‘rov %d, %s: %s) natijasi noma’lum: %s\nPlatformada tekshirib ko‘ring.",
+                operation.getType(), operation.getId(), operation.getRequestId(), operation.getPlatform(),
+                operation.getPlatformUserId(), reason));
+    }
+}
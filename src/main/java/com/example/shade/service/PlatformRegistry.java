@@ -0,0 +1,144 @@
+package com.example.shade.service;
+
+import com.example.shade.model.Currency;
+import com.example.shade.model.Platform;
+import com.example.shade.repository.PlatformRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * All platforms held in memory, by id, by name and by currency, so the payment flows read credentials
+ * and type without a query. The platforms are replaced as a whole snapshot: after writes through
+ * {@link PlatformService} or the admin bot, and every platform.registry.refresh-ms for changes made
+ * elsewhere. The returned platforms are shared copies, so they must not be modified; load the entity
+ * from {@link PlatformRepository} to change one.
+ */
+@Service
+@RequiredArgsConstructor
+public class PlatformRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(PlatformRegistry.class);
+
+    private final PlatformRepository platformRepository;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    // version only changes when the platforms did, so callers can cache what they derive from them
+    private record Snapshot(long version, Map<Long, Platform> byId, Map<String, Platform> byName,
+                            Map<Currency, List<Platform>> byCurrency) {
+    }
+
+    public Optional<Platform> findByName(String name) {
+        return Optional.ofNullable(name == null ? null : snapshot().byName().get(name));
+    }
+
+    public Optional<Platform> findById(Long id) {
+        return Optional.ofNullable(id == null ? null : snapshot().byId().get(id));
+    }
+
+    /**
+     * Platforms of the currency in id order.
+     */
+    public List<Platform> findByCurrency(Currency currency) {
+        return snapshot().byCurrency().getOrDefault(currency, List.of());
+    }
+
+    public List<Platform> findAll() {
+        return List.copyOf(snapshot().byId().values());
+    }
+
+    public long version() {
+        return snapshot().version();
+    }
+
+    /**
+     * Reloads the platforms; call after writing them. Inside a transaction the reload waits for the
+     * commit, so a rolled back write never shows up.
+     */
+    public void reload() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh();
+                }
+            });
+        } else {
+            refresh();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${platform.registry.refresh-ms:30000}", initialDelayString = "${platform.registry.refresh-ms:30000}")
+    public synchronized void refresh() {
+        // Loaded under the lock so a slow load can't replace the snapshot of a later one
+        Snapshot previous = snapshot.get();
+        Snapshot latest = build(previous, platformRepository.findAll());
+        if (latest != previous) {
+            snapshot.set(latest);
+            if (previous != null) {
+                logger.info("Platforms reloaded: {} platforms", latest.byId().size());
+            }
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            refresh();
+            current = snapshot.get();
+        }
+        return current;
+    }
+
+    private static Snapshot build(Snapshot previous, List<Platform> platforms) {
+        Map<Long, Platform> byId = new LinkedHashMap<>();
+        platforms.stream()
+                .sorted(Comparator.comparing(Platform::getId))
+                .forEach(platform -> byId.put(platform.getId(), copy(platform)));
+        if (previous != null && previous.byId().equals(byId)) {
+            return previous;
+        }
+        Map<String, Platform> byName = new HashMap<>();
+        Map<Currency, List<Platform>> byCurrency = new EnumMap<>(Currency.class);
+        for (Platform platform : byId.values()) {
+            if (platform.getName() != null) {
+                byName.put(platform.getName(), platform);
+            }
+            if (platform.getCurrency() != null) {
+                byCurrency.computeIfAbsent(platform.getCurrency(), currency -> new ArrayList<>()).add(platform);
+            }
+        }
+        byCurrency.replaceAll((currency, list) -> List.copyOf(list));
+        return new Snapshot(previous == null ? 1 : previous.version() + 1, Collections.unmodifiableMap(byId),
+                byName, byCurrency);
+    }
+
+    // Detached from whatever persistence context loaded it, so later changes to the entity don't leak in
+    private static Platform copy(Platform source) {
+        Platform platform = new Platform();
+        platform.setId(source.getId());
+        platform.setName(source.getName());
+        platform.setCurrency(source.getCurrency());
+        platform.setApiKey(source.getApiKey());
+        platform.setSecret(source.getSecret());
+        platform.setType(source.getType());
+        platform.setLogin(source.getLogin());
+        platform.setPassword(source.getPassword());
+        platform.setWorkplaceId(source.getWorkplaceId());
+        return platform;
+    }
+}
@@ -18,12 +18,15 @@ import java.util.Objects;
 public class PlatformService {
     private static final Logger logger = LoggerFactory.getLogger(PlatformService.class);
     private final PlatformRepository platformRepository;
+    private final PlatformRegistry platformRegistry;
 
     public Platform createPlatform(PlatformRequest request) {
         logger.info("Creating new platform of type: {}", request.getType());
         Platform platform = new Platform();
         mapDtoToEntity(platform, request);
-        return platformRepository.save(platform);
+        Platform saved = platformRepository.save(platform);
+        platformRegistry.reload();
+        return saved;
     }
 
     public Platform updatePlatform(Long id, PlatformRequest request) {
@@ -31,7 +34,9 @@ public class PlatformService {
         Platform platform = platformRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Platform not found with id: " + id));
         mapDtoToEntity(platform, request);
-        return platformRepository.save(platform);
+        Platform saved = platformRepository.save(platform);
+        platformRegistry.reload();
+        return saved;
     }
 
     /**
@@ -92,6 +97,7 @@ public class PlatformService {
             throw new IllegalArgumentException("Platform not found with id: " + id);
         }
         platformRepository.deleteById(id);
+        platformRegistry.reload();
     }
 
     public List<Platform> getAllPlatforms() {
@@ -0,0 +1,165 @@
+package com.example.shade.service;
+
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.model.RequestType;
+import com.example.shade.repository.HizmatRequestRepository;
+import com.example.shade.repository.RequestDailyRollupRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Keeps request_daily_rollup in step with hizmat_request. Every write of a request goes through
+ * {@link #save(HizmatRequest)} so the bucket the row leaves is decremented and the bucket it enters
+ * is incremented in the same transaction as the row itself. Settled top-ups also give their unique
+ * amount back to {@link PaymentAmountAllocator} here.
+ */
+@Service
+@RequiredArgsConstructor
+public class RequestRollupService {
+    private static final Logger logger = LoggerFactory.getLogger(RequestRollupService.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+    private static final LocalDate BACKFILL_FROM = LocalDate.of(2000, 1, 1);
+    private static final int RECONCILE_DAYS = 2;
+
+    private final HizmatRequestRepository requestRepository;
+    private final RequestDailyRollupRepository rollupRepository;
+    private final PaymentAmountAllocator amountAllocator;
+
+    /**
+     * Saves a detached request; the bucket it leaves is read back from the database. A request that is
+     * managed by the caller's own transaction would read back as already changed, so it is refused:
+     * use {@link #transition} for changes made inside a transaction.
+     */
+    @Transactional
+    public HizmatRequest save(HizmatRequest request) {
+        Bucket before = null;
+        if (request.getId() != null) {
+            HizmatRequest current = requestRepository.findByIdForUpdate(request.getId()).orElse(null);
+            if (current == request) {
+                throw new IllegalStateException("Request " + request.getId() + " is managed by the calling transaction; use transition()");
+            }
+            before = current != null ? Bucket.of(current) : null;
+        }
+        HizmatRequest saved = requestRepository.save(request);
+        applyChange(before, Bucket.of(saved));
+        releaseIfSettled(saved);
+        return saved;
+    }
+
+    /**
+     * Applies {@code update} and saves the request only if it is still in {@code expected} status,
+     * checked under a row lock. Used where a background job and a user action can race for the
+     * same request; an empty result means the other side got there first.
+     */
+    @Transactional
+    public Optional<HizmatRequest> transition(Long id, RequestStatus expected, Consumer<HizmatRequest> update) {
+        return requestRepository.findByIdForUpdate(id)
+                .filter(request -> request.getStatus() == expected)
+                .map(request -> {
+                    Bucket before = Bucket.of(request);
+                    update.accept(request);
+                    HizmatRequest saved = requestRepository.save(request);
+                    applyChange(before, Bucket.of(saved));
+                    releaseIfSettled(saved);
+                    return saved;
+                });
+    }
+
+    @Transactional
+    public boolean deleteById(Long id) {
+        return requestRepository.findByIdForUpdate(id).map(request -> {
+            apply(Bucket.of(request), -1);
+            requestRepository.delete(request);
+            amountAllocator.release(id);
+            return true;
+        }).orElse(false);
+    }
+
+    @Transactional
+    public void deleteAllById(List<Long> ids) {
+        ids.forEach(this::deleteById);
+    }
+
+    /**
+     * Recomputes the rollup for days in [fromDay, toDay) straight from hizmat_request.
+     */
+    @Transactional
+    public void rebuild(LocalDate fromDay, LocalDate toDay) {
+        int deleted = rollupRepository.deleteDays(fromDay, toDay);
+        int inserted = rollupRepository.insertFromRequests(fromDay.atStartOfDay(), toDay.atStartOfDay());
+        logger.info("Rebuilt request rollup for {} - {}: removed {} rows, inserted {} rows", fromDay, toDay, deleted, inserted);
+    }
+
+    @Transactional
+    public void rebuildClosedDays() {
+        rebuild(BACKFILL_FROM, today());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        if (rollupRepository.count() == 0) {
+            logger.info("Request rollup is empty, backfilling from hizmat_request");
+            rebuildClosedDays();
+        }
+    }
+
+    // Late transitions are already applied live; this only repairs drift on the days that just closed
+    @Scheduled(cron = "0 5 0 * * *", zone = "GMT+5")
+    @Transactional
+    public void reconcileRecentDays() {
+        LocalDate today = today();
+        rebuild(today.minusDays(RECONCILE_DAYS), today);
+    }
+
+    public static LocalDate today() {
+        return LocalDate.now(ZONE);
+    }
+
+    private void applyChange(Bucket before, Bucket after) {
+        if (!Objects.equals(before, after)) {
+            if (before != null) {
+                apply(before, -1);
+            }
+            apply(after, 1);
+        }
+    }
+
+    private void releaseIfSettled(HizmatRequest request) {
+        if (request.getType() == RequestType.TOP_UP && !PaymentAmountAllocator.isActive(request.getStatus())) {
+            amountAllocator.release(request.getId());
+        }
+    }
+
+    private void apply(Bucket bucket, int sign) {
+        rollupRepository.upsert(bucket.day(), bucket.platform(), bucket.adminCardId(),
+                bucket.type().name(), bucket.status().name(), sign, sign * bucket.amount());
+    }
+
+    private record Bucket(LocalDate day, String platform, Long adminCardId, RequestType type,
+                          RequestStatus status, long amount) {
+        static Bucket of(HizmatRequest request) {
+            return new Bucket(
+                    request.getCreatedAt().toLocalDate(),
+                    request.getPlatform(),
+                    request.getAdminCardId() != null ? request.getAdminCardId() : 0L,
+                    request.getType(),
+                    request.getStatus(),
+                    request.getUniqueAmount() != null ? request.getUniqueAmount() : 0L);
+        }
+    }
+}
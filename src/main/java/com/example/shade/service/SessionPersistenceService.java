@@ -0,0 +1,103 @@
+package com.example.shade.service;
+
+import com.example.shade.model.SessionData;
+import com.example.shade.repository.SessionDataRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Stores session snapshots in session_data, one row per key. Writes are diffed against what is already
+ * stored so an unchanged key costs nothing, and sessions whose newest row is older than the session TTL
+ * are neither restored nor kept.
+ */
+@Service
+public class SessionPersistenceService {
+    private static final Logger logger = LoggerFactory.getLogger(SessionPersistenceService.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+
+    private final SessionDataRepository sessionDataRepository;
+    private final long ttlMinutes;
+
+    public SessionPersistenceService(SessionDataRepository sessionDataRepository,
+                                     @Value("${session.ttl-minutes:180}") long ttlMinutes) {
+        this.sessionDataRepository = sessionDataRepository;
+        this.ttlMinutes = ttlMinutes;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, String> load(Long chatId) {
+        List<SessionData> rows = sessionDataRepository.findByChatId(chatId);
+        LocalDateTime cutoff = LocalDateTime.now(ZONE).minusMinutes(ttlMinutes);
+        boolean fresh = rows.stream()
+                .map(SessionData::getUpdatedAt)
+                .anyMatch(updatedAt -> updatedAt != null && updatedAt.isAfter(cutoff));
+        if (!fresh) {
+            return Map.of();
+        }
+        Map<String, String> values = new HashMap<>();
+        for (SessionData row : rows) {
+            if (row.getValue() != null) {
+                values.put(row.getKey(), row.getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Makes the stored rows of every chat in {@code snapshots} match its snapshot; an empty snapshot
+     * deletes the chat's rows.
+     */
+    @Transactional
+    public void write(Map<Long, Map<String, String>> snapshots) {
+        LocalDateTime now = LocalDateTime.now(ZONE);
+        Map<Long, List<SessionData>> stored = sessionDataRepository.findByChatIdIn(snapshots.keySet()).stream()
+                .collect(Collectors.groupingBy(SessionData::getChatId));
+        List<SessionData> changed = new ArrayList<>();
+        List<SessionData> removed = new ArrayList<>();
+        snapshots.forEach((chatId, values) -> {
+            Map<String, String> missing = new HashMap<>(values);
+            for (SessionData row : stored.getOrDefault(chatId, List.of())) {
+                // Also drops duplicate keys, since the first row of a key has already taken its value
+                String value = missing.remove(row.getKey());
+                if (value == null) {
+                    removed.add(row);
+                } else if (!Objects.equals(value, row.getValue())) {
+                    row.setValue(value);
+                    row.setUpdatedAt(now);
+                    changed.add(row);
+                }
+            }
+            missing.forEach((key, value) -> {
+                SessionData row = new SessionData();
+                row.setChatId(chatId);
+                row.setKey(key);
+                row.setValue(value);
+                row.setUpdatedAt(now);
+                changed.add(row);
+            });
+        });
+        sessionDataRepository.saveAll(changed);
+        sessionDataRepository.deleteAllInBatch(removed);
+    }
+
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void purgeIdleSessions() {
+        int deleted = sessionDataRepository.deleteIdleSessions(LocalDateTime.now(ZONE).minusMinutes(ttlMinutes));
+        if (deleted > 0) {
+            logger.info("Purged {} idle session rows", deleted);
+        }
+    }
+}
@@ -1,32 +1,32 @@
 package com.example.shade.service;
 
 import com.example.shade.bot.MessageSender;
+import com.example.shade.bot.UpdateDispatcher;
 import com.example.shade.dto.BalanceLimit;
 import com.example.shade.model.*;
 import com.example.shade.model.Currency;
 import com.example.shade.repository.*;
-import jakarta.xml.bind.DatatypeConverter;
+import com.example.shade.service.KeyboardCatalog.Button;
+import com.example.shade.service.KeyboardCatalog.Layout;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.util.DigestUtils;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,25 +35,56 @@ public class TopUpService {
     private static final Logger logger = LoggerFactory.getLogger(TopUpService.class);
     private final UserSessionService sessionService;
     private final HizmatRequestRepository requestRepository;
-    private final PlatformRepository platformRepository;
+    private final RequestRollupService requestRollupService;
+    private final PaymentAmountAllocator amountAllocator;
+    private final PlatformRegistry platformRegistry;
     private final AdminCardRepository adminCardRepository;
     private final UserBalanceRepository userBalanceRepository;
-    private final ExchangeRateRepository exchangeRateRepository;
+    private final ExchangeRateService exchangeRateService;
     private final BonusService bonusService;
     private final LotteryService lotteryService;
     private final OsonService osonService;
     private final MessageSender messageSender;
+    private final UpdateDispatcher updateDispatcher;
     private final AdminLogBotService adminLogBotService;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final UserProfileCache userProfileCache;
+    private final PlatformOperationService platformOperationService;
     private static final long MIN_AMOUNT = 5_000;
     private static final long MAX_AMOUNT = 10_000_000;
+    private static final List<Button> NAVIGATION_ROW = List.of(
+            Button.translated("topup.button.back", "BACK"), Button.translated("topup.button.home", "HOME"));
+    private static final Layout NAVIGATION_KEYBOARD = Layout.of(NAVIGATION_ROW);
+    private static final Layout MAIN_MENU_KEYBOARD = Layout.of(
+            List.of(Button.translated("topup.button.topup_account", "TOPUP")),
+            List.of(Button.translated("topup.button.withdraw", "WITHDRAW")),
+            List.of(Button.translated("topup.button.bonus", "BONUS")),
+            List.of(Button.translated("topup.button.contact", "CONTACT")));
+    private static final Layout PLATFORM_KEYBOARD = Layout.platforms("TOPUP_PLATFORM:",
+            Button.translated("topup.button.platform_uzs", null), Button.translated("topup.button.platform_rub", null),
+            NAVIGATION_ROW);
+    private static final Layout APPROVAL_KEYBOARD = Layout.of(
+            List.of(Button.translated("topup.button.correct", "TOPUP_APPROVE_USER"),
+                    Button.translated("topup.button.incorrect", "TOPUP_REJECT_USER")),
+            NAVIGATION_ROW);
+    private static final Layout AMOUNT_KEYBOARD = Layout.of(
+            List.of(Button.translated("topup.button.amount_5000", "TOPUP_AMOUNT_5000"),
+                    Button.translated("topup.button.amount_10000000", "TOPUP_AMOUNT_10000000")),
+            NAVIGATION_ROW);
+    private static final Layout PAYMENT_CONFIRM_KEYBOARD = Layout.of(
+            List.of(Button.translated("topup.button.confirm", "TOPUP_PAYMENT_CONFIRM")), NAVIGATION_ROW);
+    private static final Layout SEND_SCREENSHOT_KEYBOARD = Layout.of(
+            List.of(Button.translated("topup.button.send_screenshot", "TOPUP_SEND_SCREENSHOT")), NAVIGATION_ROW);
     private static final String PAYMENT_MESSAGE_KEY = "payment_message_id";
     private static final String PAYMENT_ATTEMPTS_KEY = "payment_attempts";
-    private final BlockedUserRepository blockedUserRepository;
+    private final UserDirectoryService userDirectory;
     private final HumoService humoService;
     private final LanguageSessionService languageSessionService;
+    private final KeyboardCatalog keyboardCatalog;
     private final MostbetService mostbetService;
 
+    @Value("${topup.payment.timeout-minutes:60}")
+    private long paymentTimeoutMinutes;
+
     public void startTopUp(Long chatId) {
         logger.info("Starting top-up for chatId: {}", chatId);
         sessionService.setUserState(chatId, "TOPUP_PLATFORM_SELECTION");
@@ -156,11 +187,7 @@ public class TopUpService {
     }
 
     private InlineKeyboardMarkup createBonusMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, NAVIGATION_KEYBOARD);
     }
 
     public void handleBack(Long chatId) {
@@ -215,7 +242,7 @@ public class TopUpService {
 
     private void validateUserId(Long chatId, String userId) {
         String platformName = sessionService.getUserData(chatId, "platform").replace("_", "");
-        Platform platform = platformRepository.findByName(platformName)
+        Platform platform = platformRegistry.findByName(platformName)
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
         if (platform.getType().equals("mostbet")){
             Currency currency = platform.getCurrency();
@@ -230,7 +257,7 @@ public class TopUpService {
                     .amount(0L)
                     .type(RequestType.TOP_UP)
                     .build();
-            requestRepository.save(request);
+            requestRollupService.save(request);
             sessionService.setUserData(chatId, "platformUserId", userId);
             sessionService.setUserData(chatId, "fullName", "mostbet");
             sessionService.setUserState(chatId, "TOPUP_APPROVE_USER");
@@ -252,30 +279,12 @@ public class TopUpService {
                 return;
             }
 
-            String confirmInput = userId + ":" + hash;
-            String confirm = DigestUtils.md5DigestAsHex(confirmInput.getBytes(StandardCharsets.UTF_8));
-            String sha256Input1 = "hash=" + hash + "&userid=" + userId + "&cashdeskid=" + cashdeskId;
-            String sha256Result1 = sha256Hex(sha256Input1);
-            String md5Input = "userid=" + userId + "&cashierpass=" + cashierPass + "&hash=" + hash;
-            String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-            String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-            logger.debug("Validating user ID {}: confirmInput={}, confirm={}, sha256Input1={}, sha256Result1={}, md5Input={}, md5Result={}, finalSignature={}",
-                    userId, confirmInput, confirm, sha256Input1, sha256Result1, md5Input, md5Result, finalSignature);
-
-            String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Users/%s?confirm=%s&cashdeskId=%s",
-                    userId, confirm, cashdeskId);
-            logger.info("Validating user ID {} for platform {} (chatId: {}), URL: {}", userId, platformName, chatId, apiUrl);
+            logger.info("Validating user ID {} for platform {} (chatId: {})", userId, platformName, chatId);
 
             try {
-                HttpHeaders headers = new HttpHeaders();
-                headers.set("sign", finalSignature);
-                HttpEntity<String> entity = new HttpEntity<>(headers);
-
-                ResponseEntity<UserProfile> response = restTemplate.exchange(apiUrl, HttpMethod.GET, entity, UserProfile.class);
-                UserProfile profile = response.getBody();
+                UserProfile profile = CashdeskClient.await(userProfileCache.lookup(platform, userId));
 
-                if (response.getStatusCode().is2xxSuccessful() && profile != null && profile.getUserId() != null && profile.getName() != null) {
+                if (profile != null && profile.getUserId() != null && profile.getName() != null) {
                     String fullName = profile.getName();
                     sessionService.setUserData(chatId, "platformUserId", userId);
                     sessionService.setUserData(chatId, "fullName", fullName);
@@ -294,7 +303,7 @@ public class TopUpService {
                             .amount(0L)
                             .type(RequestType.TOP_UP)
                             .build();
-                    requestRepository.save(request);
+                    requestRollupService.save(request);
 
                     sessionService.setUserState(chatId, "TOPUP_APPROVE_USER");
                     sendUserApproval(chatId, fullName, userId);
@@ -353,7 +362,7 @@ public class TopUpService {
                 chatId, platform, userId).orElse(null);
         if (request != null) {
             request.setCardNumber(cardNumber);
-            requestRepository.save(request);
+            requestRollupService.save(request);
         }
 
         sessionService.setUserState(chatId, "TOPUP_AMOUNT_INPUT");
@@ -395,11 +404,7 @@ public class TopUpService {
 
         String platformName = sessionService.getUserData(chatId, "platform").replace("_", "");
 
-        AdminCard adminCard = adminCardRepository.findLeastRecentlyUsed()
-                .orElseThrow(() -> new IllegalStateException("No admin cards available"));
-
         long amount = Long.parseLong(sessionService.getUserData(chatId, "amount"));
-        long uniqueAmount = generateUniqueAmount(amount);
 
         HizmatRequest request = requestRepository.findTopByChatIdAndPlatformAndPlatformUserIdOrderByCreatedAtDesc(
                 chatId, platformName, sessionService.getUserData(chatId, "platformUserId")).orElse(null);
@@ -410,6 +415,10 @@ public class TopUpService {
             return;
         }
 
+        PaymentAmountAllocator.Allocation allocation = amountAllocator.allocate(request.getId(), amount);
+        AdminCard adminCard = allocation.adminCard();
+        long uniqueAmount = allocation.uniqueAmount();
+
         request.setAmount(amount);
         request.setUniqueAmount(uniqueAmount);
         request.setAdminCardId(adminCard.getId());
@@ -417,7 +426,7 @@ public class TopUpService {
         request.setStatus(RequestStatus.PENDING_PAYMENT);
         request.setTransactionId(UUID.randomUUID().toString());
         request.setPaymentAttempts(0);
-        requestRepository.save(request);
+        requestRollupService.save(request);
 
         adminCard.setLastUsed(LocalDateTime.now(ZoneId.of("GMT+5")));
         adminCardRepository.save(adminCard);
@@ -427,6 +436,22 @@ public class TopUpService {
         sendPaymentInstruction(chatId);
     }
 
+    // Cancels top-ups whose payment never arrived so their amount slot can be handed out again
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void expireStalePayments() {
+        for (Long requestId : amountAllocator.findExpiredRequestIds(Duration.ofMinutes(paymentTimeoutMinutes))) {
+            requestRollupService.transition(requestId, RequestStatus.PENDING_PAYMENT,
+                            request -> request.setStatus(RequestStatus.CANCELED))
+                    .ifPresent(request -> {
+                        logger.info("Top-up request {} expired after {} minutes without payment",
+                                request.getId(), paymentTimeoutMinutes);
+                        Long chatId = request.getChatId();
+                        updateDispatcher.dispatch(chatId, () -> messageSender.sendMessage(chatId,
+                                languageSessionService.format(chatId, "topup.message.payment_expired", request.getId(), paymentTimeoutMinutes)));
+                    });
+        }
+    }
+
     private void verifyPayment(Long chatId) throws Exception {
         HizmatRequest request = requestRepository.findByChatIdAndStatus(chatId, RequestStatus.PENDING_PAYMENT)
                 .orElse(null);
@@ -442,19 +467,21 @@ public class TopUpService {
         int attempts = Integer.parseInt(sessionService.getUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0"));
         attempts++;
         sessionService.setUserData(chatId, PAYMENT_ATTEMPTS_KEY, String.valueOf(attempts));
+        int paymentAttempts = attempts;
+        if (requestRollupService.transition(request.getId(), RequestStatus.PENDING_PAYMENT,
+                r -> r.setPaymentAttempts(paymentAttempts)).isEmpty()) {
+            logger.info("Request {} was settled while chatId {} was confirming payment", request.getId(), chatId);
+            return;
+        }
         request.setPaymentAttempts(attempts);
-        requestRepository.save(request);
 
         AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
                 .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
         Map<String, Object> statusResponse = null;
         boolean response = false;
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
         long rubAmount =
-                BigDecimal.valueOf(request.getUniqueAmount())
-                        .multiply(latest.getUzsToRub())
-                        .longValue() / 1000;
+                latest.uzsToRub(request.getUniqueAmount());
         try {
             if (adminCard.getPaymentSystem().equals(PaymentSystem.UZCARD)) {
                 statusResponse = osonService.verifyPaymentByAmountAndCard(
@@ -470,22 +497,20 @@ public class TopUpService {
                 }
             }
         } catch (Exception e) {
+            if (requestRollupService.transition(request.getId(), RequestStatus.PENDING_PAYMENT,
+                    r -> r.setStatus(RequestStatus.PENDING_SCREENSHOT)).isEmpty()) {
+                return;
+            }
             request.setStatus(RequestStatus.PENDING_SCREENSHOT);
-            requestRepository.save(request);
             SendMessage message = new SendMessage();
             message.setChatId(chatId);
             message.setText(languageSessionService.getTranslation(chatId, "topup.message.send_screenshot"));
-            InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-
-            List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-            rows.add(createNavigationButtons(chatId));
-            markup.setKeyboard(rows);
-            message.setReplyMarkup(markup);
+            message.setReplyMarkup(createNavigationKeyboard(chatId));
             messageSender.sendMessage(message, chatId);
 
             sessionService.setUserState(chatId, "TOPUP_AWAITING_SCREENSHOT");
 
-            String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
+            String number = userDirectory.getPhoneNumber(request.getChatId());
             String logMessage = String.format(
                     "🆔: %d  \n" +
                             "👤: [%s] %s\n" +
@@ -512,112 +537,34 @@ public class TopUpService {
         boolean isPaymentReceived = response || (statusResponse != null ? "SUCCESS".equals(statusResponse.get("status")) : false);
 
         if (isPaymentReceived) {
-            if (adminCard.getPaymentSystem().equals(PaymentSystem.UZCARD)) {
-                request.setTransactionId((String) statusResponse.get("transactionId"));
-                request.setBillId(Long.parseLong(String.valueOf(statusResponse.get("billId"))));
-                request.setPayUrl((String) statusResponse.get("payUrl"));
-            }
-
-            request.setStatus(RequestStatus.APPROVED);
-            requestRepository.save(request);
-            String platformName = request.getPlatform();
-            Platform platform = platformRepository.findByName(platformName)
-                    .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
-            BalanceLimit transferSuccessful =null;
-            if (platform.getType().equals("mostbet")){
-                transferSuccessful=mostbetService.transferToPlatform(request);
-            }else {
-                 transferToPlatform(request, adminCard);
-            }
-            if (transferSuccessful != null) {
-                UserBalance balance = userBalanceRepository.findById(chatId)
-                        .orElseGet(() -> {
-                            UserBalance newBalance = UserBalance.builder()
-                                    .chatId(request.getChatId())
-                                    .tickets(0L)
-                                    .balance(BigDecimal.ZERO)
-                                    .build();
-                            return userBalanceRepository.save(newBalance);
-                        });
-                long tickets = request.getAmount() / 30_000;
-                if (tickets > 0) {
-                    lotteryService.awardTickets(chatId, tickets);
+            Map<String, Object> matched = statusResponse;
+            boolean uzcard = adminCard.getPaymentSystem().equals(PaymentSystem.UZCARD);
+            Optional<PlatformOperation> submitted = submitDeposit(request, adminCard, RequestStatus.PENDING_PAYMENT, r -> {
+                if (uzcard) {
+                    r.setTransactionId((String) matched.get("transactionId"));
+                    r.setBillId(Long.parseLong(String.valueOf(matched.get("billId"))));
+                    r.setPayUrl((String) matched.get("payUrl"));
                 }
-
-                bonusService.creditReferral(request.getChatId(), request.getAmount());
-                String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-                String logMessage = String.format(
-                        "🆔: %d  To‘lov yakunlandi ✅\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "🔐 Admin kartasi: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "📅 [%s]",
-                        request.getId(),
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-
-                String logMessageAdmin = String.format(
-                        "🆔: %d  To‘lov yakunlandi ✅\n" +
-                                "👤: [%s] %s\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "\uD83D\uDCB3 Bizniki: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "\uD83C\uDFE6: %,d %s\n\n" +
-                                "📅 [%s]",
-                        request.getId(),
-                        chatId,
-                        number,
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        transferSuccessful.getLimit().longValue(),
-                        request.getCurrency().toString(),
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-                adminLogBotService.sendLog(logMessageAdmin);
-
-                messageSender.animateAndDeleteMessages(chatId, sessionService.getMessageIds(chatId), "OPEN");
-                sessionService.clearMessageIds(chatId);
-                sessionService.setUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0");
-                messageSender.sendMessage(chatId, logMessage +
-                        (tickets > 0 ? String.format(languageSessionService.getTranslation(chatId, "topup.message.tickets_received"), tickets) : ""));
-                sendMainMenu(chatId);
-            } else {
-                handleTransferFailure(chatId, request, adminCard);
+                r.setStatus(RequestStatus.APPROVED);
+            });
+            if (submitted.isEmpty()) {
+                logger.info("Request {} was already settled, skipping approval for chatId {}", request.getId(), chatId);
+                return;
             }
+            sendTransferInProgress(request);
         } else {
             logger.warn("Payment not received for chatId {}, uniqueAmount: {}, cardNumber: {}",
                     chatId, request.getUniqueAmount(), request.getCardNumber());
 
             if (attempts >= 2) {
-                request.setStatus(RequestStatus.PENDING_SCREENSHOT);
-                requestRepository.save(request);
+                if (requestRollupService.transition(request.getId(), RequestStatus.PENDING_PAYMENT,
+                        r -> r.setStatus(RequestStatus.PENDING_SCREENSHOT)).isEmpty()) {
+                    return;
+                }
                 SendMessage message = new SendMessage();
                 message.setChatId(chatId);
                 message.setText(languageSessionService.getTranslation(chatId, "topup.message.send_screenshot"));
-                InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-
-                List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-                rows.add(createNavigationButtons(chatId));
-                markup.setKeyboard(rows);
-                message.setReplyMarkup(markup);
+                message.setReplyMarkup(createNavigationKeyboard(chatId));
                 messageSender.sendMessage(message, chatId);
 
                 sessionService.setUserState(chatId, "TOPUP_AWAITING_SCREENSHOT");
@@ -628,14 +575,186 @@ public class TopUpService {
         }
     }
 
+    /**
+     * Approves a PENDING_PAYMENT request whose payment was found by {@link CardHistoryPoller} and queues
+     * its deposit. Returns false if the request was already settled by the user's own confirmation; the
+     * top-up is finished by {@link #onPlatformOperationSettled}.
+     */
+    public boolean approveMatchedPayment(Long requestId, String transactionId, Long billId) {
+        HizmatRequest request = requestRepository.findById(requestId).orElse(null);
+        if (request == null || request.getStatus() != RequestStatus.PENDING_PAYMENT) {
+            return false;
+        }
+        AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
+                .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
+        Optional<PlatformOperation> submitted = submitDeposit(request, adminCard, RequestStatus.PENDING_PAYMENT, r -> {
+            r.setTransactionId(transactionId);
+            r.setBillId(billId);
+            r.setPayUrl("");
+            r.setStatus(RequestStatus.APPROVED);
+        });
+        if (submitted.isEmpty()) {
+            return false;
+        }
+        logger.info("Payment for request {} matched by card history poller, transactionId {}", requestId, transactionId);
+        // Touches the user's chat, so it runs in order with the user's own updates
+        updateDispatcher.dispatch(request.getChatId(), () -> sendTransferInProgress(request));
+        return true;
+    }
+
+    /**
+     * Finishes a top-up once its deposit has settled, in order with the user's own updates. Bonus
+     * deposits are BONUS_APPROVED and left to {@link BonusService}.
+     */
+    @EventListener
+    public void onPlatformOperationSettled(PlatformOperationService.Settled settled) {
+        PlatformOperation operation = settled.operation();
+        if (operation.getType() != PlatformOperationType.DEPOSIT) {
+            return;
+        }
+        requestRepository.findById(operation.getRequestId())
+                .filter(request -> request.getType() == RequestType.TOP_UP && request.getStatus() == RequestStatus.APPROVED)
+                .ifPresent(request -> updateDispatcher.dispatch(request.getChatId(), () -> finishTopUp(request, operation)));
+    }
+
+    /**
+     * Moves the request out of {@code expected} with {@code update} and queues its deposit in the same
+     * transaction. Empty if the request had already left {@code expected}.
+     */
+    private Optional<PlatformOperation> submitDeposit(HizmatRequest request, AdminCard adminCard, RequestStatus expected,
+                                                      Consumer<HizmatRequest> update) {
+        String platformName = request.getPlatform();
+        Platform platform = platformRegistry.findByName(platformName)
+                .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
+        if (platform.getType().equals("mostbet")) {
+            return platformOperationService.submitDeposit(request.getId(), expected, update, platform,
+                    mostbetService.depositAmount(request), null, null);
+        }
+        long amount = request.getUniqueAmount();
+        if (request.getCurrency().equals(Currency.RUB)) {
+            amount = exchangeRateService.current().uzsToRub(request.getUniqueAmount());
+        }
+        return platformOperationService.submitDeposit(request.getId(), expected, update, platform,
+                amount, "ru", adminCard.getCardNumber());
+    }
+
+    private void sendTransferInProgress(HizmatRequest request) {
+        messageSender.sendMessage(request.getChatId(),
+                languageSessionService.format(request.getChatId(), "topup.message.transfer_in_progress", request.getId()));
+    }
+
+    private void finishTopUp(HizmatRequest request, PlatformOperation operation) {
+        Long chatId = request.getChatId();
+        String userId = request.getPlatformUserId();
+        AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
+                .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
+        if (operation.getStatus() == PlatformOperationStatus.SUCCEEDED) {
+            logger.info("✅ Transfer successful for chatId {}, userId: {}, amount: {}, platform: {}",
+                    chatId, userId, operation.getAmount(), request.getPlatform());
+            completeTopUp(request, adminCard, PlatformOperationService.balanceAfter(operation));
+            return;
+        }
+        if (operation.getStatus() == PlatformOperationStatus.UNKNOWN) {
+            // Admins are already asked to check it on the platform
+            logger.error("Transfer outcome unknown for chatId {}, userId {}: {}", chatId, userId, operation.getMessage());
+            messageSender.sendMessage(chatId, languageSessionService.format(chatId, "topup.message.transfer_unknown", request.getId()));
+            return;
+        }
+        if (operation.getHttpStatus() != null) {
+            logger.error("API error for transfer, chatId {}, userId {}: {}", chatId, userId, operation.getMessage());
+            messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.api_auth_error"));
+        } else {
+            String errorMsg = operation.getMessage() != null
+                    ? operation.getMessage()
+                    : languageSessionService.getTranslation(chatId, "topup.message.transfer_error_default");
+            logger.error("❌ Transfer failed for chatId {}, userId: {}, response: {}", chatId, userId, operation.getMessage());
+            adminLogBotService.sendToAdmins("❌ Transfer xatosi: " + errorMsg);
+        }
+        handleTransferFailure(chatId, request, adminCard);
+    }
+
+    // The cashdesk limit is left out of the admin log when it couldn't be read after the deposit
+    private void completeTopUp(HizmatRequest request, AdminCard adminCard, BalanceLimit cashdeskBalance) {
+        Long chatId = request.getChatId();
+        long rubAmount = exchangeRateService.current().uzsToRub(request.getUniqueAmount());
+        userBalanceRepository.findById(chatId)
+                .orElseGet(() -> {
+                    UserBalance newBalance = UserBalance.builder()
+                            .chatId(request.getChatId())
+                            .tickets(0L)
+                            .balance(BigDecimal.ZERO)
+                            .build();
+                    return userBalanceRepository.save(newBalance);
+                });
+        long tickets = request.getAmount() / 30_000;
+        if (tickets > 0) {
+            lotteryService.awardTickets(chatId, tickets);
+        }
+
+        bonusService.creditReferral(request.getChatId(), request.getAmount());
+        String number = userDirectory.getPhoneNumber(request.getChatId());
+        String logMessage = String.format(
+                "🆔: %d  To‘lov yakunlandi ✅\n" +
+                        "🌐 #%s: " + "%s\n" +
+                        "💸 Miqdor: %,d UZS\n" +
+                        "💸 Miqdor: %,d RUB\n" +
+                        "💳 Karta: `%s`\n" +
+                        "🔐 Admin kartasi: `%s`\n" +
+                        "🎟️ Chiptalar: %d\n\n" +
+                        "📅 [%s]",
+                request.getId(),
+                request.getPlatform(),
+                request.getPlatformUserId(),
+                request.getUniqueAmount(),
+                rubAmount,
+                request.getCardNumber(),
+                adminCard.getCardNumber(),
+                tickets,
+                LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+        );
+
+        String limitLine = cashdeskBalance != null && cashdeskBalance.getLimit() != null
+                ? String.format("\uD83C\uDFE6: %,d %s\n\n", cashdeskBalance.getLimit().longValue(), request.getCurrency().toString())
+                : "";
+        String logMessageAdmin = String.format(
+                "🆔: %d  To‘lov yakunlandi ✅\n" +
+                        "👤: [%s] %s\n" +
+                        "🌐 #%s: " + "%s\n" +
+                        "💸 Miqdor: %,d UZS\n" +
+                        "💸 Miqdor: %,d RUB\n" +
+                        "💳 Karta: `%s`\n" +
+                        "\uD83D\uDCB3 Bizniki: `%s`\n" +
+                        "🎟️ Chiptalar: %d\n\n" +
+                        "%s" +
+                        "📅 [%s]",
+                request.getId(),
+                chatId,
+                number,
+                request.getPlatform(),
+                request.getPlatformUserId(),
+                request.getUniqueAmount(),
+                rubAmount,
+                request.getCardNumber(),
+                adminCard.getCardNumber(),
+                tickets,
+                limitLine,
+                LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+        );
+        adminLogBotService.sendLog(logMessageAdmin);
+
+        messageSender.animateAndDeleteMessages(chatId, sessionService.getMessageIds(chatId), "OPEN");
+        sessionService.clearMessageIds(chatId);
+        sessionService.setUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0");
+        messageSender.sendMessage(chatId, logMessage +
+                (tickets > 0 ? languageSessionService.format(chatId, "topup.message.tickets_received", tickets) : ""));
+        sendMainMenu(chatId);
+    }
+
     private void handleTransferFailure(Long chatId, HizmatRequest request, AdminCard adminCard) {
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
         long rubAmount =
-                BigDecimal.valueOf(request.getUniqueAmount())
-                        .multiply(latest.getUzsToRub())
-                        .longValue() / 1000;
-        String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
+                latest.uzsToRub(request.getUniqueAmount());
+        String number = userDirectory.getPhoneNumber(request.getChatId());
         String errorLogMessage = String.format(
                 " 🆔: %d Transfer xatosi ❌\n" +
                         "👤 User ID [%s] %s\n" +
@@ -667,8 +786,7 @@ public class TopUpService {
         adminLogBotService.sendToAdmins(errorLogMessage, markup);
         SendMessage message = new SendMessage();
         message.setChatId(request.getChatId());
-        String messageText = String.format(
-                languageSessionService.getTranslation(chatId, "topup.message.transfer_failure"),
+        String messageText = languageSessionService.format(chatId, "topup.message.transfer_failure",
                 request.getId(),
                 request.getUniqueAmount(),
                 request.getUniqueAmount(),
@@ -703,103 +821,22 @@ public class TopUpService {
         AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
                 .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
 
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
         long rubAmount =
-                BigDecimal.valueOf(request.getUniqueAmount())
-                        .multiply(latest.getUzsToRub())
-                        .longValue() / 1000;
+                latest.uzsToRub(request.getUniqueAmount());
 
         if (approve) {
-            request.setStatus(RequestStatus.APPROVED);
-            requestRepository.save(request);
-
-            String platformName = request.getPlatform();
-            Platform platform = platformRepository.findByName(platformName)
-                    .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
-            BalanceLimit transferSuccessful =null;
-            if (platform.getType().equals("mostbet")){
-                transferSuccessful=mostbetService.transferToPlatform(request);
-            }else {
-                transferToPlatform(request, adminCard);
-            }
-            if (transferSuccessful != null) {
-                UserBalance balance = userBalanceRepository.findById(request.getChatId())
-                        .orElseGet(() -> {
-                            UserBalance newBalance = UserBalance.builder()
-                                    .chatId(request.getChatId())
-                                    .tickets(0L)
-                                    .balance(BigDecimal.ZERO)
-                                    .build();
-                            return userBalanceRepository.save(newBalance);
-                        });
-                long tickets = request.getAmount() / 30_000;
-                if (tickets > 0) {
-                    lotteryService.awardTickets(requestId, tickets);
-                }
-
-                bonusService.creditReferral(request.getChatId(), request.getAmount());
-
-                String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-                String logMessage = String.format(
-                        " 🆔: %d To‘lov skrinshoti tasdiqlandi ✅\n" +
-                                "👤ID [%s] %s\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "🔐 Admin kartasi: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "📅 [%s] ",
-                        request.getId(),
-                        request.getChatId(), number,
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-                String adminLogMessage = String.format(
-                        " 🆔: %d To‘lov skrinshoti tasdiqlandi ✅\n" +
-                                "👤ID [%s] %s\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "🔐 Admin kartasi: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "\uD83C\uDFE6: %,d %s\n\n" +
-                                "📅 [%s] ",
-                        request.getId(),
-                        request.getChatId(), number,
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        transferSuccessful.getLimit().longValue(),
-                        request.getCurrency().toString(),
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-
-                adminLogBotService.sendLog(adminLogMessage);
-                messageSender.sendMessage(requestId, logMessage +
-                        (tickets > 0 ? String.format(languageSessionService.getTranslation(requestId, "topup.message.tickets_received"), tickets) : ""));
-            } else {
-                handleTransferFailure(requestId, request, adminCard);
+            if (submitDeposit(request, adminCard, request.getStatus(), r -> r.setStatus(RequestStatus.APPROVED)).isEmpty()) {
+                logger.warn("Request {} changed while its screenshot was being approved, skipping", request.getId());
+                return;
             }
+            sendTransferInProgress(request);
         } else {
             request.setStatus(RequestStatus.CANCELED);
-            requestRepository.save(request);
+            requestRollupService.save(request);
 
-            String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-            String logMessage = String.format(
-                    languageSessionService.getTranslation(requestId, "topup.message.screenshot_rejected"),
+            String number = userDirectory.getPhoneNumber(request.getChatId());
+            String logMessage = languageSessionService.format(requestId, "topup.message.screenshot_rejected",
                     request.getId(),
                     request.getPlatform(),
                     request.getPlatformUserId(),
@@ -850,107 +887,22 @@ public class TopUpService {
         AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
                 .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
 
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
         long rubAmount =
-                BigDecimal.valueOf(request.getUniqueAmount())
-                        .multiply(latest.getUzsToRub())
-                        .longValue() / 1000;
+                latest.uzsToRub(request.getUniqueAmount());
 
         if (approve) {
-            request.setStatus(RequestStatus.APPROVED);
-            requestRepository.save(request);
-
-            String platformName = request.getPlatform();
-            Platform platform = platformRepository.findByName(platformName)
-                    .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
-            BalanceLimit transferSuccessful =null;
-            if (platform.getType().equals("mostbet")){
-                try {
-                    transferSuccessful=mostbetService.transferToPlatform(request);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }else {
-                transferToPlatform(request, adminCard);
-            }
-            if (transferSuccessful != null) {
-                UserBalance balance = userBalanceRepository.findById(requestId)
-                        .orElseGet(() -> {
-                            UserBalance newBalance = UserBalance.builder()
-                                    .chatId(request.getChatId())
-                                    .tickets(0L)
-                                    .balance(BigDecimal.ZERO)
-                                    .build();
-                            return userBalanceRepository.save(newBalance);
-                        });
-                long tickets = request.getAmount() / 30_000;
-                if (tickets > 0) {
-                    lotteryService.awardTickets(requestId, tickets);
-                }
-
-                bonusService.creditReferral(request.getChatId(), request.getAmount());
-
-                String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-                String logMessage = String.format(
-                        " 🆔: %d To‘lov skrinshoti tasdiqlandi ✅\n" +
-                                "👤ID [%s] %s\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "🔐 Admin kartasi: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "📅 [%s] ",
-                        request.getId(),
-                        request.getChatId(), number,
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-                String adminLogMessage = String.format(
-                        " 🆔: %d To‘lov skrinshoti tasdiqlandi ✅\n" +
-                                "👤ID [%s] %s\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "🔐 Admin kartasi: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "\uD83C\uDFE6: %,d %s\n\n" +
-                                "📅 [%s] ",
-                        request.getId(),
-                        request.getChatId(), number,
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        transferSuccessful.getLimit().longValue(),
-                        request.getCurrency().toString(),
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-
-                adminLogBotService.sendLog(adminLogMessage);
-                messageSender.sendMessage(requestId, logMessage +
-                        (tickets > 0 ? String.format(languageSessionService.getTranslation(requestId, "topup.message.tickets_received"), tickets) : ""));
-            } else {
-                handleTransferFailure(requestId, request, adminCard);
+            if (submitDeposit(request, adminCard, request.getStatus(), r -> r.setStatus(RequestStatus.APPROVED)).isEmpty()) {
+                logger.warn("Request {} changed while its screenshot was being approved, skipping", request.getId());
+                return;
             }
+            sendTransferInProgress(request);
         } else {
             request.setStatus(RequestStatus.CANCELED);
-            requestRepository.save(request);
+            requestRollupService.save(request);
 
-            String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-            String logMessage = String.format(
-                    languageSessionService.getTranslation(requestId, "topup.message.screenshot_rejected"),
+            String number = userDirectory.getPhoneNumber(request.getChatId());
+            String logMessage = languageSessionService.format(requestId, "topup.message.screenshot_rejected",
                     request.getId(),
                     request.getPlatform(),
                     request.getPlatformUserId(),
@@ -989,122 +941,6 @@ public class TopUpService {
         sendMainMenu(requestId);
     }
 
-    public BalanceLimit getCashdeskBalance(String hash, String cashierPass, String cashdeskId) {
-        RestTemplate restTemplate = new RestTemplate();
-        String baseUrl = "https://partners.servcul.com/CashdeskBotAPI";
-        String dt = ZonedDateTime.now(ZoneOffset.UTC)
-                .format(DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss"));
-
-        // Generate signature
-        String sha256Input = String.format("hash=%s&cashierpass=%s&dt=%s", hash, cashierPass, dt);
-        String sha256Result = sha256Hex(sha256Input);
-        String md5Input = String.format("dt=%s&cashierpass=%s&cashdeskid=%s", dt, cashierPass, cashdeskId);
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result + md5Result);
-
-        // Generate confirm
-        String confirm = DigestUtils.md5DigestAsHex((cashdeskId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-
-        // Build URL
-        String url = String.format("%s/Cashdesk/%s/Balance?confirm=%s&dt=%s", baseUrl, cashdeskId, confirm, dt);
-
-        // Set headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        // Make GET request and extract balance
-        Map<String, Object> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class).getBody();
-        Object balanceObj = response != null ? response.get("Balance") : null;
-        Object limitObj = response != null ? response.get("Limit") : null;
-
-        return balanceObj != null ? new BalanceLimit(new BigDecimal(balanceObj.toString()), new BigDecimal(limitObj.toString())) : null;
-    }
-
-    private BalanceLimit transferToPlatform(HizmatRequest request, AdminCard adminCard) {
-        String platformName = request.getPlatform();
-        Platform platform = platformRepository.findByName(platformName)
-                .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
-
-        String hash = platform.getApiKey();
-        String cashierPass = platform.getPassword();
-        String cashdeskId = platform.getWorkplaceId();
-        String userId = request.getPlatformUserId();
-        long amount = request.getUniqueAmount();
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
-        if (request.getCurrency().equals(Currency.RUB)) {
-            amount = BigDecimal.valueOf(request.getUniqueAmount())
-                    .multiply(latest.getUzsToRub())
-                    .longValue() / 1000;
-        }
-        String lng = "ru";
-
-        if (hash == null || cashierPass == null || cashdeskId == null ||
-                hash.isEmpty() || cashierPass.isEmpty() || cashdeskId.isEmpty()) {
-            logger.error("Invalid platform credentials for platform {}: hash={}, cashierPass={}, cashdeskId={}",
-                    platformName, hash, cashierPass, cashdeskId);
-            messageSender.sendMessage(request.getChatId(), languageSessionService.getTranslation(request.getChatId(), "topup.message.platform_credentials_error"));
-            return null;
-        }
-
-        String confirm = DigestUtils.md5DigestAsHex((userId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-        String sha256Input1 = "hash=" + hash + "&lng=" + lng + "&userid=" + userId;
-        String sha256Result1 = sha256Hex(sha256Input1);
-        String md5Input = "summa=" + amount + "&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId;
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Deposit/%s/Add", userId);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("cashdeskId", Integer.parseInt(cashdeskId));
-        body.put("lng", lng);
-        body.put("summa", amount);
-        body.put("confirm", confirm);
-        body.put("cardNumber", adminCard.getCardNumber());
-
-        try {
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-            ResponseEntity<Map> response = restTemplate.exchange(apiUrl, HttpMethod.POST, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-
-            Object successObj = responseBody != null ? responseBody.get("success") : null;
-            if (successObj == null && responseBody != null) {
-                successObj = responseBody.get("Success");
-            }
-
-            if (response.getStatusCode().is2xxSuccessful() && Boolean.TRUE.equals(successObj)) {
-                logger.info("✅ Transfer successful for chatId {}, userId: {}, amount: {}, platform: {}",
-                        request.getChatId(), userId, amount, platformName);
-
-                return getCashdeskBalance(hash, cashierPass, cashdeskId);
-            }
-
-            String errorMsg = responseBody != null && responseBody.get("Message") != null
-                    ? responseBody.get("Message").toString()
-                    : languageSessionService.getTranslation(request.getChatId(), "topup.message.transfer_error_default");
-            logger.error("❌ Transfer failed for chatId {}, userId: {}, response: {}", request.getChatId(), userId, responseBody);
-            adminLogBotService.sendToAdmins("❌ Transfer xatosi: " + errorMsg);
-//            messageSender.sendMessage(request.getChatId(), String.format(languageSessionService.getTranslation(request.getChatId(), "topup.message.transfer_error"), errorMsg));
-            return null;
-
-        } catch (HttpClientErrorException e) {
-            logger.error("API error for transfer, chatId {}, userId {}: {}", request.getChatId(), userId, e.getMessage());
-            messageSender.sendMessage(request.getChatId(), languageSessionService.getTranslation(request.getChatId(), "topup.message.api_auth_error"));
-            return null;
-
-        } catch (Exception e) {
-            logger.error("Unexpected error during transfer for chatId {}: {}", request.getChatId(), e.getMessage());
-            messageSender.sendMessage(request.getChatId(), languageSessionService.getTranslation(request.getChatId(), "topup.message.unknown_error"));
-            return null;
-        }
-    }
-
     private void sendPaymentInstruction(Long chatId) {
         HizmatRequest request = requestRepository.findByChatIdAndStatus(chatId, RequestStatus.PENDING_PAYMENT)
                 .orElseThrow(() -> new IllegalStateException("Pending payment request not found for chatId: " + chatId));
@@ -1112,8 +948,7 @@ public class TopUpService {
                 .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
 
         int attempts = Integer.parseInt(sessionService.getUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0"));
-        ExchangeRate latest = exchangeRateRepository.findLatest()
-                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
 
         String messageText;
         String sanitizedCardNumber = adminCard.getCardNumber().replaceAll("\\s+", "");
@@ -1121,19 +956,15 @@ public class TopUpService {
         String buttonKey = attempts >= 2 ? "topup.button.send_screenshot" : "topup.button.confirm";
 
         if (request.getCurrency().equals(Currency.RUB)) {
-            long amount = BigDecimal.valueOf(request.getUniqueAmount())
-                    .multiply(latest.getUzsToRub())
-                    .longValue() / 1000;
+            long amount = latest.uzsToRub(request.getUniqueAmount());
 
-            messageText = String.format(
-                    languageSessionService.getTranslation(chatId, "topup.message.payment_instruction_rub"),
+            messageText = languageSessionService.format(chatId, "topup.message.payment_instruction_rub",
                     request.getUniqueAmount(),
                     request.getAmount(), request.getUniqueAmount(), escapedCardNumber,
-                    latest.getUzsToRub(), amount,
+                    latest.uzsToRub(), amount,
                     languageSessionService.getTranslation(chatId, buttonKey), chatId, request.getId());
         } else {
-            messageText = String.format(
-                    languageSessionService.getTranslation(chatId, "topup.message.payment_instruction_uzs"),
+            messageText = languageSessionService.format(chatId, "topup.message.payment_instruction_uzs",
                     request.getUniqueAmount(),
                     request.getAmount(), request.getUniqueAmount(), escapedCardNumber,
                     languageSessionService.getTranslation(chatId, buttonKey), chatId, request.getId());
@@ -1144,22 +975,14 @@ public class TopUpService {
         message.setText(messageText);
         message.enableMarkdown(true);
         message.setReplyMarkup(createPaymentConfirmKeyboard(attempts,chatId));
-        messageSender.sendMessage(message, chatId);
-
-        List<Integer> messageIds = sessionService.getMessageIds(chatId);
-        Integer messageId = messageIds.isEmpty() ? null : messageIds.get(messageIds.size() - 1);
-        if (messageId != null) {
-            sessionService.setUserData(chatId, PAYMENT_MESSAGE_KEY, String.valueOf(messageId));
-        } else {
-            logger.error("Failed to retrieve messageId for chatId {}", chatId);
-            messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.message_id_error"));
-        }
-    }
-
-    private long generateUniqueAmount(long baseAmount) {
-        Random random = new Random();
-        int randomDigits = random.nextInt(100);
-        return baseAmount + randomDigits;
+        messageSender.sendMessage(message, chatId).whenComplete((sent, e) -> {
+            if (sent != null) {
+                sessionService.setUserData(chatId, PAYMENT_MESSAGE_KEY, String.valueOf(sent.getMessageId()));
+            } else {
+                logger.error("Failed to retrieve messageId for chatId {}", chatId);
+                messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.message_id_error"));
+            }
+        });
     }
 
     private void sendPlatformSelection(Long chatId) {
@@ -1175,12 +998,13 @@ public class TopUpService {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         if (!recentRequests.isEmpty()) {
+            userProfileCache.prefetch(platform, recentRequests.stream().map(HizmatRequest::getPlatformUserId).toList());
             HizmatRequest latestRequest = recentRequests.get(0);
             sessionService.setUserData(chatId, "platformUserId", latestRequest.getPlatformUserId());
             message.setText(languageSessionService.getTranslation(chatId, "topup.message.enter_user_id_with_history"));
             message.setReplyMarkup(createSavedIdKeyboard(recentRequests,chatId));
         } else {
-            message.setText(String.format(languageSessionService.getTranslation(chatId, "topup.message.enter_user_id"), platform));
+            message.setText(languageSessionService.format(chatId, "topup.message.enter_user_id", platform));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
         }
         messageSender.sendMessage(message, chatId);
@@ -1189,7 +1013,7 @@ public class TopUpService {
     private void sendUserApproval(Long chatId, String fullName, String userId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "topup.message.user_approval"), fullName, userId));
+        message.setText(languageSessionService.format(chatId, "topup.message.user_approval", fullName, userId));
         message.setReplyMarkup(createApprovalKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
     }
@@ -1208,7 +1032,7 @@ public class TopUpService {
             message.setText(languageSessionService.getTranslation(chatId, "topup.message.enter_card_with_history"));
             message.setReplyMarkup(createSavedCardKeyboard(recentRequests,chatId));
         } else {
-            message.setText(String.format(languageSessionService.getTranslation(chatId, "topup.message.enter_card"), fullName));
+            message.setText(languageSessionService.format(chatId, "topup.message.enter_card", fullName));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
         }
         messageSender.sendMessage(message, chatId);
@@ -1242,35 +1066,7 @@ public class TopUpService {
     }
 
     private InlineKeyboardMarkup createPlatformKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        List<Platform> uzsPlatforms = platformRepository.findByCurrency(Currency.UZS);
-        List<Platform> rubPlatforms = platformRepository.findByCurrency(Currency.RUB);
-
-        int maxRows = Math.max(uzsPlatforms.size(), rubPlatforms.size());
-        for (int i = 0; i < maxRows; i++) {
-            List<InlineKeyboardButton> row = new ArrayList<>();
-            if (i < uzsPlatforms.size()) {
-                Platform uzsPlatform = uzsPlatforms.get(i);
-                row.add(createButton(String.format(languageSessionService.getTranslation(chatId, "topup.button.platform_uzs"), uzsPlatform.getName()), "TOPUP_PLATFORM:" + uzsPlatform.getName()));
-            }
-            if (i < rubPlatforms.size()) {
-                Platform rubPlatform = rubPlatforms.get(i);
-                row.add(createButton(String.format(languageSessionService.getTranslation(chatId, "topup.button.platform_rub"), rubPlatform.getName()), "TOPUP_PLATFORM:" + rubPlatform.getName()));
-            } else {
-                i++;
-                if (i < uzsPlatforms.size() && i < maxRows) {
-                    Platform uzsPlatform = uzsPlatforms.get(i);
-                    row.add(createButton(String.format(languageSessionService.getTranslation(chatId, "topup.button.platform_uzs"), uzsPlatform.getName()), "TOPUP_PLATFORM:" + uzsPlatform.getName()));
-                }
-            }
-            if (!row.isEmpty()) {
-                rows.add(row);
-            }
-        }
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, PLATFORM_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createSavedIdKeyboard(List<HizmatRequest> recentRequests,Long chatId) {
@@ -1281,7 +1077,7 @@ public class TopUpService {
                     .map(HizmatRequest::getPlatformUserId)
                     .distinct()
                     .limit(2)
-                    .map(id -> createButton(String.format(languageSessionService.getTranslation(chatId, "topup.button.saved_id"), id), "TOPUP_PAST_ID:" + id))
+                    .map(id -> createButton(languageSessionService.format(chatId, "topup.button.saved_id", id), "TOPUP_PAST_ID:" + id))
                     .collect(Collectors.toList());
             if (!pastIdButtons.isEmpty()) {
                 rows.add(pastIdButtons);
@@ -1305,7 +1101,7 @@ public class TopUpService {
                     .collect(Collectors.toList());
 
             for (String card : distinctCards) {
-                InlineKeyboardButton button = createButton(String.format(languageSessionService.getTranslation(chatId, "topup.button.saved_card"), card), "TOPUP_PAST_CARD:" + card);
+                InlineKeyboardButton button = createButton(languageSessionService.format(chatId, "topup.button.saved_card", card), "TOPUP_PAST_CARD:" + card);
                 rows.add(Collections.singletonList(button));
             }
         }
@@ -1316,65 +1112,27 @@ public class TopUpService {
     }
 
     private InlineKeyboardMarkup createApprovalKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(
-                createButton(languageSessionService.getTranslation(chatId, "topup.button.correct"), "TOPUP_APPROVE_USER"),
-                createButton(languageSessionService.getTranslation(chatId, "topup.button.incorrect"), "TOPUP_REJECT_USER")
-        ));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, APPROVAL_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createAmountKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(
-                createButton(languageSessionService.getTranslation(chatId, "topup.button.amount_5000"), "TOPUP_AMOUNT_5000"),
-                createButton(languageSessionService.getTranslation(chatId, "topup.button.amount_10000000"), "TOPUP_AMOUNT_10000000")
-        ));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, AMOUNT_KEYBOARD);
     }
 
-
     private InlineKeyboardMarkup createPaymentConfirmKeyboard(int attempts,Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        String buttonKey = attempts >= 2 ? "topup.button.send_screenshot" : "topup.button.confirm";
-        String callbackData = attempts >= 2 ? "TOPUP_SEND_SCREENSHOT" : "TOPUP_PAYMENT_CONFIRM";
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, buttonKey), callbackData)));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, attempts >= 2 ? SEND_SCREENSHOT_KEYBOARD : PAYMENT_CONFIRM_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createNavigationKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, NAVIGATION_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createMainMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "topup.button.topup_account"), "TOPUP")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "topup.button.withdraw"), "WITHDRAW")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "topup.button.bonus"), "BONUS")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "topup.button.contact"), "CONTACT")));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, MAIN_MENU_KEYBOARD);
     }
 
     private List<InlineKeyboardButton> createNavigationButtons(Long chatId) {
-        List<InlineKeyboardButton> buttons = new ArrayList<>();
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "topup.button.back"), "BACK"));
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "topup.button.home"), "HOME"));
-        return buttons;
+        return keyboardCatalog.row(chatId, NAVIGATION_KEYBOARD);
     }
 
     private InlineKeyboardButton createButton(String text, String callback) {
@@ -1391,15 +1149,4 @@ public class TopUpService {
     private boolean isValidCard(String card) {
         return card.replaceAll("\\s+", "").matches("\\d{16}");
     }
-
-
-    private String sha256Hex(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            return DatatypeConverter.printHexBinary(hash).toLowerCase();
-        } catch (Exception e) {
-            throw new RuntimeException("SHA-256 calculation failed", e);
-        }
-    }
 }
\ No newline at end of file
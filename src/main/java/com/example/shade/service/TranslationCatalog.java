@@ -0,0 +1,310 @@
+package com.example.shade.service;
+
+import com.example.shade.model.Language;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Formattable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The i18n bundles loaded once into flat per-language arrays. Every key gets an id that indexes those
+ * arrays, and every text is parsed up front into a {@link Template}, so a lookup is one map probe and
+ * formatting appends straight into a single builder instead of going through {@link String#format}.
+ * Only %s, %d, %,d, %% and %n are handled that way; anything else, or arguments of other types, is
+ * handed to {@link String#format} so the output never differs from it.
+ * <p>
+ * {@link #reload()} reads the bundles again and swaps them in at once; key ids stay stable across
+ * reloads. Missing keys render as "Translation not found for code: key", as they always did.
+ */
+@Service
+public class TranslationCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(TranslationCatalog.class);
+    private static final String MISSING_PREFIX = "Translation not found for code: ";
+
+    private final ResourceLoader resourceLoader;
+    private final String basename;
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder missing = new LongAdder();
+    private final LongAdder formats = new LongAdder();
+    private final LongAdder slowFormats = new LongAdder();
+    private final LongAdder formatNanos = new LongAdder();
+
+    public record Stats(long version, int keys, long lookups, long missing, long formats, long slowFormats,
+                        long averageFormatNanos, long loadMillis) {
+    }
+
+    private record Catalog(long version, Map<String, Integer> ids, Map<Language, Template[]> templates,
+                           NumberStyle numbers, long loadMillis) {
+    }
+
+    public TranslationCatalog(ResourceLoader resourceLoader,
+                              @Value("${translations.basename:classpath:i18n/messages}") String basename) {
+        this.resourceLoader = resourceLoader;
+        this.basename = basename;
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    /**
+     * Reads every bundle again and replaces the catalog. A bundle that can't be read leaves the current
+     * catalog in place.
+     */
+    public synchronized void reload() {
+        long start = System.nanoTime();
+        Catalog previous = catalog.get();
+        Map<String, Integer> ids = previous == null ? new HashMap<>() : new HashMap<>(previous.ids());
+        Map<Language, Properties> bundles = new EnumMap<>(Language.class);
+        for (Language language : Language.values()) {
+            Properties bundle = load(language);
+            bundle.stringPropertyNames().forEach(key -> ids.putIfAbsent(key, ids.size()));
+            bundles.put(language, bundle);
+        }
+        Map<Language, Template[]> templates = new EnumMap<>(Language.class);
+        bundles.forEach((language, bundle) -> {
+            Template[] values = new Template[ids.size()];
+            ids.forEach((key, id) -> {
+                String text = bundle.getProperty(key);
+                values[id] = Template.parse(text != null ? text : MISSING_PREFIX + key);
+            });
+            templates.put(language, values);
+        });
+        long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        catalog.set(new Catalog(previous == null ? 1 : previous.version() + 1, Map.copyOf(ids), templates,
+                NumberStyle.current(), loadMillis));
+        logger.info("Loaded {} translation keys for {} languages in {} ms", ids.size(), templates.size(), loadMillis);
+    }
+
+    /**
+     * The id of {@code key}, or -1 when no bundle has it. Ids don't change on reload.
+     */
+    public int id(String key) {
+        Integer id = catalog.get().ids().get(key);
+        return id != null ? id : -1;
+    }
+
+    public String text(Language language, String key) {
+        lookups.increment();
+        Template template = template(catalog.get(), language, key);
+        return template != null ? template.raw : MISSING_PREFIX + key;
+    }
+
+    /**
+     * Same result as {@code String.format(text(language, key), args)}.
+     */
+    public String format(Language language, String key, Object... args) {
+        long start = System.nanoTime();
+        lookups.increment();
+        formats.increment();
+        Catalog current = catalog.get();
+        Template template = template(current, language, key);
+        String result = template != null ? template.render(args, current.numbers()) : null;
+        if (result == null) {
+            slowFormats.increment();
+            result = String.format(template != null ? template.raw : MISSING_PREFIX + key, args);
+        }
+        formatNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Changes whenever the catalog is reloaded, so anything built from translations can tell it is stale.
+     */
+    public long version() {
+        return catalog.get().version();
+    }
+
+    public Stats getStats() {
+        Catalog current = catalog.get();
+        long formatCount = formats.sum();
+        return new Stats(current.version(), current.ids().size(), lookups.sum(), missing.sum(), formatCount,
+                slowFormats.sum(), formatCount == 0 ? 0 : formatNanos.sum() / formatCount, current.loadMillis());
+    }
+
+    private Template template(Catalog current, Language language, String key) {
+        Integer id = current.ids().get(key);
+        if (id == null) {
+            missing.increment();
+            return null;
+        }
+        return current.templates().get(language != null ? language : Language.UZ)[id];
+    }
+
+    private Properties load(Language language) {
+        Resource resource = resourceLoader.getResource(basename + "_" + language.getCode() + ".properties");
+        Properties bundle = new Properties();
+        try (Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+            bundle.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load translations from " + resource.getDescription(), e);
+        }
+        return bundle;
+    }
+
+    // What String.format uses for %d and %,d in the default locale; the fast path only writes ASCII digits
+    private record NumberStyle(boolean asciiDigits, char groupingSeparator, int groupingSize) {
+        static NumberStyle current() {
+            Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            NumberFormat integerFormat = NumberFormat.getIntegerInstance(locale);
+            int groupingSize = integerFormat instanceof DecimalFormat decimalFormat ? decimalFormat.getGroupingSize() : 0;
+            return new NumberStyle(symbols.getZeroDigit() == '0', symbols.getGroupingSeparator(), groupingSize);
+        }
+    }
+
+    /**
+     * A text split into literal parts around its arguments; literals has one more entry than
+     * conversions. A text with a conversion the fast path doesn't know keeps only raw.
+     */
+    static final class Template {
+        private static final char STRING = 's';
+        private static final char DECIMAL = 'd';
+        private static final char GROUPED_DECIMAL = ',';
+
+        private final String raw;
+        private final String[] literals;
+        private final char[] conversions;
+
+        private Template(String raw, String[] literals, char[] conversions) {
+            this.raw = raw;
+            this.literals = literals;
+            this.conversions = conversions;
+        }
+
+        static Template parse(String raw) {
+            List<String> literals = new ArrayList<>();
+            StringBuilder conversions = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (c != '%') {
+                    literal.append(c);
+                    continue;
+                }
+                String rest = raw.substring(i + 1, Math.min(raw.length(), i + 3));
+                if (rest.startsWith("%")) {
+                    literal.append('%');
+                    i++;
+                } else if (rest.startsWith("n")) {
+                    literal.append(System.lineSeparator());
+                    i++;
+                } else if (rest.startsWith("s") || rest.startsWith("d")) {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    conversions.append(rest.charAt(0));
+                    i++;
+                } else if (rest.equals(",d")) {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    conversions.append(GROUPED_DECIMAL);
+                    i += 2;
+                } else {
+                    return new Template(raw, null, null);
+                }
+            }
+            literals.add(literal.toString());
+            return new Template(raw, literals.toArray(String[]::new), conversions.toString().toCharArray());
+        }
+
+        /**
+         * The formatted text, or null when String.format has to do it: unknown conversions, too few
+         * arguments (so it throws as before) or arguments the fast path doesn't write.
+         */
+        String render(Object[] args, NumberStyle numbers) {
+            if (literals == null) {
+                return null;
+            }
+            if (conversions.length == 0) {
+                return literals[0];
+            }
+            if (args == null || args.length < conversions.length) {
+                return null;
+            }
+            StringBuilder out = new StringBuilder(raw.length() + 16 * conversions.length);
+            for (int i = 0; i < conversions.length; i++) {
+                out.append(literals[i]);
+                if (!append(out, conversions[i], args[i], numbers)) {
+                    return null;
+                }
+            }
+            return out.append(literals[conversions.length]).toString();
+        }
+
+        private static boolean append(StringBuilder out, char conversion, Object arg, NumberStyle numbers) {
+            if (arg == null) {
+                out.append("null");
+                return true;
+            }
+            if (conversion == STRING) {
+                if (arg instanceof Formattable) {
+                    return false;
+                }
+                out.append(arg);
+                return true;
+            }
+            if (!numbers.asciiDigits()) {
+                return false;
+            }
+            if (conversion == DECIMAL && arg instanceof BigInteger integer && integer.signum() >= 0) {
+                out.append(integer);
+                return true;
+            }
+            if (!(arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte)) {
+                return false;
+            }
+            long value = ((Number) arg).longValue();
+            // Negative numbers take the locale's minus sign
+            if (value < 0) {
+                return false;
+            }
+            if (conversion == DECIMAL) {
+                out.append(value);
+                return true;
+            }
+            if (numbers.groupingSize() <= 0) {
+                return false;
+            }
+            appendGrouped(out, value, numbers);
+            return true;
+        }
+
+        private static void appendGrouped(StringBuilder out, long value, NumberStyle numbers) {
+            String digits = Long.toString(value);
+            int firstGroup = digits.length() % numbers.groupingSize();
+            if (firstGroup == 0) {
+                firstGroup = numbers.groupingSize();
+            }
+            out.append(digits, 0, firstGroup);
+            for (int i = firstGroup; i < digits.length(); i += numbers.groupingSize()) {
+                out.append(numbers.groupingSeparator()).append(digits, i, i + numbers.groupingSize());
+            }
+        }
+    }
+}
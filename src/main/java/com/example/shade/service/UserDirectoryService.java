@@ -0,0 +1,119 @@
+package com.example.shade.service;
+
+import com.example.shade.model.AdminChat;
+import com.example.shade.model.BlockedUser;
+import com.example.shade.model.Language;
+import com.example.shade.model.User;
+import com.example.shade.repository.AdminChatRepository;
+import com.example.shade.repository.BlockedUserRepository;
+import com.example.shade.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the bot needs to know about a chat before routing an update: whether it is blocked, its phone
+ * number, language and whether it is an admin chat. Entries are warmed up at startup, loaded on first
+ * sight of a new chat, and dropped by {@link #invalidate(Long)} whenever one of the underlying rows is
+ * written, so the common update path doesn't touch the database.
+ */
+@Service
+@RequiredArgsConstructor
+public class UserDirectoryService {
+    private static final Logger logger = LoggerFactory.getLogger(UserDirectoryService.class);
+    private static final String BLOCKED = "BLOCKED";
+
+    private final BlockedUserRepository blockedUserRepository;
+    private final UserRepository userRepository;
+    private final AdminChatRepository adminChatRepository;
+
+    private final Map<Long, UserEntry> entries = new ConcurrentHashMap<>();
+    // Chats invalidated since the warm-up snapshot started being read; null when no warm-up is running
+    private volatile Set<Long> invalidatedDuringWarmUp;
+
+    /**
+     * {@code registered} means a blocked_user row exists, which is created on first contact and later
+     * holds the phone number (or "BLOCKED").
+     */
+    public record UserEntry(boolean registered, String phoneNumber, Language language, boolean admin) {
+        public boolean isBlocked() {
+            return BLOCKED.equals(phoneNumber);
+        }
+
+        public boolean hasPhoneNumber() {
+            return phoneNumber != null && !isBlocked();
+        }
+    }
+
+    public UserEntry get(Long chatId) {
+        return entries.computeIfAbsent(chatId, this::load);
+    }
+
+    public String getPhoneNumber(Long chatId) {
+        return get(chatId).phoneNumber();
+    }
+
+    public void invalidate(Long chatId) {
+        Set<Long> invalidated = invalidatedDuringWarmUp;
+        if (invalidated != null) {
+            invalidated.add(chatId);
+        }
+        entries.remove(chatId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Set<Long> invalidated = ConcurrentHashMap.newKeySet();
+        invalidatedDuringWarmUp = invalidated;
+        try {
+            warmUp(invalidated);
+        } finally {
+            invalidatedDuringWarmUp = null;
+        }
+    }
+
+    private void warmUp(Set<Long> invalidated) {
+        Map<Long, String> phones = new HashMap<>();
+        for (BlockedUser user : blockedUserRepository.findAll()) {
+            phones.put(user.getChatId(), user.getPhoneNumber());
+        }
+        Map<Long, Language> languages = new HashMap<>();
+        for (User user : userRepository.findAll()) {
+            languages.put(user.getChatId(), user.getLanguage());
+        }
+        Map<Long, Boolean> admins = new HashMap<>();
+        for (AdminChat adminChat : adminChatRepository.findAll()) {
+            admins.put(adminChat.getChatId(), true);
+        }
+
+        Map<Long, Boolean> chatIds = new HashMap<>(admins);
+        phones.keySet().forEach(chatId -> chatIds.put(chatId, true));
+        languages.keySet().forEach(chatId -> chatIds.put(chatId, true));
+        for (Long chatId : chatIds.keySet()) {
+            // Entries loaded while warming up are newer than this snapshot, and so is the database for
+            // chats invalidated meanwhile. invalidate() records the chat before removing its entry, so
+            // whichever side runs second drops the stale one.
+            UserEntry entry = new UserEntry(phones.containsKey(chatId), phones.get(chatId),
+                    languages.get(chatId), admins.containsKey(chatId));
+            if (entries.putIfAbsent(chatId, entry) == null && invalidated.contains(chatId)) {
+                entries.remove(chatId, entry);
+            }
+        }
+        logger.info("User directory warmed up with {} chats", chatIds.size());
+    }
+
+    private UserEntry load(Long chatId) {
+        BlockedUser user = blockedUserRepository.findById(chatId).orElse(null);
+        Language language = userRepository.findByChatId(chatId).map(User::getLanguage).orElse(null);
+        return new UserEntry(user != null, user != null ? user.getPhoneNumber() : null, language,
+                adminChatRepository.existsById(chatId));
+    }
+}
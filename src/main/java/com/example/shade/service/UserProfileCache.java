@@ -0,0 +1,145 @@
+package com.example.shade.service;
+
+import com.example.shade.model.Platform;
+import com.example.shade.model.UserProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cashdesk user profiles by platform and platform user id, so a returning user picking a saved id
+ * doesn't wait on the Users endpoint again. Profiles are kept for cashdesk.profile-cache.ttl-minutes;
+ * ids the cashdesk doesn't know are remembered as missing for cashdesk.profile-cache.negative-ttl-seconds
+ * and come back as null. Concurrent lookups of the same id share one request, and other failures are
+ * never cached. Everything cached is dropped when the platforms in the registry change, since the
+ * credentials may have.
+ */
+@Service
+public class UserProfileCache {
+    private static final Logger logger = LoggerFactory.getLogger(UserProfileCache.class);
+
+    private final CashdeskClient cashdeskClient;
+    private final PlatformRegistry platformRegistry;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int maxEntries;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<UserProfile>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private record Key(Long platformId, String userId) {
+    }
+
+    // profile is null for an id the cashdesk doesn't know
+    private record Entry(UserProfile profile, long registryVersion, long expiresAt) {
+    }
+
+    public record Stats(int size, int inFlight, long hits, long negativeHits, long misses, long joined,
+                        long prefetches, long failures) {
+    }
+
+    public UserProfileCache(CashdeskClient cashdeskClient,
+                            PlatformRegistry platformRegistry,
+                            @Value("${cashdesk.profile-cache.ttl-minutes:30}") long ttlMinutes,
+                            @Value("${cashdesk.profile-cache.negative-ttl-seconds:60}") long negativeTtlSeconds,
+                            @Value("${cashdesk.profile-cache.max-entries:20000}") int maxEntries) {
+        this.cashdeskClient = cashdeskClient;
+        this.platformRegistry = platformRegistry;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * The user's profile, or null when the cashdesk has no such user. Other API errors fail the future
+     * as {@link CashdeskClient#findUser} does.
+     */
+    public CompletableFuture<UserProfile> lookup(Platform platform, String userId) {
+        Key key = new Key(platform.getId(), userId);
+        long version = platformRegistry.version();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.registryVersion() == version && entry.expiresAt() - System.nanoTime() > 0) {
+            (entry.profile() != null ? hits : negativeHits).increment();
+            return CompletableFuture.completedFuture(entry.profile());
+        }
+        CompletableFuture<UserProfile> created = new CompletableFuture<>();
+        CompletableFuture<UserProfile> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            joined.increment();
+            return running;
+        }
+        misses.increment();
+        cashdeskClient.findUser(platform, userId).whenComplete((profile, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause == null || cause instanceof HttpClientErrorException.NotFound) {
+                UserProfile found = cause == null ? profile : null;
+                boolean known = found != null && found.getUserId() != null;
+                entries.put(key, new Entry(found, version, System.nanoTime() + (known ? ttlNanos : negativeTtlNanos)));
+                inFlight.remove(key, created);
+                created.complete(found);
+            } else {
+                failures.increment();
+                inFlight.remove(key, created);
+                created.completeExceptionally(cause);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Starts lookups for the saved ids shown to a user so picking one is answered from the cache.
+     * Platforms that don't go through the cashdesk are skipped.
+     */
+    public void prefetch(String platformName, Collection<String> userIds) {
+        Platform platform = platformRegistry.findByName(platformName).orElse(null);
+        if (platform == null || "mostbet".equals(platform.getType())) {
+            return;
+        }
+        userIds.stream().distinct().forEach(userId -> {
+            prefetches.increment();
+            lookup(platform, userId).exceptionally(e -> {
+                logger.debug("Prefetch of user {} on platform {} failed: {}", userId, platformName, e.toString());
+                return null;
+            });
+        });
+    }
+
+    public Stats getStats() {
+        return new Stats(entries.size(), inFlight.size(), hits.sum(), negativeHits.sum(), misses.sum(), joined.sum(),
+                prefetches.sum(), failures.sum());
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void evictExpired() {
+        long now = System.nanoTime();
+        long version = platformRegistry.version();
+        entries.values().removeIf(entry -> entry.expiresAt() - now <= 0 || entry.registryVersion() != version);
+        int excess = entries.size() - maxEntries;
+        if (excess > 0) {
+            entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().expiresAt() - now))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(entries::remove);
+        }
+    }
+}
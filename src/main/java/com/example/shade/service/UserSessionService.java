@@ -1,96 +1,356 @@
 package com.example.shade.service;
 
-import com.example.shade.model.UserSession;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * In-memory conversation state per chat. Sessions idle for longer than session.ttl-minutes are evicted,
+ * the number of sessions is capped at session.max-sessions (least recently used go first), and only the
+ * last {@link #MAX_MESSAGE_IDS} message ids are remembered per chat, so memory stays flat no matter how
+ * many users have ever talked to the bot.
+ * <p>
+ * State, data and navigation are written behind to session_data: changed sessions are collected and
+ * flushed in batches every session.flush-ms, and a chat that is not in memory is restored from the
+ * database on first access, so a restart doesn't drop users out of a payment flow. Message ids are not
+ * persisted.
+ */
 @Service
 public class UserSessionService {
-    private final Map<Long, UserSession> sessionStore = new ConcurrentHashMap<>();
-    private final Map<Long, Map<String, String>> sessionDataStore = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(UserSessionService.class);
+    static final int MAX_MESSAGE_IDS = 50;
+    // Data keys used by the flows never start with '@'
+    private static final String STATE_KEY = "@state";
+    private static final String NAVIGATION_KEY_PREFIX = "@nav.";
+
+    private final SessionPersistenceService persistence;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    // Sessions changed since the last flush, and those being written right now. Until their write
+    // commits they are newer than the database, so a chat is restored from here first.
+    private final Map<Long, Session> dirty = new ConcurrentHashMap<>();
+    private final Map<Long, Session> flushing = new ConcurrentHashMap<>();
+    // Kept apart from the capacity lock so a slow write never blocks the update path
+    private final Object flushLock = new Object();
+    private final long ttlNanos;
+    private final int maxSessions;
+    private final int flushBatchSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder persistFailures = new LongAdder();
+
+    public record Stats(int size, long hits, long misses, long restored, long expired, long evicted,
+                        int pendingWrites, long persisted, long persistFailures) {
+    }
+
+    public UserSessionService(SessionPersistenceService persistence,
+                              @Value("${session.ttl-minutes:180}") long ttlMinutes,
+                              @Value("${session.max-sessions:50000}") int maxSessions,
+                              @Value("${session.flush-batch-size:500}") int flushBatchSize) {
+        this.persistence = persistence;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.maxSessions = maxSessions;
+        this.flushBatchSize = flushBatchSize;
+    }
 
     public void setUserState(Long chatId, String state) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        session.setState(state);
-        sessionStore.put(chatId, session);
+        Session session = session(chatId);
+        session.state = state;
+        changed(chatId, session);
     }
 
     public String getUserState(Long chatId) {
-        return Optional.ofNullable(sessionStore.get(chatId))
-                .map(UserSession::getState)
-                .orElse(null);
+        return session(chatId).state;
     }
 
     public void setUserData(Long chatId, String key, String value) {
-        Map<String, String> data = sessionDataStore.computeIfAbsent(chatId, k -> new HashMap<>());
-        data.put(key, value);
-        sessionDataStore.put(chatId, data);
+        Session session = session(chatId);
+        if (value == null) {
+            session.data.remove(key);
+        } else {
+            session.data.put(key, value);
+        }
+        changed(chatId, session);
     }
+
     public String getUserData(Long chatId, String key, String defaultValue) {
-        return Optional.ofNullable(sessionDataStore.get(chatId))
-                .map(data -> data.getOrDefault(key, defaultValue))
-                .orElse(defaultValue);
+        return session(chatId).data.getOrDefault(key, defaultValue);
     }
 
     public String getUserData(Long chatId, String key) {
-        return Optional.ofNullable(sessionDataStore.get(chatId))
-                .map(data -> data.get(key))
-                .orElse(null);
+        return getUserData(chatId, key, null);
     }
 
     public void addNavigationState(Long chatId, String state) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        List<String> navigationStates = session.getNavigationStates();
-        navigationStates.add(state);
-        session.setNavigationStates(navigationStates);
-        sessionStore.put(chatId, session);
+        Session session = session(chatId);
+        synchronized (session) {
+            session.navigationStates.addLast(state);
+        }
+        changed(chatId, session);
     }
 
     public String popNavigationState(Long chatId) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        List<String> navigationStates = session.getNavigationStates();
-        if (navigationStates.isEmpty()) {
-            return null;
+        Session session = session(chatId);
+        String state;
+        synchronized (session) {
+            state = session.navigationStates.pollLast();
+        }
+        if (state != null) {
+            changed(chatId, session);
         }
-        String lastState = navigationStates.remove(navigationStates.size() - 1);
-        session.setNavigationStates(navigationStates);
-        sessionStore.put(chatId, session);
-        return lastState;
+        return state;
     }
 
     public void clearSession(Long chatId) {
-        sessionStore.remove(chatId);
-        sessionDataStore.remove(chatId);
+        sessions.remove(chatId);
+        // An empty session makes the next flush delete the stored rows
+        dirty.put(chatId, new Session());
     }
 
     public List<Integer> getMessageIds(Long chatId) {
-        return Optional.ofNullable(sessionStore.get(chatId))
-                .map(UserSession::getMessageIds)
-                .orElse(new ArrayList<>());
+        Session session = session(chatId);
+        synchronized (session) {
+            return new ArrayList<>(session.messageIds);
+        }
+    }
+
+    /**
+     * Remembers a message sent to the chat so it can be cleaned up later; the oldest id is dropped once
+     * {@link #MAX_MESSAGE_IDS} are held.
+     */
+    public void addMessageId(Long chatId, Integer messageId) {
+        Session session = session(chatId);
+        synchronized (session) {
+            if (session.messageIds.size() >= MAX_MESSAGE_IDS) {
+                session.messageIds.pollFirst();
+            }
+            session.messageIds.addLast(messageId);
+        }
+    }
+
+    /**
+     * Like {@link #addMessageId} but only for a session that is already cached: never restores or creates one,
+     * so bulk sends to every user don't load their sessions and push active ones out of the cache.
+     */
+    public void addMessageIdIfResident(Long chatId, Integer messageId) {
+        Session session = sessions.get(chatId);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            if (session.messageIds.size() >= MAX_MESSAGE_IDS) {
+                session.messageIds.pollFirst();
+            }
+            session.messageIds.addLast(messageId);
+        }
     }
 
     public void clearMessageIds(Long chatId) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        session.setMessageIds(new ArrayList<>());
-        sessionStore.put(chatId, session);
+        Session session = session(chatId);
+        synchronized (session) {
+            session.messageIds.clear();
+        }
     }
 
-    public Optional<UserSession> getUserSession(Long chatId) {
-        return Optional.ofNullable(sessionStore.get(chatId));
+    public Stats getStats() {
+        return new Stats(sessions.size(), hits.sum(), misses.sum(), restored.sum(), expired.sum(), evicted.sum(),
+                dirty.size() + flushing.size(), persisted.sum(), persistFailures.sum());
     }
 
-    public void saveUserSession(UserSession session) {
-        if (session.getChatId() != null) {
-            sessionStore.put(session.getChatId(), session);
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void evictIdleSessions() {
+        long cutoff = System.nanoTime() - ttlNanos;
+        sessions.entrySet().removeIf(entry -> {
+            if (entry.getValue().lastAccess - cutoff < 0) {
+                if (!entry.getValue().isEmpty()) {
+                    dirty.put(entry.getKey(), new Session());
+                }
+                expired.increment();
+                return true;
+            }
+            return false;
+        });
+        enforceCapacity();
+        Stats stats = getStats();
+        logger.debug("Sessions: {} live, {} hits, {} misses, {} restored, {} expired, {} evicted, {} pending writes",
+                stats.size(), stats.hits(), stats.misses(), stats.restored(), stats.expired(), stats.evicted(),
+                stats.pendingWrites());
+    }
+
+    @Scheduled(fixedDelayString = "${session.flush-ms:500}", initialDelayString = "${session.flush-ms:500}")
+    public void flush() {
+        synchronized (flushLock) {
+            flushPending();
+        }
+    }
+
+    private void flushPending() {
+        while (!dirty.isEmpty()) {
+            Map<Long, Session> batch = new LinkedHashMap<>();
+            for (Map.Entry<Long, Session> entry : dirty.entrySet()) {
+                if (batch.size() >= flushBatchSize) {
+                    break;
+                }
+                // Published in flushing before leaving dirty so a concurrent restore always sees one of them
+                flushing.put(entry.getKey(), entry.getValue());
+                dirty.remove(entry.getKey(), entry.getValue());
+                batch.put(entry.getKey(), entry.getValue());
+            }
+            // Taken after leaving dirty: a change made from here on marks the session dirty again
+            Map<Long, Map<String, String>> snapshots = new HashMap<>();
+            batch.forEach((chatId, session) -> snapshots.put(chatId, session.snapshot()));
+            try {
+                persistence.write(snapshots);
+                persisted.add(snapshots.size());
+            } catch (Exception e) {
+                logger.error("Failed to persist {} sessions, writing them one by one", snapshots.size(), e);
+                snapshots.forEach(this::writeOne);
+            } finally {
+                batch.forEach(flushing::remove);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        logger.info("Session state flushed before shutdown");
+    }
+
+    private void writeOne(Long chatId, Map<String, String> snapshot) {
+        try {
+            persistence.write(Map.of(chatId, snapshot));
+            persisted.increment();
+        } catch (Exception e) {
+            // Dropped rather than retried forever; the in-memory session is still intact
+            persistFailures.increment();
+            logger.error("Failed to persist session for chatId {}", chatId, e);
+        }
+    }
+
+    private void changed(Long chatId, Session session) {
+        dirty.put(chatId, session);
+    }
+
+    private Session session(Long chatId) {
+        Session session = sessions.get(chatId);
+        if (session != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            Session loaded = restore(chatId);
+            session = sessions.putIfAbsent(chatId, loaded);
+            if (session == null) {
+                session = loaded;
+            }
+            if (sessions.size() > maxSessions + maxSessions / 10) {
+                enforceCapacity();
+            }
+        }
+        session.touch();
+        return session;
+    }
+
+    private Session restore(Long chatId) {
+        Session pending = dirty.get(chatId);
+        if (pending == null) {
+            pending = flushing.get(chatId);
+        }
+        if (pending != null) {
+            return pending;
+        }
+        try {
+            Map<String, String> stored = persistence.load(chatId);
+            if (!stored.isEmpty()) {
+                restored.increment();
+            }
+            return Session.of(stored);
+        } catch (Exception e) {
+            logger.error("Failed to restore session for chatId {}, starting a new one", chatId, e);
+            return new Session();
+        }
+    }
+
+    private synchronized void enforceCapacity() {
+        int excess = sessions.size() - maxSessions;
+        if (excess <= 0) {
+            return;
+        }
+        // Copy the access times first; they keep moving while we sort. Evicted sessions stay in the
+        // database and come back on their next access.
+        sessions.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().lastAccess))
+                .sorted(Map.Entry.comparingByValue())
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(chatId -> {
+                    sessions.remove(chatId);
+                    evicted.increment();
+                });
+    }
+
+    private static final class Session {
+        private volatile String state;
+        private volatile long lastAccess = System.nanoTime();
+        private final Map<String, String> data = new ConcurrentHashMap<>();
+        // Guarded by the session's monitor
+        private final Deque<String> navigationStates = new ArrayDeque<>();
+        private final Deque<Integer> messageIds = new ArrayDeque<>();
+
+        static Session of(Map<String, String> stored) {
+            Session session = new Session();
+            Map<Integer, String> navigation = new HashMap<>();
+            stored.forEach((key, value) -> {
+                if (STATE_KEY.equals(key)) {
+                    session.state = value;
+                } else if (key.startsWith(NAVIGATION_KEY_PREFIX)) {
+                    navigation.put(Integer.parseInt(key.substring(NAVIGATION_KEY_PREFIX.length())), value);
+                } else {
+                    session.data.put(key, value);
+                }
+            });
+            navigation.keySet().stream().sorted()
+                    .forEach(index -> session.navigationStates.addLast(navigation.get(index)));
+            return session;
+        }
+
+        synchronized Map<String, String> snapshot() {
+            Map<String, String> values = new HashMap<>(data);
+            if (state != null) {
+                values.put(STATE_KEY, state);
+            }
+            int index = 0;
+            for (String navigationState : navigationStates) {
+                values.put(NAVIGATION_KEY_PREFIX + index++, navigationState);
+            }
+            return values;
+        }
+
+        synchronized boolean isEmpty() {
+            return state == null && data.isEmpty() && navigationStates.isEmpty();
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
         }
     }
-}
\ No newline at end of file
+}
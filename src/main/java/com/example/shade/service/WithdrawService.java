@@ -1,50 +1,61 @@
 package com.example.shade.service;
 
 import com.example.shade.bot.MessageSender;
+import com.example.shade.bot.UpdateDispatcher;
 import com.example.shade.model.*;
 import com.example.shade.model.Currency;
-import com.example.shade.repository.BlockedUserRepository;
-import com.example.shade.repository.ExchangeRateRepository;
 import com.example.shade.repository.HizmatRequestRepository;
-import com.example.shade.repository.PlatformRepository;
+import com.example.shade.service.KeyboardCatalog.Button;
+import com.example.shade.service.KeyboardCatalog.Layout;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.util.DigestUtils;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
-
 @Service
 @RequiredArgsConstructor
 public class WithdrawService {
     private static final Logger logger = LoggerFactory.getLogger(WithdrawService.class);
+    private static final List<Button> NAVIGATION_ROW = List.of(
+            Button.translated("withdraw.button.back", "BACK"), Button.translated("withdraw.button.home", "HOME"));
+    private static final Layout NAVIGATION_KEYBOARD = Layout.of(NAVIGATION_ROW);
+    private static final Layout MAIN_MENU_KEYBOARD = Layout.of(
+            List.of(Button.translated("withdraw.button.topup", "TOPUP")),
+            List.of(Button.translated("withdraw.button.withdraw", "WITHDRAW")),
+            List.of(Button.translated("withdraw.button.bonus", "BONUS")),
+            List.of(Button.translated("withdraw.button.contact", "CONTACT")));
+    private static final Layout PLATFORM_KEYBOARD = Layout.platforms("WITHDRAW_PLATFORM:",
+            Button.literal("🇺🇿 %s", null), Button.literal("🇷🇺 %s", null), NAVIGATION_ROW);
+    private static final Layout APPROVAL_KEYBOARD = Layout.of(
+            List.of(Button.translated("withdraw.button.approve", "WITHDRAW_APPROVE_USER"),
+                    Button.translated("withdraw.button.reject", "WITHDRAW_REJECT_USER")),
+            NAVIGATION_ROW);
     private final UserSessionService sessionService;
     private final HizmatRequestRepository requestRepository;
-    private final ExchangeRateRepository exchangeRateRepository;
-    private final PlatformRepository platformRepository;
+    private final RequestRollupService requestRollupService;
+    private final ExchangeRateService exchangeRateService;
+    private final PlatformRegistry platformRegistry;
     private final MessageSender messageSender;
     private final AdminLogBotService adminLogBotService;
     private final LanguageSessionService languageSessionService;
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final BlockedUserRepository blockedUserRepository;
+    private final KeyboardCatalog keyboardCatalog;
+    private final UserProfileCache userProfileCache;
+    private final PlatformOperationService platformOperationService;
+    private final UpdateDispatcher updateDispatcher;
+    private final UserDirectoryService userDirectory;
     private final MostbetService mostbetService;
 
     public void startWithdrawal(Long chatId) {
@@ -133,11 +144,7 @@ public class WithdrawService {
     }
 
     private InlineKeyboardMarkup createBonusMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, NAVIGATION_KEYBOARD);
     }
 
     public void handleBack(Long chatId) {
@@ -189,11 +196,11 @@ public class WithdrawService {
         String cardNumber = request.getCardNumber();
         String code = request.getTransactionId();
         Long chatId = request.getChatId();
-        String number = blockedUserRepository.findByChatId(chatId).get().getPhoneNumber();
+        String number = userDirectory.getPhoneNumber(chatId);
 
         if (approve) {
             request.setStatus(RequestStatus.APPROVED);
-            requestRepository.save(request);
+            requestRollupService.save(request);
 
             String logMessage = String.format(
                     "\uD83C\uDD94: %s Pul yechib olish tasdiqlandi ✅\n" +
@@ -212,8 +219,7 @@ public class WithdrawService {
             );
             adminLogBotService.sendLog(logMessage);
 
-            String message = String.format(
-                    languageSessionService.getTranslation(chatId, "withdraw.message.withdraw_approved"),
+            String message = languageSessionService.format(chatId, "withdraw.message.withdraw_approved",
                     request.getId(), platform, userId, cardNumber, code, request.getUniqueAmount(),
                     LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
             );
@@ -223,7 +229,7 @@ public class WithdrawService {
 
         } else {
             request.setStatus(RequestStatus.CANCELED);
-            requestRepository.save(request);
+            requestRollupService.save(request);
 
             String logMessage = String.format(
                     "Pul \n\n 📋 \uD83C\uDD94: %s  Pul yechib olish rad etildi ❌\n" +
@@ -239,8 +245,7 @@ public class WithdrawService {
             );
             adminLogBotService.sendLog(logMessage);
 
-            messageSender.sendMessage(chatId, String.format(
-                    languageSessionService.getTranslation(chatId, "withdraw.message.withdraw_rejected"),
+            messageSender.sendMessage(chatId, languageSessionService.format(chatId, "withdraw.message.withdraw_rejected",
                     request.getId(), request.getUniqueAmount(),
                     LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
             ));
@@ -249,77 +254,27 @@ public class WithdrawService {
         logger.info("Admin chatId {} {} withdraw requestId {}", adminChatId, approve ? "approved" : "rejected", requestId);
     }
 
-    private BigDecimal processPayout(Long chatId, String platformName, String userId, String code, Long requestId, String cardNumber)  {
-        Platform platform = platformRepository.findByName(platformName.replace("_", ""))
+    /**
+     * Moves the request to PENDING_ADMIN and queues its payout in the same transaction. Empty if the
+     * platform can't take payouts or the request had changed in the meantime; the user has been told.
+     */
+    private Optional<PlatformOperation> submitPayout(Long chatId, String platformName, String userId, String code, String cardNumber,
+                                                     HizmatRequest request) {
+        Platform platform = platformRegistry.findByName(platformName.replace("_", ""))
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
 
-        if (platform.getType().equals("mostbet")) {
-            try {
-                MostbetService.WithdrawalResult withdrawalResult = mostbetService.withdrawMoney(
-                        platform.getApiKey(),
-                        platform.getSecret(),
-                        platform.getWorkplaceId(),
-                        userId,
-                        code
-                );
-
-                // Check if the API call was successful and the transaction is completed
-                if (withdrawalResult != null && "COMPLETED".equalsIgnoreCase(withdrawalResult.status())) {
-                    BigDecimal amountWithdrawn = BigDecimal.valueOf(withdrawalResult.amount());
-
-                    logger.info("✅ Mostbet Payout successful for userId {} on platform {}, amount={}, requestId: {}",
-                            userId, platformName, amountWithdrawn, requestId);
-
-                    // Return the amount withdrawn, which is the successful outcome
-                    return amountWithdrawn;
-                } else {
-                    // Handle cases where the transaction was created but not completed (e.g., status is 'NEW' or 'PROCESSING')
-                    String status = (withdrawalResult != null) ? withdrawalResult.status() : "UNKNOWN";
-                    logger.warn("❌ Mostbet Payout for userId {} on platform {} did not complete. Final status: {}", userId, platformName, status);
-
-                    // Fetch the request to format a detailed failure message for the user
-                    HizmatRequest request = requestRepository.findById(requestId).orElse(null);
-                    String errorMsg = "Platform returned status: " + status;
-                    String cancelLogMessage = String.format(
-                            languageSessionService.getTranslation(chatId, "withdraw.message.payout_failed"),
-                            request != null ? request.getId() : requestId, cardNumber, platform.getName(), userId, code, errorMsg,
-                            LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                    );
-                    messageSender.sendMessage(chatId, cancelLogMessage);
-                    sendMainMenu(chatId);
-                    return null;
-                }
-
-            } catch (Exception e) {
-                // Handle any exceptions thrown by the service (e.g., user not found, signature error, network issues)
-                logger.error("❌ Mostbet Payout failed for userId {} on platform {} with an exception:", userId, platformName, e);
-
-                // Re-use the existing detailed error message logic
-                HizmatRequest request = requestRepository.findById(requestId).orElse(null);
-                String errorMsg = e.getMessage(); // Get the specific error from the exception
-                String cancelLogMessage = String.format(
-                        languageSessionService.getTranslation(chatId, "withdraw.message.payout_failed"),
-                        request != null ? request.getId() : requestId, cardNumber, platform.getName(), userId, code, errorMsg,
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-
-                messageSender.sendMessage(chatId, cancelLogMessage);
-                sendMainMenu(chatId);
-                return null;
-            }
-            // --- END OF MOSTBET IMPLEMENTATION ---
-
-        } else {
+        String lng = null;
+        if (!platform.getType().equals("mostbet")) {
             String hash = platform.getApiKey();
             String cashierPass = platform.getPassword();
             String cashdeskId = platform.getWorkplaceId();
-            String lng = "uz";
+            lng = "uz";
 
             if (hash == null || cashierPass == null || cashdeskId == null || hash.isEmpty() || cashierPass.isEmpty() || cashdeskId.isEmpty()) {
                 logger.error("Invalid platform credentials for platform {}: hash={}, cashierPass={}, cashdeskId={}",
                         platformName, hash, cashierPass, cashdeskId);
                 messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.platform_credentials_error"));
-                return null;
+                return Optional.empty();
             }
 
             try {
@@ -327,84 +282,78 @@ public class WithdrawService {
             } catch (NumberFormatException e) {
                 logger.error("Invalid cashdeskId format for platform {}: {}", platformName, cashdeskId);
                 messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.platform_credentials_error"));
-                return null;
+                return Optional.empty();
             }
+        }
 
-            String confirm = DigestUtils.md5DigestAsHex((userId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-            String sha256Input1 = "hash=" + hash + "&lng=" + lng + "&userid=" + userId;
-            String sha256Result1 = sha256Hex(sha256Input1);
-            String md5Input = "code=" + code + "&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId;
-            String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-            String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-            String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Deposit/%s/Payout", userId);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("sign", finalSignature);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            Map<String, Object> body = new HashMap<>();
-            body.put("cashdeskId", Integer.parseInt(cashdeskId));
-            body.put("lng", lng);
-            body.put("code", code);
-            body.put("confirm", confirm);
-
-            try {
-                HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-                ResponseEntity<Map> response = restTemplate.exchange(apiUrl, HttpMethod.POST, entity, Map.class);
-                Map<String, Object> responseBody = response.getBody();
-
-                Object successObj = responseBody != null ? responseBody.get("success") : null;
-                if (successObj == null && responseBody != null) {
-                    successObj = responseBody.get("Success");
-                }
-                HizmatRequest request = requestRepository.findById(requestId)
-                        .orElse(null);
-                String errorMsg = responseBody != null && responseBody.get("Message") != null
-                        ? responseBody.get("Message").toString()
-                        : "Platformdan noto‘g‘ri javob qaytdi.";
-
-                String cancelLogMessage = String.format(
-                        languageSessionService.getTranslation(chatId, "withdraw.message.payout_failed"),
-                        request.getId(), cardNumber, platform.getName(), userId, code, errorMsg,
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-                if (response.getStatusCode().is2xxSuccessful() && Boolean.TRUE.equals(successObj)) {
-                    Object summaObj = responseBody.get("Summa");
-                    BigDecimal summa = null;
-                    if (summaObj != null) {
-                        try {
-                            summa = new BigDecimal(summaObj.toString());
-                        } catch (NumberFormatException e) {
-                            logger.warn("Failed to parse summa value: {}", summaObj);
-                        }
-                    }
-
-                    logger.info("✅ Payout successful for userId {} on platform {}, summa={}, requestId: {}", userId, platformName, summa, requestId);
-                    return summa;
-                } else {
-                    logger.warn("❌ Payout failed for userId {} on platform {}, response: {}", userId, platformName, responseBody);
-                    messageSender.sendMessage(chatId, cancelLogMessage);
-                    sendMainMenu(chatId);
-                    return null;
-                }
-            } catch (HttpClientErrorException e) {
-                String errorMsg = e.getStatusCode().value() == 401 ? "Invalid signature" :
-                        e.getStatusCode().value() == 403 ? "Invalid confirm" : "API xatosi: " + e.getMessage();
-                logger.error("Payout API error for userId {} on platform {}: {}", userId, platformName, e.getMessage());
-                messageSender.sendMessage(chatId, String.format(languageSessionService.getTranslation(chatId, "withdraw.message.api_error"), errorMsg));
-                adminLogBotService.sendToAdmins("❌ Payout API error: " + errorMsg + " for requestId " + requestId);
-                sendMainMenu(chatId);
-                return null;
-            } catch (Exception e) {
-                logger.error("Unexpected error during payout for userId {} on platform {}: {}", userId, platformName, e.getMessage());
-                messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.unknown_error"));
-                adminLogBotService.sendToAdmins("❌ Payout API error: Unexpected error for requestId " + requestId);
-                sendMainMenu(chatId);
-                return null;
+        Optional<PlatformOperation> submitted = platformOperationService.submitPayout(request.getId(), request.getStatus(), r -> {
+            r.setTransactionId(code);
+            if (cardNumber != null) {
+                r.setCardNumber(cardNumber);
             }
+            r.setStatus(RequestStatus.PENDING_ADMIN);
+        }, platform, userId, code, lng);
+        if (submitted.isEmpty()) {
+            logger.warn("Withdraw request {} changed before its payout was queued, chatId {}", request.getId(), chatId);
+            messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.request_not_found"));
+            sendMainMenu(chatId);
         }
+        return submitted;
+    }
+
+    /**
+     * Finishes a withdrawal once its payout has settled, in order with the user's own updates.
+     */
+    @EventListener
+    public void onPlatformOperationSettled(PlatformOperationService.Settled settled) {
+        PlatformOperation operation = settled.operation();
+        if (operation.getType() != PlatformOperationType.PAYOUT) {
+            return;
+        }
+        requestRepository.findById(operation.getRequestId())
+                .filter(request -> request.getType() == RequestType.WITHDRAWAL && request.getStatus() == RequestStatus.PENDING_ADMIN)
+                .ifPresent(request -> updateDispatcher.dispatch(request.getChatId(), () -> finishPayout(request, operation)));
+    }
 
+    private void finishPayout(HizmatRequest request, PlatformOperation operation) {
+        Long chatId = request.getChatId();
+        Long requestId = request.getId();
+        String platformName = request.getPlatform();
+        String userId = operation.getPlatformUserId();
+        String code = operation.getCode();
+        String cardNumber = request.getCardNumber() != null ? request.getCardNumber() : "";
+
+        if (operation.getStatus() == PlatformOperationStatus.SUCCEEDED) {
+            BigDecimal paidAmount = operation.getResultAmount() != null ? operation.getResultAmount() : BigDecimal.ZERO;
+            logger.info("✅ Payout successful for userId {} on platform {}, summa={}, requestId: {}", userId, platformName, paidAmount, requestId);
+            completePayout(request, paidAmount.setScale(2, RoundingMode.DOWN), code, cardNumber);
+            return;
+        }
+        if (operation.getStatus() == PlatformOperationStatus.UNKNOWN) {
+            // Not a failure: the platform may have paid it, and admins are asked to check
+            logger.error("Payout outcome unknown for userId {} on platform {}, requestId {}: {}", userId, platformName, requestId, operation.getMessage());
+            messageSender.sendMessage(chatId, languageSessionService.format(chatId, "withdraw.message.payout_unknown", requestId));
+            sendMainMenu(chatId);
+            return;
+        }
+        Integer httpStatus = operation.getHttpStatus();
+        if (httpStatus != null) {
+            String errorMsg = httpStatus == 401 ? "Invalid signature" :
+                    httpStatus == 403 ? "Invalid confirm" : "API xatosi: " + operation.getMessage();
+            logger.error("Payout API error for userId {} on platform {}: {}", userId, platformName, operation.getMessage());
+            messageSender.sendMessage(chatId, languageSessionService.format(chatId, "withdraw.message.api_error", errorMsg));
+            adminLogBotService.sendToAdmins("❌ Payout API error: " + errorMsg + " for requestId " + requestId);
+            sendMainMenu(chatId);
+            return;
+        }
+        String errorMsg = operation.getMessage() != null ? operation.getMessage() : "Platformdan noto‘g‘ri javob qaytdi.";
+        String cancelLogMessage = languageSessionService.format(chatId, "withdraw.message.payout_failed",
+                requestId, cardNumber, platformName, userId, code, errorMsg,
+                LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+        );
+        logger.warn("❌ Payout failed for userId {} on platform {}, response: {}", userId, platformName, operation.getMessage());
+        messageSender.sendMessage(chatId, cancelLogMessage);
+        sendMainMenu(chatId);
     }
 
     private void handleUserIdInput(Long chatId, String userId) {
@@ -421,7 +370,7 @@ public class WithdrawService {
 
     private void validateUserId(Long chatId, String userId) {
         String platformName = sessionService.getUserData(chatId, "platform").replace("_", "");
-        Platform platform = platformRepository.findByName(platformName)
+        Platform platform = platformRegistry.findByName(platformName)
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
 
         if (platform.getType().equals("mostbet")) {
@@ -439,7 +388,7 @@ public class WithdrawService {
                     .type(RequestType.WITHDRAWAL)
                     .currency(currency)
                     .build();
-            requestRepository.save(request);
+            requestRollupService.save(request);
             sessionService.setUserData(chatId, "platformUserId", userId);
             sessionService.setUserState(chatId, "WITHDRAW_CARD_INPUT");
 
@@ -466,27 +415,12 @@ public class WithdrawService {
                 return;
             }
 
-            String confirmInput = userId + ":" + hash;
-            String confirm = DigestUtils.md5DigestAsHex(confirmInput.getBytes(StandardCharsets.UTF_8));
-            String sha256Input1 = "hash=" + hash + "&userid=" + userId + "&cashdeskid=" + cashdeskId;
-            String sha256Result1 = sha256Hex(sha256Input1);
-            String md5Input = "userid=" + userId + "&cashierpass=" + cashierPass + "&hash=" + hash;
-            String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-            String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-            String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Users/%s?confirm=%s&cashdeskId=%s",
-                    userId, confirm, cashdeskId);
-            logger.info("Validating user ID {} for platform {} (chatId: {}), URL: {}", userId, platformName, chatId, apiUrl);
+            logger.info("Validating user ID {} for platform {} (chatId: {})", userId, platformName, chatId);
 
             try {
-                HttpHeaders headers = new HttpHeaders();
-                headers.set("sign", finalSignature);
-                HttpEntity<String> entity = new HttpEntity<>(headers);
+                UserProfile profile = CashdeskClient.await(userProfileCache.lookup(platform, userId));
 
-                ResponseEntity<UserProfile> response = restTemplate.exchange(apiUrl, HttpMethod.GET, entity, UserProfile.class);
-                UserProfile profile = response.getBody();
-
-                if (response.getStatusCode().is2xxSuccessful() && profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
+                if (profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
                     String fullName = profile.getName();
                     sessionService.setUserData(chatId, "platformUserId", userId);
                     sessionService.setUserData(chatId, "fullName", fullName);
@@ -504,7 +438,7 @@ public class WithdrawService {
                             .type(RequestType.WITHDRAWAL)
                             .currency(currency)
                             .build();
-                    requestRepository.save(request);
+                    requestRollupService.save(request);
 
                     sessionService.setUserState(chatId, "WITHDRAW_APPROVE_USER");
                     sendUserApproval(chatId, fullName, userId);
@@ -517,7 +451,7 @@ public class WithdrawService {
                         e.getStatusCode().value() == 401 ? "Invalid signature" :
                                 e.getStatusCode().value() == 403 ? "Invalid confirm" : "API xatosi: " + e.getMessage();
                 logger.error("Error calling API for user ID {} on platform {}: {}", userId, platformName, errorMsg);
-                sendMessageWithNavigation(chatId, String.format(languageSessionService.getTranslation(chatId, "withdraw.message.api_error"), errorMsg));
+                sendMessageWithNavigation(chatId, languageSessionService.format(chatId, "withdraw.message.api_error", errorMsg));
             } catch (Exception e) {
                 logger.error("Unexpected error calling API for user ID {} on platform {}: {}", userId, platformName, e.getMessage());
                 sendMessageWithNavigation(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.unknown_error"));
@@ -557,7 +491,7 @@ public class WithdrawService {
                 chatId, platform, userId).orElse(null);
         if (request != null) {
             request.setCardNumber(cardNumber);
-            requestRepository.save(request);
+            requestRollupService.save(request);
         }
 
         sessionService.setUserState(chatId, "WITHDRAW_CODE_INPUT");
@@ -587,60 +521,59 @@ public class WithdrawService {
             return;
         }
 
-        request.setTransactionId(code);
-        request.setStatus(RequestStatus.PENDING_ADMIN);
-        requestRepository.save(request);
-
-        BigDecimal paidAmount = processPayout(chatId, platform, userId, code, request.getId(), cardNumber).setScale(2, RoundingMode.DOWN);
-        if (paidAmount != null) {
-            if (paidAmount.longValue() < 0) {
-                paidAmount = paidAmount.multiply(BigDecimal.valueOf(-1));
-            }
-            String number = blockedUserRepository.findByChatId(chatId).get().getPhoneNumber();
-
-            BigDecimal netAmount = paidAmount;
-            if (!request.getCurrency().equals(Currency.RUB)) {
-                netAmount = paidAmount.setScale(2, RoundingMode.DOWN);
-            } else {
-                ExchangeRate latest = exchangeRateRepository.findLatest()
-                        .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
-                netAmount = paidAmount.multiply(latest.getRubToUzs()).setScale(2, RoundingMode.DOWN);
-            }
+        if (submitPayout(chatId, platform, userId, code, cardNumber, request).isPresent()) {
+            messageSender.sendMessage(chatId, languageSessionService.format(chatId, "withdraw.message.payout_in_progress", request.getId()));
+        }
+    }
 
-            String escapedCardNumber = cardNumber
-                    .replace("_", "\\_")
-                    .replace("-", "\\-");
+    private void completePayout(HizmatRequest request, BigDecimal paidAmount, String code, String cardNumber) {
+        Long chatId = request.getChatId();
+        String platform = request.getPlatform();
+        if (paidAmount.longValue() < 0) {
+            paidAmount = paidAmount.multiply(BigDecimal.valueOf(-1));
+        }
+        String number = userDirectory.getPhoneNumber(chatId);
 
-            String logMessage = String.format(
-                    "*#Pul yechish so'rovi \uD83D\uDCB8*\n\n" +
-                            "\uD83C\uDD94: `%d`\n" +
-                            "👤: [%s]\n" +
-                            "📞: `%s`\n" +
-                            "🌐 *#%s:* `%s`\n" +
-                            "💳 *Karta:* `%s`\n" +
-                            "🔑 *Kod:* `%s`\n" +
-                            "💵 *Berish:* `%s`\n" +
-                            "📅 *%s*",
-                    request.getId(),
-                    chatId.toString(), escapeMarkdown(number),
-                    escapeMarkdown(platform),
-                    escapeMarkdown(request.getPlatformUserId()),
-                    escapeMarkdown(escapedCardNumber),
-                    escapeMarkdown(code),
-                    netAmount.toPlainString(),
-                    LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-            );
+        BigDecimal netAmount = paidAmount;
+        if (!request.getCurrency().equals(Currency.RUB)) {
+            netAmount = paidAmount.setScale(2, RoundingMode.DOWN);
+        } else {
+            ExchangeRateService.RateSnapshot latest = exchangeRateService.current();
+            netAmount = latest.rubToUzs(paidAmount).setScale(2, RoundingMode.DOWN);
+        }
 
-            request.setUniqueAmount(netAmount.longValue());
-            requestRepository.save(request);
-            messageSender.sendMessage(chatId, String.format(
-                    languageSessionService.getTranslation(chatId, "withdraw.message.payout_success"),
-                    paidAmount.toPlainString(), netAmount.toPlainString(), request.getId(),
-                    LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-            ));
+        String escapedCardNumber = cardNumber
+                .replace("_", "\\_")
+                .replace("-", "\\-");
+
+        String logMessage = String.format(
+                "*#Pul yechish so'rovi \uD83D\uDCB8*\n\n" +
+                        "\uD83C\uDD94: `%d`\n" +
+                        "👤: [%s]\n" +
+                        "📞: `%s`\n" +
+                        "🌐 *#%s:* `%s`\n" +
+                        "💳 *Karta:* `%s`\n" +
+                        "🔑 *Kod:* `%s`\n" +
+                        "💵 *Berish:* `%s`\n" +
+                        "📅 *%s*",
+                request.getId(),
+                chatId.toString(), escapeMarkdown(number),
+                escapeMarkdown(platform),
+                escapeMarkdown(request.getPlatformUserId()),
+                escapeMarkdown(escapedCardNumber),
+                escapeMarkdown(code),
+                netAmount.toPlainString(),
+                LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+        );
+
+        long uniqueAmount = netAmount.longValue();
+        requestRollupService.transition(request.getId(), RequestStatus.PENDING_ADMIN, r -> r.setUniqueAmount(uniqueAmount));
+        messageSender.sendMessage(chatId, languageSessionService.format(chatId, "withdraw.message.payout_success",
+                paidAmount.toPlainString(), netAmount.toPlainString(), request.getId(),
+                LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+        ));
 
-            adminLogBotService.sendWithdrawRequestToAdmins(chatId, logMessage, request.getId());
-        }
+        adminLogBotService.sendWithdrawRequestToAdmins(chatId, logMessage, request.getId());
     }
 
     private String escapeMarkdown(String text) {
@@ -667,12 +600,13 @@ public class WithdrawService {
         SendMessage message = new SendMessage();
         message.setChatId(chatId.toString());
         if (!recentRequests.isEmpty()) {
+            userProfileCache.prefetch(platform, recentRequests.stream().map(HizmatRequest::getPlatformUserId).toList());
             HizmatRequest latestRequest = recentRequests.get(0);
             sessionService.setUserData(chatId, "platformUserId", latestRequest.getPlatformUserId());
             message.setText(languageSessionService.getTranslation(chatId, "withdraw.message.user_id_with_recent"));
             message.setReplyMarkup(createSavedIdKeyboard(chatId, recentRequests));
         } else {
-            message.setText(String.format(languageSessionService.getTranslation(chatId, "withdraw.message.user_id_input"), platform));
+            message.setText(languageSessionService.format(chatId, "withdraw.message.user_id_input", platform));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
         }
         messageSender.sendMessage(message, chatId);
@@ -681,7 +615,7 @@ public class WithdrawService {
     private void sendUserApproval(Long chatId, String fullName, String userId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId.toString());
-        message.setText(String.format(languageSessionService.getTranslation(chatId, "withdraw.message.user_approval"), fullName, userId));
+        message.setText(languageSessionService.format(chatId, "withdraw.message.user_approval", fullName, userId));
         message.setReplyMarkup(createApprovalKeyboard(chatId));
         messageSender.sendMessage(message, chatId);
     }
@@ -700,7 +634,7 @@ public class WithdrawService {
             message.setText(languageSessionService.getTranslation(chatId, "withdraw.message.card_input_with_recent"));
             message.setReplyMarkup(createSavedCardKeyboard(chatId, recentRequests));
         } else {
-            message.setText(String.format(languageSessionService.getTranslation(chatId, "withdraw.message.card_input"), fullName));
+            message.setText(languageSessionService.format(chatId, "withdraw.message.card_input", fullName));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
         }
         messageSender.sendMessage(message, chatId);
@@ -733,56 +667,11 @@ public class WithdrawService {
     }
 
     private InlineKeyboardMarkup createPlatformKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        List<Platform> uzsPlatforms = platformRepository.findByCurrency(Currency.UZS);
-        List<Platform> rubPlatforms = platformRepository.findByCurrency(Currency.RUB);
-
-        if ((uzsPlatforms == null || uzsPlatforms.isEmpty()) && (rubPlatforms == null || rubPlatforms.isEmpty())) {
+        if (!keyboardCatalog.hasPlatforms()) {
             logger.error("No platforms found in database for keyboard creation");
-            messageSender.sendMessage(null, languageSessionService.getTranslation(chatId, "withdraw.message.no_platforms_found"));
-            rows.add(createNavigationButtons(chatId));
-        } else {
-            int maxRows = Math.max(uzsPlatforms.size(), rubPlatforms.size());
-            for (int i = 0; i < maxRows; i++) {
-                List<InlineKeyboardButton> row = new ArrayList<>();
-                if (i < uzsPlatforms.size()) {
-                    Platform uzsPlatform = uzsPlatforms.get(i);
-                    if (uzsPlatform != null && uzsPlatform.getName() != null && !uzsPlatform.getName().isEmpty()) {
-                        row.add(createButton("🇺🇿 " + uzsPlatform.getName(), "WITHDRAW_PLATFORM:" + uzsPlatform.getName()));
-                    } else {
-                        logger.warn("Skipping invalid UZS platform: {}", uzsPlatform);
-                    }
-                }
-                if (i < rubPlatforms.size()) {
-                    Platform rubPlatform = rubPlatforms.get(i);
-                    if (rubPlatform != null && rubPlatform.getName() != null && !rubPlatform.getName().isEmpty()) {
-                        row.add(createButton("🇷🇺 " + rubPlatform.getName(), "WITHDRAW_PLATFORM:" + rubPlatform.getName()));
-                    } else {
-                        logger.warn("Skipping invalid RUB platform: {}", rubPlatform);
-                    }
-                } else if (i < uzsPlatforms.size()) {
-                    i++;
-                    if (i < maxRows) {
-                        Platform uzsPlatform = uzsPlatforms.get(i);
-                        row.add(createButton("🇺🇿 " + uzsPlatform.getName(), "WITHDRAW_PLATFORM:" + uzsPlatform.getName()));
-                    }
-                }
-                if (!row.isEmpty()) {
-                    rows.add(row);
-                }
-            }
-            if (rows.isEmpty()) {
-                logger.error("No valid platforms with non-empty names found");
-                messageSender.sendMessage(null, languageSessionService.getTranslation(chatId, "withdraw.message.no_valid_platforms"));
-                rows.add(createNavigationButtons(chatId));
-            } else {
-                rows.add(createNavigationButtons(chatId));
-            }
+            messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.no_platforms_found"));
         }
-        markup.setKeyboard(rows);
-        logger.info("Created platform keyboard with {} platform buttons", rows.size() - 1);
-        return markup;
+        return keyboardCatalog.get(chatId, PLATFORM_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createSavedIdKeyboard(Long chatId, List<HizmatRequest> recentRequests) {
@@ -825,41 +714,19 @@ public class WithdrawService {
     }
 
     private InlineKeyboardMarkup createApprovalKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(
-                createButton(languageSessionService.getTranslation(chatId, "withdraw.button.approve"), "WITHDRAW_APPROVE_USER"),
-                createButton(languageSessionService.getTranslation(chatId, "withdraw.button.reject"), "WITHDRAW_REJECT_USER")
-        ));
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, APPROVAL_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createMainMenuKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "withdraw.button.topup"), "TOPUP")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "withdraw.button.withdraw"), "WITHDRAW")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "withdraw.button.bonus"), "BONUS")));
-        rows.add(List.of(createButton(languageSessionService.getTranslation(chatId, "withdraw.button.contact"), "CONTACT")));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, MAIN_MENU_KEYBOARD);
     }
 
     private InlineKeyboardMarkup createNavigationKeyboard(Long chatId) {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(createNavigationButtons(chatId));
-        markup.setKeyboard(rows);
-        return markup;
+        return keyboardCatalog.get(chatId, NAVIGATION_KEYBOARD);
     }
 
     private List<InlineKeyboardButton> createNavigationButtons(Long chatId) {
-        List<InlineKeyboardButton> buttons = new ArrayList<>();
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "withdraw.button.back"), "BACK"));
-        buttons.add(createButton(languageSessionService.getTranslation(chatId, "withdraw.button.home"), "HOME"));
-        return buttons;
+        return keyboardCatalog.row(chatId, NAVIGATION_KEYBOARD);
     }
 
     private InlineKeyboardButton createButton(String text, String callback) {
@@ -880,20 +747,4 @@ public class WithdrawService {
     private boolean isValidCode(String code) {
         return code.matches("[A-Za-z0-9]+");
     }
-
-    private String sha256Hex(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
-        }
-    }
-}
\ No newline at end of file
+}
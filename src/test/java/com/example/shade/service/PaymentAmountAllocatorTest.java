@@ -0,0 +1,133 @@
+package com.example.shade.service;
+
+import com.example.shade.model.AdminCard;
+import com.example.shade.model.AmountReservation;
+import com.example.shade.repository.AdminCardRepository;
+import com.example.shade.repository.AmountReservationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentAmountAllocatorTest {
+    private static final long BASE = 100_000;
+
+    private AmountReservationRepository reservationRepository;
+    private AdminCardRepository adminCardRepository;
+    private PaymentAmountAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository = mock(AmountReservationRepository.class);
+        adminCardRepository = mock(AdminCardRepository.class);
+        when(reservationRepository.saveAndFlush(any(AmountReservation.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(reservationRepository.findByAdminCardIdAndUniqueAmount(anyLong(), anyLong())).thenReturn(Optional.empty());
+        when(adminCardRepository.findPrimaryOrderByLastUsed()).thenReturn(List.of(card(1L)));
+        allocator = new PaymentAmountAllocator(reservationRepository, adminCardRepository);
+    }
+
+    @Test
+    void everySlotOfAnAmountIsHandedOutOnce() {
+        Set<Long> amounts = new HashSet<>();
+        for (long requestId = 1; requestId <= 100; requestId++) {
+            long amount = allocator.allocate(requestId, BASE).uniqueAmount();
+            assertTrue(amount >= BASE && amount < BASE + 100);
+            assertTrue(amounts.add(amount), "amount handed out twice: " + amount);
+        }
+        assertThrows(IllegalStateException.class, () -> allocator.allocate(101L, BASE));
+    }
+
+    @Test
+    void releasedSlotCanBeHandedOutAgain() {
+        long released = 0;
+        for (long requestId = 1; requestId <= 100; requestId++) {
+            long amount = allocator.allocate(requestId, BASE).uniqueAmount();
+            if (requestId == 42) {
+                released = amount;
+            }
+        }
+        allocator.release(42L);
+
+        assertEquals(released, allocator.allocate(101L, BASE).uniqueAmount());
+    }
+
+    @Test
+    void reallocatingReplacesTheRequestsSlot() {
+        for (int i = 0; i < 200; i++) {
+            allocator.allocate(1L, BASE);
+        }
+        // Still room for 99 other requests: the old slots were given back each time
+        for (long requestId = 2; requestId <= 100; requestId++) {
+            allocator.allocate(requestId, BASE);
+        }
+    }
+
+    @Test
+    void slotHeldOnlyInTheDatabaseIsSkipped() {
+        when(reservationRepository.saveAndFlush(any(AmountReservation.class))).thenAnswer(invocation -> {
+            AmountReservation reservation = invocation.getArgument(0);
+            if (reservation.getRequestId() == 1L) {
+                throw new DataIntegrityViolationException("uk_amount_reservation_slot");
+            }
+            return reservation;
+        });
+        when(reservationRepository.findByAdminCardIdAndUniqueAmount(anyLong(), anyLong())).thenAnswer(invocation ->
+                Optional.of(reservation(99L, invocation.getArgument(0), invocation.getArgument(1))));
+
+        // Every slot turns out to be held by someone else, and each one stays marked
+        assertThrows(IllegalStateException.class, () -> allocator.allocate(1L, BASE));
+        assertThrows(IllegalStateException.class, () -> allocator.allocate(2L, BASE));
+    }
+
+    @Test
+    void failureThatIsNotAboutTheSlotDoesNotLeakIt() {
+        when(reservationRepository.saveAndFlush(any(AmountReservation.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_amount_reservation_request"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertThrows(IllegalStateException.class, () -> allocator.allocate(1L, BASE));
+
+        // All 100 slots are still free
+        Set<Long> amounts = new HashSet<>();
+        for (long requestId = 2; requestId <= 101; requestId++) {
+            amounts.add(allocator.allocate(requestId, BASE).uniqueAmount());
+        }
+        assertEquals(100, amounts.size());
+    }
+
+    @Test
+    void persistedReservationUnknownToMemoryIsDeletedFirst() {
+        allocator.allocate(7L, BASE);
+
+        verify(reservationRepository).deleteByRequestId(7L);
+    }
+
+    private static AdminCard card(Long id) {
+        AdminCard card = new AdminCard();
+        card.setId(id);
+        return card;
+    }
+
+    private static AmountReservation reservation(Long requestId, Long adminCardId, Long amount) {
+        return AmountReservation.builder()
+                .requestId(requestId)
+                .adminCardId(adminCardId)
+                .uniqueAmount(amount)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.shade.service;
+
+import com.example.shade.model.Currency;
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.model.RequestType;
+import com.example.shade.repository.HizmatRequestRepository;
+import com.example.shade.repository.RequestDailyRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class RequestRollupServiceTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2025, 7, 1, 10, 30);
+    private static final LocalDate DAY = CREATED.toLocalDate();
+
+    private HizmatRequestRepository requestRepository;
+    private RequestDailyRollupRepository rollupRepository;
+    private PaymentAmountAllocator amountAllocator;
+    private RequestRollupService service;
+
+    @BeforeEach
+    void setUp() {
+        requestRepository = mock(HizmatRequestRepository.class);
+        rollupRepository = mock(RequestDailyRollupRepository.class);
+        amountAllocator = mock(PaymentAmountAllocator.class);
+        when(requestRepository.save(any(HizmatRequest.class))).thenAnswer(invocation -> {
+            HizmatRequest request = invocation.getArgument(0);
+            if (request.getId() == null) {
+                request.setId(1L);
+            }
+            return request;
+        });
+        service = new RequestRollupService(requestRepository, rollupRepository, amountAllocator);
+    }
+
+    @Test
+    void newRequestIncrementsItsBucket() {
+        service.save(request(null, RequestStatus.PENDING_PAYMENT));
+
+        verify(rollupRepository).upsert(DAY, "1xbet", 7L, "TOP_UP", "PENDING_PAYMENT", 1, 100_123);
+        verify(requestRepository, never()).findByIdForUpdate(anyLong());
+    }
+
+    @Test
+    void statusChangeMovesTheRequestBetweenBuckets() {
+        when(requestRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(request(5L, RequestStatus.PENDING_PAYMENT)));
+
+        service.save(request(5L, RequestStatus.APPROVED));
+
+        verify(rollupRepository).upsert(DAY, "1xbet", 7L, "TOP_UP", "PENDING_PAYMENT", -1, -100_123);
+        verify(rollupRepository).upsert(DAY, "1xbet", 7L, "TOP_UP", "APPROVED", 1, 100_123);
+        verify(amountAllocator).release(5L);
+    }
+
+    @Test
+    void unchangedBucketLeavesRollupAlone() {
+        when(requestRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(request(5L, RequestStatus.PENDING_PAYMENT)));
+
+        service.save(request(5L, RequestStatus.PENDING_PAYMENT));
+
+        verifyNoInteractions(rollupRepository);
+        verify(amountAllocator, never()).release(anyLong());
+    }
+
+    @Test
+    void managedRequestIsRefused() {
+        HizmatRequest managed = request(5L, RequestStatus.PENDING_PAYMENT);
+        when(requestRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(managed));
+        managed.setStatus(RequestStatus.APPROVED);
+
+        assertThrows(IllegalStateException.class, () -> service.save(managed));
+        verifyNoInteractions(rollupRepository);
+    }
+
+    @Test
+    void transitionMovesBucketsOnlyFromTheExpectedStatus() {
+        when(requestRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(request(5L, RequestStatus.PENDING_PAYMENT)));
+
+        assertTrue(service.transition(5L, RequestStatus.PENDING_PAYMENT, r -> r.setStatus(RequestStatus.CANCELED)).isPresent());
+        assertTrue(service.transition(5L, RequestStatus.PENDING_PAYMENT, r -> r.setStatus(RequestStatus.APPROVED)).isEmpty());
+
+        verify(rollupRepository).upsert(DAY, "1xbet", 7L, "TOP_UP", "PENDING_PAYMENT", -1, -100_123);
+        verify(rollupRepository).upsert(DAY, "1xbet", 7L, "TOP_UP", "CANCELED", 1, 100_123);
+        verify(rollupRepository, never()).upsert(any(), anyString(), anyLong(), anyString(), eq("APPROVED"), anyLong(), anyLong());
+    }
+
+    @Test
+    void deleteTakesTheRequestOutOfItsBucket() {
+        when(requestRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(request(5L, RequestStatus.APPROVED)));
+
+        assertTrue(service.deleteById(5L));
+
+        verify(rollupRepository).upsert(DAY, "1xbet", 7L, "TOP_UP", "APPROVED", -1, -100_123);
+        verify(amountAllocator).release(5L);
+    }
+
+    private static HizmatRequest request(Long id, RequestStatus status) {
+        return HizmatRequest.builder()
+                .id(id)
+                .chatId(42L)
+                .platform("1xbet")
+                .currency(Currency.UZS)
+                .amount(100_000L)
+                .uniqueAmount(100_123L)
+                .adminCardId(7L)
+                .status(status)
+                .type(RequestType.TOP_UP)
+                .createdAt(CREATED)
+                .build();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.shade.service;
+
+import com.example.shade.model.Language;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranslationCatalogTest {
+    private static final String BASENAME = "classpath:i18n/messages";
+    private static final Pattern CONVERSION = Pattern.compile("%(%|n|,d|d|s)");
+
+    private static TranslationCatalog catalog;
+
+    @BeforeAll
+    static void loadCatalog() {
+        catalog = new TranslationCatalog(new DefaultResourceLoader(), BASENAME);
+        catalog.init();
+    }
+
+    /**
+     * Every key of every bundle, with each kind of argument the bot passes: plain numbers, big and
+     * negative ones, strings and nulls.
+     */
+    static Stream<Arguments> keysAndArguments() {
+        List<Arguments> cases = new ArrayList<>();
+        for (Language language : Language.values()) {
+            for (String key : bundle(language).stringPropertyNames()) {
+                cases.add(Arguments.of(language, key, "long", (Function<Character, Object>) c -> c == 's' ? "Ali" : 1_234_567L));
+                cases.add(Arguments.of(language, key, "int", (Function<Character, Object>) c -> c == 's' ? 42 : 7));
+                cases.add(Arguments.of(language, key, "negative", (Function<Character, Object>) c -> c == 's' ? -5L : -1_234_567L));
+                cases.add(Arguments.of(language, key, "bigInteger", (Function<Character, Object>) c -> c == 's' ? "x" : new BigInteger("98765432109876543210")));
+                cases.add(Arguments.of(language, key, "null", (Function<Character, Object>) c -> null));
+            }
+        }
+        return cases.stream();
+    }
+
+    @ParameterizedTest(name = "{0} {1} ({2})")
+    @MethodSource("keysAndArguments")
+    void formatMatchesStringFormat(Language language, String key, String kind, Function<Character, Object> argument) {
+        String raw = catalog.text(language, key);
+        Object[] args = arguments(raw, argument);
+
+        assertEquals(String.format(raw, args), catalog.format(language, key, args));
+    }
+
+    @ParameterizedTest(name = "{0} {1}")
+    @MethodSource("keysWithArguments")
+    void tooFewArgumentsStillThrow(Language language, String key) {
+        assertThrows(RuntimeException.class, () -> String.format(catalog.text(language, key)));
+        assertThrows(RuntimeException.class, () -> catalog.format(language, key));
+    }
+
+    static Stream<Arguments> keysWithArguments() {
+        return keysAndArguments()
+                .map(arguments -> Arguments.of(arguments.get()[0], arguments.get()[1]))
+                .distinct()
+                .filter(arguments -> {
+                    String raw = catalog.text((Language) arguments.get()[0], (String) arguments.get()[1]);
+                    return CONVERSION.matcher(raw).results().anyMatch(match -> !match.group(1).equals("%") && !match.group(1).equals("n"));
+                });
+    }
+
+    @Test
+    void missingKeyRendersAsBefore() {
+        assertEquals("Translation not found for code: no.such.key", catalog.format(Language.UZ, "no.such.key"));
+        assertEquals(-1, catalog.id("no.such.key"));
+    }
+
+    @Test
+    void reloadKeepsKeyIds() {
+        String key = bundle(Language.UZ).stringPropertyNames().iterator().next();
+        int id = catalog.id(key);
+        long version = catalog.version();
+
+        catalog.reload();
+
+        assertEquals(id, catalog.id(key));
+        assertTrue(catalog.version() > version);
+    }
+
+    private static Object[] arguments(String raw, Function<Character, Object> argument) {
+        List<Object> args = new ArrayList<>();
+        Matcher matcher = CONVERSION.matcher(raw);
+        while (matcher.find()) {
+            String conversion = matcher.group(1);
+            if (!conversion.equals("%") && !conversion.equals("n")) {
+                args.add(argument.apply(conversion.equals("s") ? 's' : 'd'));
+            }
+        }
+        return args.toArray();
+    }
+
+    private static Properties bundle(Language language) {
+        Properties bundle = new Properties();
+        String path = BASENAME.substring("classpath:".length()) + "_" + language.getCode() + ".properties";
+        try (Reader reader = new InputStreamReader(TranslationCatalogTest.class.getClassLoader().getResourceAsStream(path), StandardCharsets.UTF_8)) {
+            bundle.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + path, e);
+        }
+        return bundle;
+    }
+}